@@ -0,0 +1,40 @@
+package edu.stanford.cs276.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Candidate generation for whole queries and single tokens, with the
+ * deletion index and with plain edit enumeration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CandidateGeneratorBenchmark {
+    @Param({"index", "enumerate"})
+    public String strategy;
+
+    @Setup
+    public void setStrategy(DevSet dev) {
+        dev.cg.setDeletionIndex(strategy.equals("index") ? dev.index : null);
+    }
+
+    @Benchmark
+    public Set<String> getCandidates(DevSet dev, DevSet.Cursor cursor) throws Exception {
+        return dev.cg.getCandidates(dev.queries[cursor.next(dev.queries.length)], dev.languageModel);
+    }
+
+    @Benchmark
+    public Set<String> getCandidatesForToken(DevSet dev, DevSet.Cursor cursor) throws Exception {
+        return dev.cg.getCandidatesForToken(dev.tokens[cursor.next(dev.tokens.length)], dev.languageModel);
+    }
+}
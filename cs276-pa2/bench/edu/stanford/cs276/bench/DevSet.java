@@ -0,0 +1,84 @@
+package edu.stanford.cs276.bench;
+
+import edu.stanford.cs276.CandidateGenerator;
+import edu.stanford.cs276.DeletionIndex;
+import edu.stanford.cs276.LanguageModel;
+import edu.stanford.cs276.NoisyChannelModel;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Models and inputs shared by all benchmarks. Models are loaded from the
+ * working directory (see the bench target in build.xml); inputs come
+ * from the dev queries:
+ *
+ *   queries - every query
+ *   tokens  - every token of every query
+ *   pairs   - (query, candidate) for every whole query candidate, the
+ *             pairs the channel model scores
+ */
+@State(Scope.Benchmark)
+public class DevSet {
+    @Param({"data/dev.queries.txt"})
+    public String queryFile;
+
+    public LanguageModel languageModel;
+    public NoisyChannelModel nsm;
+    public DeletionIndex index;
+    public CandidateGenerator cg;
+
+    public String[] queries;
+    public String[] tokens;
+    public String[][] pairs;
+
+    @Setup
+    public void load() throws Exception {
+        languageModel = LanguageModel.load();
+        nsm = NoisyChannelModel.load();
+        index = DeletionIndex.load();
+        cg = CandidateGenerator.get();
+        cg.setDeletionIndex(index);
+
+        List<String> queryList = new ArrayList<String>();
+        List<String> tokenList = new ArrayList<String>();
+        List<String[]> pairList = new ArrayList<String[]>();
+        BufferedReader input = new BufferedReader(new FileReader(queryFile));
+        String query;
+        while ((query = input.readLine()) != null) {
+            queryList.add(query);
+            for (String token : query.split("\\s+")) {
+                tokenList.add(token);
+            }
+            for (String candidate : cg.getCandidates(query, languageModel)) {
+                pairList.add(new String[] {query, candidate});
+            }
+        }
+        input.close();
+
+        queries = queryList.toArray(new String[queryList.size()]);
+        tokens = tokenList.toArray(new String[tokenList.size()]);
+        pairs = pairList.toArray(new String[pairList.size()][]);
+    }
+
+    /**
+     * Walks an input array one element per benchmark invocation, so every
+     * thread cycles through the whole dev set.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = 0;
+
+        public int next(int length) {
+            int i = next;
+            next = i + 1 == length ? 0 : i + 1;
+            return i;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package edu.stanford.cs276.bench;
+
+import edu.stanford.cs276.SpellCorrector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Correction of one dev query per invocation with SpellCorrector's early
+ * exit at several thresholds, NaN for always searching. The share of
+ * queries kept without a search goes to stderr after each trial; the
+ * accuracy is RunCorrector's with a gold file and --early-exit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EarlyExitBenchmark {
+    @Param({"uniform", "empirical"})
+    public String costModel;
+
+    @Param({"false", "true"})
+    public boolean extra;
+
+    @Param({"NaN", "0", "2", "4", "8"})
+    public double threshold;
+
+    private SpellCorrector corrector;
+
+    @Setup
+    public void create(DevSet dev) throws Exception {
+        dev.cg.setDeletionIndex(dev.index);
+        corrector = new SpellCorrector(dev.languageModel, dev.nsm, costModel, dev.cg, extra);
+        corrector.setEarlyExit(threshold);
+    }
+
+    @TearDown
+    public void report() {
+        System.err.format("early exit at %s: %d of %d queries kept unchanged\n",
+                threshold, corrector.earlyExits(), corrector.searches());
+    }
+
+    @Benchmark
+    public String correct(DevSet dev, DevSet.Cursor cursor) throws Exception {
+        return corrector.correct(dev.queries[cursor.next(dev.queries.length)]);
+    }
+}
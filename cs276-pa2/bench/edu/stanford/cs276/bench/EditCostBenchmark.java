@@ -0,0 +1,100 @@
+package edu.stanford.cs276.bench;
+
+import edu.stanford.cs276.EditCostModel;
+import edu.stanford.cs276.edit.Edit;
+import edu.stanford.cs276.edit.EditDistance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Channel model scoring of (query, candidate) pairs: the empirical
+ * editProbability and the edit computations under it. matrixEditDistance
+ * is the full matrix implementation editDistance replaced, kept for
+ * comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EditCostBenchmark {
+    private EditCostModel empirical;
+
+    @Setup
+    public void create(DevSet dev) throws Exception {
+        empirical = dev.nsm.costModel("empirical");
+    }
+
+    @Benchmark
+    public double empiricalEditProbability(DevSet dev, DevSet.Cursor cursor) {
+        String[] pair = dev.pairs[cursor.next(dev.pairs.length)];
+        return empirical.editProbability(pair[0], pair[1], 1);
+    }
+
+    @Benchmark
+    public List<Edit> determineEdits(DevSet dev, DevSet.Cursor cursor) {
+        String[] pair = dev.pairs[cursor.next(dev.pairs.length)];
+        return EditDistance.determineEdits(pair[0], pair[1]);
+    }
+
+    @Benchmark
+    public int editDistance(DevSet dev, DevSet.Cursor cursor) {
+        String[] pair = dev.pairs[cursor.next(dev.pairs.length)];
+        return EditDistance.editDistance(pair[0], pair[1]);
+    }
+
+    @Benchmark
+    public int editDistanceWithin2(DevSet dev, DevSet.Cursor cursor) {
+        String[] pair = dev.pairs[cursor.next(dev.pairs.length)];
+        return EditDistance.editDistance(pair[0], pair[1], 2);
+    }
+
+    @Benchmark
+    public int matrixEditDistance(DevSet dev, DevSet.Cursor cursor) {
+        String[] pair = dev.pairs[cursor.next(dev.pairs.length)];
+        return matrixEditDistance(pair[0], pair[1]);
+    }
+
+    // the implementation before banding, one full matrix per call
+    private static int matrixEditDistance(String s, String t) {
+        final int N = s.length();
+        final int M = t.length();
+
+        int[][] D = new int[N+1][M+1];
+        for (int i = 0; i <= N; ++i) {
+            D[i][0] = i;
+        }
+        for (int i = 0; i <= M; ++i) {
+            D[0][i] = i;
+        }
+
+        for (int i = 1; i <= N; ++i) {
+            for (int j = 1; j <= M; ++j) {
+                if (s.charAt(i-1) == t.charAt(j-1)) {
+                    D[i][j] = D[i-1][j-1];
+                } else {
+                    D[i][j] = Math.min(D[i-1][j], D[i][j-1]) + 1;
+                    if (D[i-1][j-1] + 1 < D[i][j]) {
+                        D[i][j] = D[i-1][j-1] + 1;
+                    }
+                }
+
+                if (i > 1 && j > 1
+                        && (s.charAt(i-1) == t.charAt(j-2))
+                        && (s.charAt(i-2) == t.charAt(j-1))) {
+                    if (D[i-2][j-2] + 1 < D[i][j]) {
+                        D[i][j] = D[i-2][j-2] + 1;
+                    }
+                }
+            }
+        }
+
+        return D[N][M];
+    }
+}
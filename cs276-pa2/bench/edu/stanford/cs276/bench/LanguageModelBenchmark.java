@@ -0,0 +1,70 @@
+package edu.stanford.cs276.bench;
+
+import edu.stanford.cs276.LanguageModel;
+import edu.stanford.cs276.SentenceScorer;
+import edu.stanford.cs276.lm.SmoothingType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LanguageModel.computeProbability on whole query candidates, for every
+ * smoothing type over the same counts, and SentenceScorer scoring all the
+ * candidates of a query next to computeProbability doing the same.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LanguageModelBenchmark {
+    @Param({"LINEAR_INTERPOLATION", "ABSOLUTE_DISCOUNTING", "KNENSER_NEY_SMOOTHING"})
+    public SmoothingType smoothing;
+
+    private LanguageModel languageModel;
+    // candidates[q]: the whole query candidates of dev.queries[q]
+    private String[][] candidates;
+
+    @Setup
+    public void create(DevSet dev) throws Exception {
+        languageModel = LanguageModel.create(smoothing, dev.languageModel.counts());
+        candidates = new String[dev.queries.length][];
+        for (int q = 0; q < dev.queries.length; ++q) {
+            Set<String> set = dev.cg.getCandidates(dev.queries[q], languageModel);
+            candidates[q] = set.toArray(new String[set.size()]);
+        }
+    }
+
+    @Benchmark
+    public double computeProbability(DevSet dev, DevSet.Cursor cursor) {
+        return languageModel.computeProbability(dev.pairs[cursor.next(dev.pairs.length)][1]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double computeProbabilityPerQuery(DevSet dev, DevSet.Cursor cursor) {
+        double sum = 0;
+        for (String s : candidates[cursor.next(candidates.length)]) {
+            sum += languageModel.computeProbability(s);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double sentenceScorerPerQuery(DevSet dev, DevSet.Cursor cursor) {
+        int q = cursor.next(candidates.length);
+        SentenceScorer scorer = new SentenceScorer(languageModel, dev.queries[q]);
+        double sum = 0;
+        for (String s : candidates[q]) {
+            sum += scorer.score(s);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,63 @@
+package edu.stanford.cs276.bench;
+
+import edu.stanford.cs276.lm.ArrayNGramCounts;
+import edu.stanford.cs276.lm.NGramCounts;
+import edu.stanford.cs276.lm.QuantizedNGramCounts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Term and bigram lookups on the dev queries, in the exact counts and in
+ * the 8 and 16 bit quantized counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NGramCountsBenchmark {
+    @Param({"exact", "8", "16"})
+    public String counts;
+
+    private NGramCounts ngrams;
+    // term ids of adjacent dev tokens, w1 and w2 interleaved
+    private int[] bigrams;
+
+    @Setup
+    public void create(DevSet dev) {
+        NGramCounts exact = ArrayNGramCounts.copyOf(dev.languageModel.counts());
+        ngrams = counts.equals("exact") ? exact : QuantizedNGramCounts.create(exact, Integer.parseInt(counts));
+
+        List<Integer> ids = new ArrayList<Integer>();
+        for (String query : dev.queries) {
+            String[] tokens = query.split("\\s+");
+            for (int i = 1; i < tokens.length; ++i) {
+                ids.add(ngrams.id(tokens[i - 1]));
+                ids.add(ngrams.id(tokens[i]));
+            }
+        }
+        bigrams = new int[ids.size()];
+        for (int i = 0; i < bigrams.length; ++i) {
+            bigrams[i] = ids.get(i);
+        }
+    }
+
+    @Benchmark
+    public int id(DevSet dev, DevSet.Cursor cursor) {
+        return ngrams.id(dev.tokens[cursor.next(dev.tokens.length)]);
+    }
+
+    @Benchmark
+    public int bigramCount(DevSet.Cursor cursor) {
+        int i = 2 * cursor.next(bigrams.length / 2);
+        return ngrams.bigramCount(bigrams[i], bigrams[i + 1]);
+    }
+}
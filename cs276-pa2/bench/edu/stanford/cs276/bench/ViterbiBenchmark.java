@@ -0,0 +1,38 @@
+package edu.stanford.cs276.bench;
+
+import edu.stanford.cs276.SpellCorrector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole query correction with the token lattice (the "extra" corrector),
+ * one dev query per invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ViterbiBenchmark {
+    @Param({"uniform", "empirical"})
+    public String costModel;
+
+    private SpellCorrector corrector;
+
+    @Setup
+    public void create(DevSet dev) throws Exception {
+        dev.cg.setDeletionIndex(dev.index);
+        corrector = new SpellCorrector(dev.languageModel, dev.nsm, costModel, dev.cg, true);
+    }
+
+    @Benchmark
+    public String viterbi(DevSet dev, DevSet.Cursor cursor) throws Exception {
+        return corrector.correct(dev.queries[cursor.next(dev.queries.length)]);
+    }
+}
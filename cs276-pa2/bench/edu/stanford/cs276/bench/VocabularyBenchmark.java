@@ -0,0 +1,71 @@
+package edu.stanford.cs276.bench;
+
+import edu.stanford.cs276.AutomatonIndex;
+import edu.stanford.cs276.TrieVocabulary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Term lookups on the dev tokens: membership in a HashSet and in the
+ * trie, and the single token edits of the deletion index, the trie and
+ * the Levenshtein automaton walk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VocabularyBenchmark {
+    private Set<String> hashSet;
+    private TrieVocabulary trie;
+    private AutomatonIndex automaton;
+
+    @Setup
+    public void create(DevSet dev) {
+        hashSet = new HashSet<String>(dev.languageModel.terms());
+        trie = TrieVocabulary.create(dev.languageModel);
+        automaton = new AutomatonIndex(trie);
+    }
+
+    @Benchmark
+    public boolean hashSetContains(DevSet dev, DevSet.Cursor cursor) {
+        return hashSet.contains(dev.tokens[cursor.next(dev.tokens.length)]);
+    }
+
+    @Benchmark
+    public boolean trieContains(DevSet dev, DevSet.Cursor cursor) {
+        return trie.contains(dev.tokens[cursor.next(dev.tokens.length)]);
+    }
+
+    @Benchmark
+    public Set<String> deletionIndexLookup(DevSet dev, DevSet.Cursor cursor) {
+        return dev.index.lookup(dev.tokens[cursor.next(dev.tokens.length)]);
+    }
+
+    @Benchmark
+    public Set<String> trieLookup(DevSet dev, DevSet.Cursor cursor) {
+        return trie.lookup(dev.tokens[cursor.next(dev.tokens.length)]);
+    }
+
+    @Benchmark
+    public Set<String> trieFuzzyMatch2(DevSet dev, DevSet.Cursor cursor) {
+        return trie.fuzzyMatch(dev.tokens[cursor.next(dev.tokens.length)], 2);
+    }
+
+    @Benchmark
+    public Set<String> automatonLookup(DevSet dev, DevSet.Cursor cursor) {
+        return automaton.lookup(dev.tokens[cursor.next(dev.tokens.length)]);
+    }
+
+    @Benchmark
+    public Set<String> automatonFuzzyMatch2(DevSet dev, DevSet.Cursor cursor) {
+        return automaton.fuzzyMatch(dev.tokens[cursor.next(dev.tokens.length)], 2);
+    }
+}
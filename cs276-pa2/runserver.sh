@@ -0,0 +1,4 @@
+#!/bin/bash
+#./runserver <uniform | empirical> <extra>(optional) [--port=N] [--threads=N] [--queue=N]
+
+java -Xmx2048m -cp "bin:jars/*" edu.stanford.cs276.CorrectorServer $@
@@ -0,0 +1,129 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.edit.LevenshteinAutomaton;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Single token edits found by running a Levenshtein automaton over the
+ * vocabulary trie.
+ *
+ * Same walk as TrieVocabulary.fuzzyMatch, but a node costs one table
+ * lookup instead of a DP row over the whole token: the automaton is
+ * universal, so all the token contributes is, per character, a bit mask
+ * of where it occurs.
+ */
+public class AutomatonIndex implements EditIndex {
+    // occurrence masks are longs; longer tokens take the trie's DP walk
+    private static final int MAX_TOKEN_LENGTH = 63;
+
+    private final TrieVocabulary trie;
+
+    public AutomatonIndex(TrieVocabulary trie) {
+        this.trie = trie;
+    }
+
+    public static AutomatonIndex create(LanguageModel languageModel) {
+        return new AutomatonIndex(TrieVocabulary.create(languageModel));
+    }
+
+    /**
+     * Same as TrieVocabulary.fuzzyMatch.
+     */
+    public Set<String> fuzzyMatch(String token, int maxDistance) {
+        if (token.length() > MAX_TOKEN_LENGTH) {
+            return trie.fuzzyMatch(token, maxDistance);
+        }
+        Set<String> results = new HashSet<String>();
+        new Walk(token, LevenshteinAutomaton.forDistance(maxDistance), null).run(results);
+        return results;
+    }
+
+    /**
+     * Same as TrieVocabulary.lookup.
+     */
+    @Override
+    public Set<String> lookup(String word) {
+        if (word.length() > MAX_TOKEN_LENGTH) {
+            return trie.lookup(word);
+        }
+        Set<String> results = new HashSet<String>();
+        new Walk(word, LevenshteinAutomaton.forDistance(1), DeletionIndex.insertable).run(results);
+        if (!DeletionIndex.reachesItself(word)) {
+            results.remove(word);
+        }
+        return results;
+    }
+
+    /**
+     * Depth first walk of the trie, in step with the automaton.
+     */
+    private class Walk {
+        private final LevenshteinAutomaton automaton;
+        private final boolean[] insertable;
+        private final int n;
+        // occurrence masks of the token's characters
+        private final char[] chars;
+        private final long[] masks;
+        private int numChars;
+        private final char[] path;
+
+        Walk(String token, LevenshteinAutomaton automaton, boolean[] insertable) {
+            this.automaton = automaton;
+            this.insertable = insertable;
+            n = token.length();
+            chars = new char[n];
+            masks = new long[n];
+            for (int p = 0; p < n; ++p) {
+                char c = token.charAt(p);
+                int i = indexOf(c);
+                if (i < 0) {
+                    i = numChars++;
+                    chars[i] = c;
+                }
+                masks[i] |= 1L << p;
+            }
+            path = new char[Math.min(trie.maxLength(), n + automaton.maxDistance())];
+        }
+
+        void run(Set<String> results) {
+            int root = TrieVocabulary.root();
+            int start = automaton.start();
+            if (automaton.distance(start, 0, n) <= automaton.maxDistance() && trie.isTerminal(root)) {
+                results.add("");
+            }
+            visitChildren(root, start, 0, results);
+        }
+
+        private void visitChildren(int node, int state, int d, Set<String> results) {
+            if (d == path.length) {
+                return;
+            }
+            int end = trie.endChild(node);
+            for (int child = trie.firstChild(node); child < end; ++child) {
+                char c = trie.label(child);
+                int i = indexOf(c);
+                int chi = i < 0 ? 0 : automaton.chi(masks[i], d);
+                int next = automaton.step(state, chi, insertable == null || insertable[c]);
+                if (next == LevenshteinAutomaton.DEAD) {
+                    continue;
+                }
+                path[d] = c;
+                if (trie.isTerminal(child) && automaton.distance(next, d + 1, n) <= automaton.maxDistance()) {
+                    results.add(new String(path, 0, d + 1));
+                }
+                visitChildren(child, next, d + 1, results);
+            }
+        }
+
+        private int indexOf(char c) {
+            for (int i = 0; i < numChars; ++i) {
+                if (chars[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
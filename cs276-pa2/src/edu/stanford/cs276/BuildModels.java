@@ -1,7 +1,18 @@
 package edu.stanford.cs276;
 
 
+import edu.stanford.cs276.lm.CorpusCounter;
+import edu.stanford.cs276.lm.ExternalNGramCounter;
+import edu.stanford.cs276.lm.MappedNGramCounts;
+import edu.stanford.cs276.lm.NGramCounts;
+import edu.stanford.cs276.lm.PrunedNGramCounts;
+import edu.stanford.cs276.lm.QuantizedNGramCounts;
 import edu.stanford.cs276.lm.SmoothingType;
+import edu.stanford.cs276.lm.TrigramCounts;
+import edu.stanford.cs276.lm.TrigramKneserNeyLM;
+import edu.stanford.cs276.util.Options;
+
+import java.io.File;
 
 public class BuildModels {
 
@@ -11,6 +22,10 @@ public class BuildModels {
     public static void main(String[] args) throws Exception {
         long startTime = System.currentTimeMillis();
 
+        Options options = Options.parse(args, "format", "threads", "quantize", "prune", "sketch-width",
+                "sketch-depth", "external", "run-size", "order");
+        args = options.positional();
+
         String trainingCorpus = null;
         String editsFile = null;
         String extra = null;
@@ -24,16 +39,93 @@ public class BuildModels {
                             "./buildmodels <training corpus dir> <training edit1s file> \n" +
                             "./buildmodels <training corpus dir> <training edit1s file> <extra> \n" +
                             "SAMPLE: ./buildmodels data/corpus data/edit1s.txt \n" +
-                            "SAMPLE: ./buildmodels data/corpus data/edit1s.txt extra \n"
+                            "SAMPLE: ./buildmodels data/corpus data/edit1s.txt extra \n" +
+                            "Options: \n" +
+                            "  --format=mapped|serialized  language model file format (default mapped) \n" +
+                            "  --threads=N                 corpus counting threads (default #cores) \n" +
+                            "  --quantize=8|16             store quantized counts of that many bits \n" +
+                            "                              (implies --format=serialized) \n" +
+                            "  --prune=N                   bounded memory: keep only bigrams occurring \n" +
+                            "                              N+ times, estimate the rest with a count-min \n" +
+                            "                              sketch (single threaded, two passes, \n" +
+                            "                              implies --format=serialized) \n" +
+                            "  --sketch-width=W            sketch counters per row (default " +
+                            PrunedNGramCounts.DEFAULT_SKETCH_WIDTH + ") \n" +
+                            "  --sketch-depth=D            sketch rows (default " +
+                            PrunedNGramCounts.DEFAULT_SKETCH_DEPTH + ") \n" +
+                            "  --external                  count bigrams out of core: spill sorted runs \n" +
+                            "                              to temporary files in the working directory \n" +
+                            "                              and merge them (single threaded) \n" +
+                            "  --run-size=N                bigrams per run (default " +
+                            ExternalNGramCounter.DEFAULT_RUN_SIZE + ") \n" +
+                            "  --order=2|3                 n-gram order (default 2); 3 adds trigram \n" +
+                            "                              Kneser-Ney to the extra model (implies \n" +
+                            "                              --format=serialized) \n"
                     );
             return;
         }
         // System.out.println("training corpus: " + args[0]);
 
-        if ("extra".equals(extra)) {
-            languageModel = LanguageModel.create(SmoothingType.KNENSER_NEY_SMOOTHING, trainingCorpus);
+        SmoothingType smoothingType = "extra".equals(extra)
+                ? SmoothingType.KNENSER_NEY_SMOOTHING : SmoothingType.LINEAR_INTERPOLATION;
+        int threads = options.getInt("threads", CorpusCounter.defaultThreads());
+        int prune = options.getInt("prune", 0);
+        int quantize = options.getInt("quantize", 0);
+        if (quantize != 0 && quantize != 8 && quantize != 16) {
+            System.err.println("--quantize must be 8 or 16 bits: " + quantize);
+            return;
+        }
+        int order = options.getInt("order", 2);
+        if (order != 2 && (order != 3 || smoothingType != SmoothingType.KNENSER_NEY_SMOOTHING)) {
+            System.err.println("--order=3 is only supported with extra (Kneser-Ney), and no other order");
+            return;
+        }
+        String format = options.get("format", "mapped");
+        if (!format.equals("mapped") && !format.equals("serialized")) {
+            System.err.println("Unknown --format: " + format + " (expected mapped or serialized)");
+            return;
+        }
+        if (options.has("format") && format.equals("mapped") && (quantize > 0 || prune > 0 || order > 2)) {
+            System.err.println("--format=mapped can't store quantized, pruned or trigram counts");
+            return;
+        }
+        if (prune > 0 && options.has("external")) {
+            System.err.println("--prune and --external count in different ways, give only one of them");
+            return;
+        }
+        // the mapped format derives the type statistics from the bigrams it
+        // stores and has no trigrams, so these models are serialized
+        boolean serialized = quantize > 0 || prune > 0 || order > 2
+                || format.equals("serialized");
+        // true once the language model file is written
+        boolean saved = false;
+
+        NGramCounts counts;
+        if (prune > 0) {
+            counts = PrunedNGramCounts.count(trainingCorpus, prune,
+                    options.getInt("sketch-width", PrunedNGramCounts.DEFAULT_SKETCH_WIDTH),
+                    options.getInt("sketch-depth", PrunedNGramCounts.DEFAULT_SKETCH_DEPTH));
+        } else if (options.has("external")) {
+            int runSize = options.getInt("run-size", ExternalNGramCounter.DEFAULT_RUN_SIZE);
+            if (serialized) {
+                counts = ExternalNGramCounter.count(trainingCorpus, runSize);
+            } else {
+                // merge straight into the mapped file, then map it
+                File file = new File(Config.languageModelFile);
+                ExternalNGramCounter.countToMapped(trainingCorpus, runSize, file, smoothingType);
+                counts = MappedNGramCounts.open(file);
+                saved = true;
+            }
         } else {
-            languageModel = LanguageModel.create(SmoothingType.LINEAR_INTERPOLATION, trainingCorpus);
+            counts = CorpusCounter.count(trainingCorpus, threads);
+        }
+        if (quantize > 0) {
+            counts = QuantizedNGramCounts.create(counts, quantize);
+        }
+        if (order > 2) {
+            languageModel = new TrigramKneserNeyLM(counts, TrigramCounts.count(trainingCorpus, counts));
+        } else {
+            languageModel = LanguageModel.create(smoothingType, counts);
         }
         noisyChannelModel = NoisyChannelModel.create(editsFile);
 
@@ -42,7 +134,14 @@ public class BuildModels {
         noisyChannelModel.save();
         // System.out.println("-- Completed!");
         // System.out.println("Saving language model...");
-        languageModel.save();
+        if (serialized) {
+            languageModel.save();
+        } else if (!saved) {
+            languageModel.saveMapped();
+        }
+        // System.out.println("-- Completed!");
+        // System.out.println("Saving candidate index...");
+        DeletionIndex.create(languageModel).save();
         // System.out.println("-- Completed!");
 
         if ("extra".equals(extra)) {
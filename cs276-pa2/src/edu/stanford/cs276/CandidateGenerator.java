@@ -1,8 +1,10 @@
 package edu.stanford.cs276;
 
+import edu.stanford.cs276.util.BoundedCache;
 import edu.stanford.cs276.util.Pair;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -11,16 +13,46 @@ public class CandidateGenerator implements Serializable {
 
     private static CandidateGenerator cg_;
 
+    // optional index of single token edits, for both kinds of candidates
+    private EditIndex index_;
+    // optional cache of getCandidatesForToken results
+    private transient BoundedCache<String, Set<String>> tokenCache_;
+
     // Don't use the constructor since this is a Singleton instance
     private CandidateGenerator() {}
 
-    public static CandidateGenerator get() throws Exception{
+    public static synchronized CandidateGenerator get() throws Exception{
         if (cg_ == null ){
             cg_ = new CandidateGenerator();
         }
         return cg_;
     }
 
+    /**
+     * Use the given index for single token edits. Pass null to fall back
+     * to enumerating edits.
+     */
+    public void setDeletionIndex(DeletionIndex index) {
+        setEditIndex(index);
+    }
+
+    /**
+     * Find single token edits with the given index (a DeletionIndex, a
+     * TrieVocabulary or an AutomatonIndex), for getCandidatesForToken and
+     * the whole query getKnownEdits; null to enumerate them.
+     */
+    public void setEditIndex(EditIndex index) {
+        index_ = index;
+    }
+
+    /**
+     * Remember the candidates of tokens in the given cache; pass null to
+     * stop caching. Cached sets are only valid for one vocabulary.
+     */
+    public void setTokenCache(BoundedCache<String, Set<String>> cache) {
+        tokenCache_ = cache;
+    }
+
 
     public static final Character[] alphabet = {
                     'a','b','c','d','e','f','g','h','i','j','k','l','m','n',
@@ -32,29 +64,242 @@ public class CandidateGenerator implements Serializable {
     // Generate all candidates for the target query
     public Set<String> getCandidates(String query, Vocabulary vocabulary) throws Exception {
         Set<String> results = new HashSet<String>();
-        Set<String> candidates = vocabulary.known(edits1(query));
+        Set<String> candidates = getKnownEdits(query, vocabulary);
         results.addAll(candidates);
         for (String s : candidates) {
-            results.addAll(vocabulary.known(edits1(s)));
+            results.addAll(getKnownEdits(s, vocabulary));
         }
 
         // System.out.println("Number of candidates:" + results.size());
         return results;
     }
 
+    /**
+     * The known edits of query, one round of getCandidates: getCandidates
+     * is the known edits of query and of each of them.
+     */
+    public Set<String> getKnownEdits(String query, Vocabulary vocabulary) {
+        if (index_ != null && isTidy(query)) {
+            return getIndexedKnownEdits(query, vocabulary);
+        }
+        return new KnownFilter(query, vocabulary).known(edits1(query));
+    }
+
+    /**
+     * Same result as known(edits1(query)) for a tidy query, built token by
+     * token. An edit of edits1 either stays inside one token, and the
+     * index has the known ones, or involves a space: it splits a token,
+     * splits it dropping a character, joins two tokens, joins them with a
+     * character in between or moves a character across the space between
+     * them. Those are few and checked directly.
+     *
+     * The skip of isSingleChar leaves a single character token only the
+     * edits after it: appending a character, and the edits joining it
+     * with the next token.
+     */
+    private Set<String> getIndexedKnownEdits(String query, Vocabulary vocabulary) {
+        String[] tokens = query.split(" ");
+        int n = tokens.length;
+        // prefixKnown[i]: tokens before i are known; suffixKnown[i]: tokens
+        // from i on are known
+        boolean[] prefixKnown = new boolean[n + 1];
+        boolean[] suffixKnown = new boolean[n + 1];
+        prefixKnown[0] = true;
+        for (int i = 0; i < n; i++) {
+            prefixKnown[i + 1] = prefixKnown[i] && vocabulary.contains(tokens[i]);
+        }
+        suffixKnown[n] = true;
+        for (int i = n - 1; i >= 0; i--) {
+            suffixKnown[i] = suffixKnown[i + 1] && vocabulary.contains(tokens[i]);
+        }
+
+        Set<String> results = new HashSet<String>();
+        // inserting a space next to one is the query again
+        if (prefixKnown[n]) {
+            results.add(query);
+        }
+        for (int i = 0; i < n; i++) {
+            String token = tokens[i];
+            int length = token.length();
+            if (prefixKnown[i] && suffixKnown[i + 1]) {
+                // the edits inside the token
+                if (length == 1) {
+                    for (Character c : alphabet) {
+                        if (c != ' ' && vocabulary.contains(token + c)) {
+                            addReplaced(tokens, i, 1, token + c, results);
+                        }
+                    }
+                } else {
+                    for (String term : index_.lookup(token)) {
+                        if (!term.equals(token)) {
+                            addReplaced(tokens, i, 1, term, results);
+                        }
+                    }
+                }
+
+                // a space inserted inside the token, or replacing a character
+                for (int k = 1; k < length; k++) {
+                    addIfKnown(tokens, i, 1, token.substring(0, k), token.substring(k), vocabulary, results);
+                    if (k < length - 1) {
+                        addIfKnown(tokens, i, 1, token.substring(0, k), token.substring(k + 1), vocabulary, results);
+                    }
+                }
+            }
+
+            if (i + 1 < n && prefixKnown[i] && suffixKnown[i + 2]) {
+                String next = tokens[i + 1];
+                // the space deleted, or replaced by a character
+                String joined = token + next;
+                if (vocabulary.contains(joined)) {
+                    addReplaced(tokens, i, 2, joined, results);
+                }
+                for (Character c : alphabet) {
+                    if (c != ' ' && vocabulary.contains(token + c + next)) {
+                        addReplaced(tokens, i, 2, token + c + next, results);
+                    }
+                }
+                // the space swapped with a neighbour
+                if (length > 1) {
+                    addIfKnown(tokens, i, 2, token.substring(0, length - 1),
+                            token.charAt(length - 1) + next, vocabulary, results);
+                }
+                if (next.length() > 1) {
+                    addIfKnown(tokens, i, 2, token + next.charAt(0), next.substring(1), vocabulary, results);
+                }
+            }
+        }
+        return results;
+    }
+
+    // add tokens with count tokens from i replaced by the known first and second
+    private static void addIfKnown(String[] tokens, int i, int count, String first, String second,
+                                   Vocabulary vocabulary, Set<String> results) {
+        if (vocabulary.contains(first) && vocabulary.contains(second)) {
+            addReplaced(tokens, i, count, first + " " + second, results);
+        }
+    }
+
+    // add tokens with count tokens from i replaced by replacement
+    private static void addReplaced(String[] tokens, int i, int count, String replacement, Set<String> results) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < tokens.length; j++) {
+            if (j == i) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(replacement);
+                j += count - 1;
+            } else {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(tokens[j]);
+            }
+        }
+        results.add(sb.toString());
+    }
+
+    // single spaces between non-empty tokens of characters above space
+    private static boolean isTidy(String query) {
+        int length = query.length();
+        if (length == 0 || query.charAt(0) == ' ' || query.charAt(length - 1) == ' ') {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = query.charAt(i);
+            if (c < ' ' || (c == ' ' && query.charAt(i - 1) == ' ')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public Set<String> getCandidatesForToken(String query, Vocabulary vocabulary) throws Exception {
+        BoundedCache<String, Set<String>> cache = tokenCache_;
+        if (cache == null) {
+            return generateCandidatesForToken(query, vocabulary);
+        }
+        Set<String> results = cache.get(query);
+        if (results == null) {
+            // shared between callers from now on
+            results = Collections.unmodifiableSet(generateCandidatesForToken(query, vocabulary));
+            cache.put(query, results);
+        }
+        return results;
+    }
+
+    private Set<String> generateCandidatesForToken(String query, Vocabulary vocabulary) throws Exception {
+        if (index_ != null) {
+            return getIndexedCandidatesForToken(query, vocabulary);
+        }
+
         Set<String> results = new HashSet<String>();
         if (vocabulary.exists(query)) {
             results.add(query);
         }
-        Set<String> candidates = vocabulary.known(edits1_nospace(query));
+        Set<String> candidates = new KnownFilter(query, vocabulary).known(edits1_nospace(query));
         results.addAll(candidates);
         for (String s : candidates) {
-            results.addAll(vocabulary.known(edits1(s)));
+            results.addAll(new KnownFilter(s, vocabulary).known(edits1(s)));
         }
         return results;
     }
 
+    /**
+     * Same result as the enumeration in getCandidatesForToken, but the
+     * known single token edits come from the index.
+     */
+    private Set<String> getIndexedCandidatesForToken(String query, Vocabulary vocabulary) {
+        Set<String> results = new HashSet<String>();
+        if (vocabulary.exists(query)) {
+            results.add(query);
+        }
+        Set<String> candidates = index_.lookup(query);
+        results.addAll(candidates);
+        for (String s : candidates) {
+            addKnownEdits1(s, vocabulary, results);
+        }
+        return results;
+    }
+
+    /**
+     * Add known(edits1(word)) to results for a known single token word.
+     */
+    private void addKnownEdits1(String word, Vocabulary vocabulary, Set<String> results) {
+        int length = word.length();
+        if (length == 0) {
+            return;
+        }
+        if (length == 1) {
+            // edits1 skips every edit touching a single character word
+            // except appending to it
+            results.add(word);
+            for (Character c : alphabet) {
+                String s = word + c;
+                if (c != ' ' && vocabulary.exists(s)) {
+                    results.add(s);
+                }
+            }
+            return;
+        }
+
+        results.addAll(index_.lookup(word));
+
+        // a space inserted inside the word, or replacing an inner character
+        for (int i = 1; i < length; i++) {
+            String split = word.substring(0, i) + " " + word.substring(i);
+            if (vocabulary.exists(split)) {
+                results.add(split);
+            }
+            if (i < length - 1) {
+                split = word.substring(0, i) + " " + word.substring(i + 1);
+                if (vocabulary.exists(split)) {
+                    results.add(split);
+                }
+            }
+        }
+    }
+
     public Set<String> getCandidatesForSplits(String word, LanguageModel languageModel) {
         Set<String> splits = new HashSet<String>();
         int length = word.length();
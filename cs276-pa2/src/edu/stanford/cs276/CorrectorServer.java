@@ -0,0 +1,334 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.util.Options;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resident spelling correction server. The models are loaded once; after
+ * that a query costs only its search.
+ *
+ * Protocol: a client connects to the local port and writes one query per
+ * line (UTF-8). For every line the server writes back one line with the
+ * correction, in the same order. Clients may pipeline, i.e. send any
+ * number of queries before reading answers.
+ *
+ * Queries of all connections are corrected on one bounded pool. When its
+ * queue is full the connection that submits runs the query itself, which
+ * stops it from reading more input until the pool catches up. At most
+ * maxConnections clients are served at once, each on a reader and a
+ * writer thread of a fixed pool; a client connecting beyond that is
+ * closed right away. A query whose correction fails is answered with the
+ * query itself and logged. On SIGTERM or SIGINT the server stops
+ * accepting, answers every query already read and then exits.
+ *
+ * Usage: CorrectorServer <uniform | empirical> [extra] [--port=N] [--threads=N] [--queue=N] [--connections=N]
+ *            [--beam=N] [--candidates=index|trie|automaton|enumerate] [--cache=N] [--token-cache=N]
+ *            [--eviction=lru|lfu] [--search-threads=N] [--early-exit=T] [--exhaustive]
+ */
+public class CorrectorServer {
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // answers a connection may have outstanding before it stops reading
+    private static final int MAX_PIPELINED = 1024;
+
+    // runs a query on the submitting connection when the queue is full and,
+    // unlike CallerRunsPolicy, also once the pool is shut down, so every
+    // future a writer waits for is completed
+    private static final RejectedExecutionHandler RUN_ON_CALLER = new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            task.run();
+        }
+    };
+
+    private final SpellCorrector corrector;
+    private final ServerSocket serverSocket;
+    private final ThreadPoolExecutor workers;
+    // a reader and a writer per connection
+    private final ExecutorService connections;
+    private final Semaphore connectionPermits;
+    // guarded by itself, which also orders hand-offs against shutdown()
+    private final Set<Socket> openSockets = new HashSet<Socket>();
+    private volatile boolean running = true;
+
+    public CorrectorServer(SpellCorrector corrector, int port, int threads, int queueSize, int maxConnections)
+            throws IOException {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Connections must be positive: " + maxConnections);
+        }
+        this.corrector = corrector;
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), RUN_ON_CALLER);
+        // the permits keep the tasks at two per thread, so none ever waits
+        connections = Executors.newFixedThreadPool(2 * maxConnections);
+        connectionPermits = new Semaphore(maxConnections);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accept connections until shutdown() is called.
+     */
+    public void serve() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Accept failed: " + e.getMessage());
+                }
+                continue;
+            }
+            if (!connectionPermits.tryAcquire()) {
+                System.err.println("Too many connections, closing " + socket.getRemoteSocketAddress());
+                close(socket);
+                continue;
+            }
+            synchronized (openSockets) {
+                if (!running) {
+                    close(socket);
+                    connectionPermits.release();
+                    break;
+                }
+                openSockets.add(socket);
+                hand(socket);
+            }
+        }
+    }
+
+    /**
+     * Stop accepting connections, finish the queries already read and
+     * close every connection.
+     */
+    public void shutdown() throws InterruptedException {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+        // end the input of every connection; its writer still sends the
+        // answers to what was read. serve() hands off no socket after this
+        synchronized (openSockets) {
+            for (Socket socket : openSockets) {
+                try {
+                    socket.shutdownInput();
+                } catch (IOException e) {
+                    // already closed
+                }
+            }
+        }
+        connections.shutdown();
+        connections.awaitTermination(30, TimeUnit.SECONDS);
+        workers.shutdown();
+        workers.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    // start the reader and the writer of a connection
+    private void hand(final Socket socket) {
+        final BlockingQueue<Pending> pending = new ArrayBlockingQueue<Pending>(MAX_PIPELINED);
+        connections.execute(new Runnable() {
+            @Override
+            public void run() {
+                read(socket, pending);
+            }
+        });
+        connections.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(socket, pending);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    synchronized (openSockets) {
+                        openSockets.remove(socket);
+                    }
+                    close(socket);
+                    connectionPermits.release();
+                }
+            }
+        });
+    }
+
+    // submit every query of the connection until its input ends, then END
+    private void read(Socket socket, BlockingQueue<Pending> pending) {
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF8));
+            String line;
+            while (running && (line = in.readLine()) != null) {
+                final String query = line;
+                pending.put(new Pending(query, workers.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return corrector.correct(query);
+                    }
+                })));
+            }
+        } catch (SocketException e) {
+            // closed by the client or by the writer
+        } catch (IOException e) {
+            System.err.println("Read failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                socket.shutdownInput();
+            } catch (IOException e) {
+                // already closed
+            }
+            try {
+                pending.put(Pending.END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // write the answers in order until END; once the client is gone keep
+    // taking them, so the reader never blocks on a full queue
+    private static void write(Socket socket, BlockingQueue<Pending> pending) throws InterruptedException {
+        Writer out = null;
+        try {
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), UTF8));
+        } catch (IOException e) {
+            // client went away
+            close(socket);
+        }
+        Pending next;
+        while ((next = pending.take()) != Pending.END) {
+            String answer = answer(next);
+            if (out == null) {
+                continue;
+            }
+            try {
+                out.write(answer);
+                out.write('\n');
+                // keep writing without a flush only while the next one is ready
+                Pending following = pending.peek();
+                if (following == null || following == Pending.END || !following.future.isDone()) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // client went away; closing ends the reader's readLine
+                out = null;
+                close(socket);
+            }
+        }
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                // client went away
+            }
+        }
+    }
+
+    private static String answer(Pending pending) throws InterruptedException {
+        try {
+            return pending.future.get();
+        } catch (ExecutionException e) {
+            System.err.println("Correction failed, answering [" + pending.query + "] unchanged: " + e.getCause());
+            return pending.query;
+        }
+    }
+
+    private static class Pending {
+        static final Pending END = new Pending(null, null);
+
+        final String query;
+        final Future<String> future;
+
+        Pending(String query, Future<String> future) {
+            this.query = query;
+            this.future = future;
+        }
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Options options = Options.parse(args,
+                RunCorrector.withSearchOptions("port", "threads", "queue", "connections", "beam"));
+        args = options.positional();
+        if (args.length < 1 || args.length > 2 || (args.length == 2 && !args[1].equals("extra"))) {
+            System.err.println(
+                    "Invalid arguments.  Argument count must be 1 or 2 \n" +
+                    "CorrectorServer <uniform | empirical> [extra] \n" +
+                    "Options: \n" +
+                    "  --port=N     local port to listen on (default 2760) \n" +
+                    "  --threads=N  worker threads (default #cores) \n" +
+                    "  --queue=N    queries waiting for a worker before clients are slowed down (default 1024) \n" +
+                    "  --connections=N  clients served at once, more are closed (default " +
+                    DEFAULT_MAX_CONNECTIONS + ") \n" +
+                    "  --beam=N     hypotheses kept per token with extra (default 50) \n" +
+                    RunCorrector.SEARCH_OPTIONS_USAGE +
+                    "SAMPLE: CorrectorServer empirical extra --port=2760 \n");
+            return;
+        }
+
+        LanguageModel languageModel = LanguageModel.load();
+        NoisyChannelModel nsm = NoisyChannelModel.load();
+        CandidateGenerator cg = CandidateGenerator.get();
+        RunCorrector.setUpCandidates(options, cg, languageModel);
+        final SpellCorrector corrector = new SpellCorrector(languageModel, nsm, args[0], cg, args.length == 2);
+        corrector.setBeamWidth(options.getInt("beam", SpellCorrector.DEFAULT_BEAM_WIDTH));
+        RunCorrector.setUpSearch(options, corrector);
+        final RunCorrector.Caches caches = RunCorrector.Caches.create(options, corrector, cg);
+
+        final CorrectorServer server = new CorrectorServer(corrector,
+                options.getInt("port", 2760),
+                options.getInt("threads", Runtime.getRuntime().availableProcessors()),
+                options.getInt("queue", 1024),
+                options.getInt("connections", DEFAULT_MAX_CONNECTIONS));
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.shutdown();
+                    caches.report();
+                    RunCorrector.reportSearch(options, corrector);
+                } catch (InterruptedException e) {
+                    // exiting anyway
+                }
+            }
+        }));
+
+        System.err.println("Listening on port " + server.getPort());
+        server.serve();
+    }
+}
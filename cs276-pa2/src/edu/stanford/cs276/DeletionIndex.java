@@ -0,0 +1,201 @@
+package edu.stanford.cs276;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Symmetric-delete (SymSpell style) index over the vocabulary.
+ *
+ * Every term is stored under itself and under each string obtained by
+ * deleting one of its characters. Two strings within one
+ * Damerau–Levenshtein edit of each other always share such a key, so all
+ * vocabulary terms one edit away from a word are found with |word| + 1 hash
+ * lookups followed by a cheap verification.
+ */
+public class DeletionIndex implements EditIndex, Serializable {
+    // fixed, so a saved index keeps loading after changes to methods or
+    // interfaces that leave the serialized fields alone
+    private static final long serialVersionUID = -3076013142033405127L;
+
+    // term id -> term
+    private String[] terms;
+    // deletion key -> ids of terms producing that key
+    private Map<String, int[]> postings;
+
+    // characters an insertion or substitution may introduce
+    // (must agree with CandidateGenerator.edits1_nospace)
+    static final boolean[] insertable = new boolean[Character.MAX_VALUE + 1];
+    static {
+        for (Character c : CandidateGenerator.alphabet) {
+            if (c != ' ') {
+                insertable[c] = true;
+            }
+        }
+    }
+
+    private DeletionIndex(Collection<String> vocabulary) {
+        terms = vocabulary.toArray(new String[vocabulary.size()]);
+        Arrays.sort(terms);
+
+        Map<String, List<Integer>> lists = new HashMap<String, List<Integer>>();
+        for (int id = 0; id < terms.length; ++id) {
+            for (String key : deletes(terms[id])) {
+                List<Integer> ids = lists.get(key);
+                if (ids == null) {
+                    ids = new ArrayList<Integer>(1);
+                    lists.put(key, ids);
+                }
+                ids.add(id);
+            }
+        }
+
+        postings = new HashMap<String, int[]>(lists.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<Integer>> e : lists.entrySet()) {
+            List<Integer> ids = e.getValue();
+            int[] arr = new int[ids.size()];
+            for (int i = 0; i < arr.length; ++i) {
+                arr[i] = ids.get(i);
+            }
+            postings.put(e.getKey(), arr);
+        }
+    }
+
+    public static DeletionIndex create(LanguageModel languageModel) {
+        return new DeletionIndex(languageModel.terms());
+    }
+
+    /**
+     * Return all vocabulary terms reachable from word by at most one
+     * deletion, insertion, substitution or adjacent transposition, where
+     * inserted and substituted characters come from the candidate alphabet
+     * (space excluded). This is exactly known(edits1_nospace(word)) for a
+     * single token, the word itself included when it is a term.
+     *
+     * @param word a single token
+     * @return non-null set of terms
+     */
+    @Override
+    public Set<String> lookup(String word) {
+        Set<String> results = new HashSet<String>();
+        Set<String> keys = deletes(word);
+        for (String key : keys) {
+            int[] ids = postings.get(key);
+            if (ids == null) {
+                continue;
+            }
+            for (int id : ids) {
+                String term = terms[id];
+                if (!results.contains(term) && withinOneEdit(word, term)) {
+                    results.add(term);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Return true if t can be obtained from s by at most one edit, with the
+     * alphabet restriction described in lookup().
+     */
+    private boolean withinOneEdit(String s, String t) {
+        final int N = s.length();
+        final int M = t.length();
+        if (Math.abs(N - M) > 1) {
+            return false;
+        }
+
+        // strip common prefix and suffix
+        int p = 0;
+        while (p < N && p < M && s.charAt(p) == t.charAt(p)) {
+            ++p;
+        }
+        if (p == N && p == M) {
+            return reachesItself(s);
+        }
+        int q = 0;
+        while (q < N - p && q < M - p && s.charAt(N - 1 - q) == t.charAt(M - 1 - q)) {
+            ++q;
+        }
+        int sLen = N - p - q;
+        int tLen = M - p - q;
+
+        if (sLen == 1 && tLen == 0) {
+            // deletion
+            return true;
+        } else if (sLen == 0 && tLen == 1) {
+            // insertion
+            return insertable[t.charAt(p)];
+        } else if (sLen == 1 && tLen == 1) {
+            // substitution
+            return insertable[t.charAt(p)];
+        } else if (sLen == 2 && tLen == 2) {
+            // transposition
+            return s.charAt(p) == t.charAt(p + 1) && s.charAt(p + 1) == t.charAt(p);
+        }
+        return false;
+    }
+
+    /**
+     * Return true if one edit turns word into itself: substituting a
+     * character by itself or swapping two equal neighbours.
+     */
+    static boolean reachesItself(String word) {
+        for (int i = 0; i < word.length(); ++i) {
+            if (insertable[word.charAt(i)] || (i > 0 && word.charAt(i) == word.charAt(i - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The word itself plus every string obtained by deleting one character.
+     */
+    private static Set<String> deletes(String word) {
+        Set<String> keys = new HashSet<String>(word.length() * 2 + 2);
+        keys.add(word);
+        for (int i = 0; i < word.length(); ++i) {
+            keys.add(word.substring(0, i) + word.substring(i + 1));
+        }
+        return keys;
+    }
+
+    public int size() {
+        return terms.length;
+    }
+
+    // Loads the index from disk
+    public static DeletionIndex load() throws Exception {
+        DeletionIndex index = null;
+
+        try {
+            FileInputStream fiA = new FileInputStream(Config.candidateGenFile);
+            ObjectInputStream oisA = new ObjectInputStream(fiA);
+            index = (DeletionIndex) oisA.readObject();
+            oisA.close();
+        } catch (Exception e) {
+            throw new Exception("Unable to load candidate index.  You may have not run build corrector");
+        }
+
+        return index;
+    }
+
+    // Saves the index to disk
+    public void save() throws Exception {
+        FileOutputStream saveFile = new FileOutputStream(Config.candidateGenFile);
+        ObjectOutputStream save = new ObjectOutputStream(saveFile);
+        save.writeObject(this);
+        save.close();
+    }
+}
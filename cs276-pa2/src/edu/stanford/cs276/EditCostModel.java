@@ -13,4 +13,11 @@ public interface EditCostModel extends Serializable {
      * @return
      */
     public double editProbability(String Q, String R, int distance);
+
+    /**
+     * An upper bound of editProbability(Q, R, distance) over all R
+     * different from Q: the log probability of the most probable single
+     * edit.
+     */
+    public double maxEditProbability();
 }
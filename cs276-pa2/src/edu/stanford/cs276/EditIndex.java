@@ -0,0 +1,17 @@
+package edu.stanford.cs276;
+
+import java.util.Set;
+
+/**
+ * Finds the vocabulary terms one edit away from a single token, for
+ * CandidateGenerator.getCandidatesForToken.
+ */
+public interface EditIndex {
+    /**
+     * Return known(edits1_nospace(word)): the terms reachable from word by
+     * at most one deletion, insertion, substitution or adjacent
+     * transposition, inserted and substituted characters taken from the
+     * candidate alphabet without space.
+     */
+    public Set<String> lookup(String word);
+}
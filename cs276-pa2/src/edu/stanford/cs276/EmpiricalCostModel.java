@@ -3,15 +3,19 @@ package edu.stanford.cs276;
 import edu.stanford.cs276.edit.Edit;
 import edu.stanford.cs276.edit.EditDistance;
 import edu.stanford.cs276.edit.EditType;
+import edu.stanford.cs276.edit.EditWeights;
 import edu.stanford.cs276.util.MapUtility;
 import edu.stanford.cs276.util.Pair;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.*;
 
 public class EmpiricalCostModel implements EditCostModel{
+    // pinned so models saved before the tables existed still load
+    private static final long serialVersionUID = 3047589060454884232L;
 
     // the alphabet, use Set to fast lookup
     private Set<Character> alphabet;
@@ -31,6 +35,9 @@ public class EmpiricalCostModel implements EditCostModel{
     private Map<Pair<Character, Character>, Integer> substitutionCounts;
     private Map<Pair<Character, Character>, Integer> transpositionCounts;
 
+    // the counts above finalized into smoothed log probabilities
+    private transient EditWeights weights;
+
     public EmpiricalCostModel(String editsFile) throws IOException {
         loadAlphabet();
 
@@ -75,6 +82,58 @@ public class EmpiricalCostModel implements EditCostModel{
 
         input.close();
         // System.out.println("Done.");
+
+        buildTables();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        buildTables();
+    }
+
+    /**
+     * Precompute the log probability of every edit between character
+     * classes, so scoring an edit is one array read.
+     */
+    private void buildTables() {
+        List<Character> classes = new ArrayList<Character>();
+        for (Character c : CandidateGenerator.alphabet) {
+            classes.add(c);
+        }
+        classes.add(EditDistance.BEGIN_CHAR);
+        classes.add(unknownCharacter);
+
+        int[] asciiClass = new int[128];
+        int unknownClass = classes.size() - 1;
+        Arrays.fill(asciiClass, unknownClass);
+        for (int i = 0; i < classes.size(); ++i) {
+            char c = classes.get(i);
+            if (c < 128 && characterClass(c) == c) {
+                asciiClass[c] = i;
+            }
+        }
+
+        int n = classes.size();
+        double[][][] logProbabilities = new double[EditType.values().length][n][n];
+        for (int i = 0; i < n; ++i) {
+            char x = classes.get(i);
+            // contexts never seen in training count as zero
+            double unigram = MapUtility.getWithFallback(unigramCounts, x, 0);
+            for (int j = 0; j < n; ++j) {
+                char y = classes.get(j);
+                Pair<Character, Character> p = new Pair<Character, Character>(x, y);
+                double bigram = MapUtility.getWithFallback(bigramCounts, "" + x + y, 0);
+                logProbabilities[EditType.DELETION.ordinal()][i][j] =
+                        Math.log(smooth(MapUtility.getWithFallback(deletionCounts, p, 0), bigram));
+                logProbabilities[EditType.INSERTION.ordinal()][i][j] =
+                        Math.log(smooth(MapUtility.getWithFallback(insertionCounts, p, 0), unigram));
+                logProbabilities[EditType.SUBSTITUTION.ordinal()][i][j] =
+                        Math.log(smooth(MapUtility.getWithFallback(substitutionCounts, p, 0), unigram));
+                logProbabilities[EditType.TRANSPOSITION.ordinal()][i][j] =
+                        Math.log(smooth(MapUtility.getWithFallback(transpositionCounts, p, 0), bigram));
+            }
+        }
+        weights = new EditWeights(asciiClass, unknownClass, logProbabilities);
     }
 
     private void updateCharacterCounts(final String word) {
@@ -153,41 +212,60 @@ public class EmpiricalCostModel implements EditCostModel{
             return Math.log(0.9);
         }
 
-        List<Edit> edits = EditDistance.determineEdits(Q, R);
-        assert edits.size() > 0;
-        double prob = 0.0;
-        for (Edit edit : edits) {
-            char x = characterClass(edit.x);
-            char y = characterClass(edit.y);
-            Pair<Character, Character> p = new Pair<Character, Character>(x, y);
-
-            StringBuilder bigram = new StringBuilder("@@");
-            bigram.setCharAt(0, x);
-            bigram.setCharAt(1, y);
-
-            double count = 1;
-            double total = 2;
-
-            if (edit.type == EditType.DELETION) {
-                count = MapUtility.getWithFallback(deletionCounts, p, 0);
-                total = bigramCounts.get(bigram.toString());
-            } else if (edit.type == EditType.INSERTION) {
-                count = MapUtility.getWithFallback(insertionCounts, p, 0);
-                total = unigramCounts.get(x);
-            } else if (edit.type == EditType.SUBSTITUTION) {
-                count = MapUtility.getWithFallback(substitutionCounts, p, 0);
-                total = unigramCounts.get(x);
-            } else if (edit.type == EditType.TRANSPOSITION) {
-                count = MapUtility.getWithFallback(transpositionCounts, p, 0);
-                total = bigramCounts.get(bigram.toString());
-            }
+        // the most probable alignment, not just any with the fewest edits
+        return EditDistance.bestAlignment(Q, R, weights);
+    }
 
-            prob += Math.log(smooth(count, total));
-        }
+    // every alignment of different strings has an edit, none scoring above 0
+    @Override
+    public double maxEditProbability() {
+        return weights.maxLogProbability();
+    }
 
+    /**
+     * The score before bestAlignment: the edits of one minimal alignment,
+     * as determineEdits picks it.
+     */
+    double minimalEditProbability(String Q, String R) {
+        if (Q.equals(R)) {
+            return Math.log(0.9);
+        }
+        double prob = 0.0;
+        for (Edit edit : EditDistance.determineEdits(Q, R)) {
+            prob += weights.logProbability(edit.type, edit.x, edit.y);
+        }
         return prob;
     }
 
+    /**
+     * The log probability of one edit as the tables store it.
+     */
+    double logProbability(EditType type, char x, char y) {
+        return weights.logProbability(type, x, y);
+    }
+
+    /**
+     * The same log probability read from the count maps, the way the
+     * model scored edits before the tables; for checking them.
+     */
+    double countedLogProbability(EditType type, char x, char y) {
+        char xClass = characterClass(x);
+        char yClass = characterClass(y);
+        Pair<Character, Character> p = new Pair<Character, Character>(xClass, yClass);
+        double bigram = MapUtility.getWithFallback(bigramCounts, "" + xClass + yClass, 0);
+        double unigram = MapUtility.getWithFallback(unigramCounts, xClass, 0);
+        switch (type) {
+            case DELETION:
+                return Math.log(smooth(MapUtility.getWithFallback(deletionCounts, p, 0), bigram));
+            case INSERTION:
+                return Math.log(smooth(MapUtility.getWithFallback(insertionCounts, p, 0), unigram));
+            case SUBSTITUTION:
+                return Math.log(smooth(MapUtility.getWithFallback(substitutionCounts, p, 0), unigram));
+            default:
+                return Math.log(smooth(MapUtility.getWithFallback(transpositionCounts, p, 0), bigram));
+        }
+    }
+
     // apply Laplace smoothing
     private double smooth(double count, double total) {
         return (count + 1) / (total + alphabet.size());
@@ -0,0 +1,151 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.util.Tokenizer;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Vocabulary.known for the edits of one query.
+ *
+ * An edit of the query shares a prefix and a suffix with it, and the
+ * tokens lying wholly inside those are tokens of the query, whose
+ * membership is worked out once up front. Only the tokens touching the
+ * changed span are looked up, so a candidate one edit away costs one
+ * dictionary probe (two if the edit splits a token) instead of one per
+ * word and a regex split.
+ */
+public class KnownFilter {
+    private final String query;
+    private final Vocabulary vocabulary;
+    // prefixKnown[i]: every token ending at or before i is a term;
+    // suffixKnown[i]: every token starting at or after i is a term
+    private final boolean[] prefixKnown;
+    private final boolean[] suffixKnown;
+    // false if the query has control characters, which trim() and
+    // split() disagree on; then every candidate is checked in full
+    private final boolean incremental;
+
+    public KnownFilter(String query, Vocabulary vocabulary) {
+        this.query = query;
+        this.vocabulary = vocabulary;
+        int n = query.length();
+        boolean plain = true;
+        for (int i = 0; i < n; ++i) {
+            char c = query.charAt(i);
+            plain &= c > ' ' || Tokenizer.isWhitespace(c);
+        }
+        incremental = plain;
+        prefixKnown = new boolean[n + 1];
+        suffixKnown = new boolean[n + 1];
+
+        boolean known = true;
+        prefixKnown[0] = true;
+        for (int i = 0; i < n; ++i) {
+            if (!Tokenizer.isWhitespace(query.charAt(i))
+                    && (i + 1 == n || Tokenizer.isWhitespace(query.charAt(i + 1)))) {
+                known &= vocabulary.contains(query.substring(tokenStart(query, i), i + 1));
+            }
+            prefixKnown[i + 1] = known;
+        }
+        known = true;
+        suffixKnown[n] = true;
+        for (int i = n - 1; i >= 0; --i) {
+            if (!Tokenizer.isWhitespace(query.charAt(i))
+                    && (i == 0 || Tokenizer.isWhitespace(query.charAt(i - 1)))) {
+                known &= vocabulary.contains(query.substring(i, tokenEnd(query, i)));
+            }
+            suffixKnown[i] = known;
+        }
+    }
+
+    /**
+     * Same as vocabulary.exists(candidate).
+     */
+    public boolean exists(String candidate) {
+        if (!incremental || !hasToken(candidate, 0, candidate.length())) {
+            return vocabulary.exists(candidate);
+        }
+        TokenWindow window = new TokenWindow(query, candidate);
+        if (!prefixKnown[window.start] || !suffixKnown[window.queryEnd]) {
+            return false;
+        }
+        return allKnown(vocabulary, candidate, window.start, window.end);
+    }
+
+    public Set<String> known(Set<String> candidates) {
+        Set<String> results = new HashSet<String>();
+        for (String s : candidates) {
+            if (exists(s)) {
+                results.add(s);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Return true if every whitespace separated token of s[from, to) is
+     * a term, without splitting s.
+     */
+    public static boolean allKnown(Vocabulary vocabulary, String s, int from, int to) {
+        int i = from;
+        while (i < to) {
+            if (Tokenizer.isWhitespace(s.charAt(i))) {
+                ++i;
+                continue;
+            }
+            int j = i + 1;
+            while (j < to && !Tokenizer.isWhitespace(s.charAt(j))) {
+                ++j;
+            }
+            if (!vocabulary.contains(s.substring(i, j))) {
+                return false;
+            }
+            i = j;
+        }
+        return true;
+    }
+
+    /**
+     * Same as Vocabulary.exists for the usual implementations: every
+     * token of word.trim().split("\\s+") is a term.
+     */
+    public static boolean exists(Vocabulary vocabulary, String word) {
+        // String.trim() strips every character <= ' ', \s is narrower
+        int from = 0, to = word.length();
+        while (from < to && word.charAt(from) <= ' ') {
+            ++from;
+        }
+        while (to > from && word.charAt(to - 1) <= ' ') {
+            --to;
+        }
+        if (from == to) {
+            // split leaves a single empty token
+            return vocabulary.contains("");
+        }
+        return allKnown(vocabulary, word, from, to);
+    }
+
+    private static boolean hasToken(String s, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            if (s.charAt(i) > ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int tokenStart(String s, int i) {
+        while (i > 0 && !Tokenizer.isWhitespace(s.charAt(i - 1))) {
+            --i;
+        }
+        return i;
+    }
+
+    private static int tokenEnd(String s, int i) {
+        while (i < s.length() && !Tokenizer.isWhitespace(s.charAt(i))) {
+            ++i;
+        }
+        return i;
+    }
+}
@@ -1,22 +1,26 @@
 package edu.stanford.cs276;
 
 import edu.stanford.cs276.lm.AbsoluteDiscountLM;
+import edu.stanford.cs276.lm.CorpusCounter;
 import edu.stanford.cs276.lm.InterpolationLM;
 import edu.stanford.cs276.lm.KneserNeyLM;
+import edu.stanford.cs276.lm.MappedModelWriter;
+import edu.stanford.cs276.lm.MappedNGramCounts;
+import edu.stanford.cs276.lm.NGramCounts;
+import edu.stanford.cs276.lm.PrunedNGramCounts;
+import edu.stanford.cs276.lm.QuantizedNGramCounts;
 import edu.stanford.cs276.lm.SmoothingType;
-import edu.stanford.cs276.util.MapUtility;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
 public abstract class LanguageModel implements Vocabulary, Serializable {
@@ -24,16 +28,22 @@ public abstract class LanguageModel implements Vocabulary, Serializable {
     protected double totalTokens;
     // total number of terms
     protected double totalTerms;
-    // w -> probability
-    protected Map<String, Integer> unigramCounts;
-    // <w1, w2> -> probability
-    protected Map<String, Map<String, Integer>> bigramCounts;
+    // unigram and bigram counts by term id
+    protected NGramCounts counts;
+    // maxProbability and maxProbabilityAfter, computed when first asked for
+    private transient volatile ProbabilityBounds bounds;
 
     // Do not call constructor directly since this is a Singleton
     protected LanguageModel(String corpusFilePath) throws Exception {
         constructDictionaries(corpusFilePath);
     }
 
+    // Wrap counts that were built or mapped elsewhere
+    protected LanguageModel(NGramCounts counts) {
+        this.counts = counts;
+        initialize();
+    }
+
     public static LanguageModel create(SmoothingType st, final String corpusFilePath) throws Exception {
         if (st == SmoothingType.LINEAR_INTERPOLATION) {
             return new InterpolationLM(corpusFilePath);
@@ -46,19 +56,29 @@ public abstract class LanguageModel implements Vocabulary, Serializable {
         return null;
     }
 
+    public static LanguageModel create(SmoothingType st, NGramCounts counts) {
+        if (st == SmoothingType.LINEAR_INTERPOLATION) {
+            return new InterpolationLM(counts);
+        } else if (st == SmoothingType.ABSOLUTE_DISCOUNTING) {
+            return new AbsoluteDiscountLM(counts);
+        } else if (st == SmoothingType.KNENSER_NEY_SMOOTHING) {
+            return new KneserNeyLM(counts);
+        }
+
+        return null;
+    }
+
+    public abstract SmoothingType smoothingType();
+
+    @Override
+    public boolean contains(String term) {
+        return counts.id(term) >= 0;
+    }
+
     @Override
     public boolean exists(String word) {
-        // if the word exists in vocabulary, it must be a key
-        String[] tokens = word.trim().split("\\s+");
-        if (tokens.length == 0) {
-            return false;
-        }
-        for (String token : tokens) {
-            if (!unigramCounts.containsKey(token)) {
-                return false;
-            }
-        }
-        return true;
+        // if the word exists in vocabulary, each token must be a key
+        return KnownFilter.exists(this, word);
     }
 
     @Override
@@ -72,6 +92,31 @@ public abstract class LanguageModel implements Vocabulary, Serializable {
         return results;
     }
 
+    /**
+     * The counts this model smooths; create() can wrap them with another
+     * smoothing type.
+     */
+    public NGramCounts counts() {
+        return counts;
+    }
+
+    /**
+     * All terms of the training corpus.
+     */
+    public List<String> terms() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return counts.term(index);
+            }
+
+            @Override
+            public int size() {
+                return counts.size();
+            }
+        };
+    }
+
     /**
      * Compute unigram probability of w in the training corpus.
      *
@@ -79,10 +124,11 @@ public abstract class LanguageModel implements Vocabulary, Serializable {
      * @return the probability, 0 if the world doesn't exist in corpus
      */
     public double unigramProbability(String w) {
-        int count = 0;
-        if (unigramCounts.containsKey(w)) {
-            count = unigramCounts.get(w);
-        }
+        return unigramProbability(counts.id(w));
+    }
+
+    public double unigramProbability(int w) {
+        int count = counts.unigramCount(w);
         return (count + 1) / (totalTokens + totalTerms); // Apply add-one smoothing
     }
 
@@ -93,10 +139,82 @@ public abstract class LanguageModel implements Vocabulary, Serializable {
      * @param w2
      * @return the probability (with possible smoothing applied)
      */
-    public abstract double bigramProbability(String w1, String w2);
+    public double bigramProbability(String w1, String w2) {
+        return bigramProbability(counts.id(w1), counts.id(w2));
+    }
+
+    /**
+     * Same as bigramProbability(String, String) on term ids, -1 standing
+     * for a term outside the vocabulary.
+     */
+    public abstract double bigramProbability(int w1, int w2);
+
+    /**
+     * The number of words an n-gram of this model spans: 2 unless the
+     * model conditions on two words of history.
+     */
+    public int order() {
+        return 2;
+    }
+
+    /**
+     * Probability of w3 given w1 w2, on term ids. A bigram model ignores
+     * w1; any model falls back to bigramProbability(w2, w3) when w1 is
+     * unknown (-1).
+     */
+    public double trigramProbability(int w1, int w2, int w3) {
+        return bigramProbability(w2, w3);
+    }
+
+    /**
+     * An upper bound of the probability of w after any history: the
+     * largest bigramProbability(w1, w) of any w1, or 1 for a model whose
+     * probabilities this doesn't bound. The first call of this or
+     * maxProbabilityAfter goes through all bigrams of counts.
+     */
+    public double maxProbability(int w) {
+        if (w < 0) {
+            return unseenBigramBound(w);
+        }
+        return probabilityBounds().max[w];
+    }
+
+    /**
+     * An upper bound of the probability of any term after w1: the largest
+     * bigramProbability(w1, w2) of any w2, or 1 for a model whose
+     * probabilities this doesn't bound. -1 stands for no history, the
+     * first term of a sentence: the largest unigramProbability.
+     */
+    public double maxProbabilityAfter(int w1) {
+        ProbabilityBounds b = probabilityBounds();
+        return w1 < 0 ? b.maxFirst : b.maxAfter[w1];
+    }
+
+    private ProbabilityBounds probabilityBounds() {
+        ProbabilityBounds b = bounds;
+        if (b == null) {
+            synchronized (this) {
+                if (bounds == null) {
+                    bounds = new ProbabilityBounds(this);
+                }
+                b = bounds;
+            }
+        }
+        return b;
+    }
+
+    /**
+     * An upper bound of bigramProbability(w1, w2) for the w1 that never
+     * preceded w2, unknown ones included. 1 unless the smoothing knows a
+     * better one.
+     */
+    protected double unseenBigramBound(int w2) {
+        return 1;
+    }
 
     /**
      * P(w1, w2, ..., wn) = uP(w1)bP(w2|w1)bP(w3|w2)...bP(wn|wn-1)
+     * or with tP(wi|wi-2 wi-1) from w3 on for a trigram model.
      * All words should exist in the training corpus.
      *
      * @param sentence
@@ -104,57 +222,31 @@ public abstract class LanguageModel implements Vocabulary, Serializable {
      */
     public double computeProbability(String sentence) {
         String[] tokens = sentence.split("\\s+");
-        double prob = Math.log(unigramProbability(tokens[0]));
-        for (int i = 1; i < tokens.length; ++i)
-            prob += Math.log(bigramProbability(tokens[i - 1], tokens[i]));
+        int prev = counts.id(tokens[0]);
+        double prob = Math.log(unigramProbability(prev));
+        if (order() > 2) {
+            int prev2 = -1;
+            for (int i = 1; i < tokens.length; ++i) {
+                int curr = counts.id(tokens[i]);
+                prob += Math.log(i == 1 ? bigramProbability(prev, curr) : trigramProbability(prev2, prev, curr));
+                prev2 = prev;
+                prev = curr;
+            }
+            return prob;
+        }
+        for (int i = 1; i < tokens.length; ++i) {
+            int curr = counts.id(tokens[i]);
+            prob += Math.log(bigramProbability(prev, curr));
+            prev = curr;
+        }
         return prob;
     }
 
     public void constructDictionaries(String corpusFilePath)
             throws Exception {
-        unigramCounts = new HashMap<String, Integer>();
-        bigramCounts = new HashMap<String, Map<String, Integer>>();
-
         // System.out.println("Constructing dictionaries...");
-        File dir = new File(corpusFilePath);
-        for (File file : dir.listFiles()) {
-            // ignore hidden files
-            if (file.getName().charAt(0) == '.') {
-                continue; // Ignore the self and parent aliases.
-            }
-
-            // System.out.printf("Reading data file %s ...\n", file.getName());
-            BufferedReader input = new BufferedReader(new FileReader(file));
-            String line = null;
-            while ((line = input.readLine()) != null) {
-                String[] tokens = line.trim().split("\\s+");
-                if (tokens.length == 0) {
-                    continue;
-                }
-
-                // process first token: only need to update unigramCounts
-                MapUtility.incrementCount(tokens[0], unigramCounts);
-
-                // process the rest tokens
-                for (int i = 1; i < tokens.length; ++i) {
-                    // increment unigram count
-                    MapUtility.incrementCount(tokens[i], unigramCounts);
-
-                    // increment bigram count
-                    Map<String, Integer> counts = bigramCounts.get(tokens[i - 1]);
-                    if (counts == null) {
-                        counts = new HashMap<String, Integer>();
-                        bigramCounts.put(tokens[i - 1], counts);
-                    }
-                    MapUtility.incrementCount(tokens[i], counts);
-                }
-            }
-            input.close();
-        }
-
-        // cache total number of terms
-        totalTokens = sum(unigramCounts);
-        totalTerms = unigramCounts.keySet().size() + 1; // Account for unknown token
+        counts = CorpusCounter.count(corpusFilePath, CorpusCounter.defaultThreads());
+        initialize();
 
         // Note: no need to pre-compute all unigram and bigram probabilities
         //       as we will only use a fraction of them
@@ -162,26 +254,41 @@ public abstract class LanguageModel implements Vocabulary, Serializable {
         // System.out.println("Done.");
     }
 
-    private static int sum(Map<String, Integer> unigramCounts) {
-        int sum = 0;
-
-        for (int i : unigramCounts.values()) {
-            sum += i;
-        }
-
-        return sum;
+    /**
+     * Derive the statistics the smoothing needs from counts. Subclasses
+     * extend this to cache their own.
+     */
+    protected void initialize() {
+        // cache total number of terms
+        totalTokens = counts.totalTokens();
+        totalTerms = counts.size() + 1; // Account for unknown token
     }
 
     // Loads the object (and all associated data) from disk
     public static LanguageModel load() throws Exception {
+        return load(Config.languageModelFile);
+    }
+
+    /**
+     * Load a language model in either format: a mapped model file is
+     * opened in place, anything else is read with Java serialization.
+     */
+    public static LanguageModel load(String path) throws Exception {
         LanguageModel lm_ = null;
 
         try {
-            FileInputStream fiA = new FileInputStream(Config.languageModelFile);
-            ObjectInputStream oisA = new ObjectInputStream(fiA);
-            lm_ = (LanguageModel) oisA.readObject();
+            File file = new File(path);
+            if (MappedNGramCounts.isMappedModel(file)) {
+                MappedNGramCounts counts = MappedNGramCounts.open(file);
+                lm_ = create(counts.smoothingType(), counts);
+            } else {
+                FileInputStream fiA = new FileInputStream(file);
+                ObjectInputStream oisA = new ObjectInputStream(fiA);
+                lm_ = (LanguageModel) oisA.readObject();
+                oisA.close();
+            }
         } catch (Exception e) {
-            throw new Exception("Unable to load language model.  You may have not run build corrector");
+            throw new Exception("Unable to load language model.  You may have not run build corrector", e);
         }
 
         return lm_;
@@ -189,9 +296,62 @@ public abstract class LanguageModel implements Vocabulary, Serializable {
 
     // Saves the object (and all associated data) to disk
     public void save() throws Exception {
-        FileOutputStream saveFile = new FileOutputStream(Config.languageModelFile);
+        save(Config.languageModelFile);
+    }
+
+    // Saves with Java serialization; mapped counts are copied to the heap
+    public void save(String path) throws Exception {
+        FileOutputStream saveFile = new FileOutputStream(path);
         ObjectOutputStream save = new ObjectOutputStream(saveFile);
         save.writeObject(this);
         save.close();
     }
+
+    // Saves in the memory-mapped format
+    public void saveMapped() throws Exception {
+        saveMapped(Config.languageModelFile);
+    }
+
+    // The mapped format holds exact bigram counts and derives the type
+    // statistics from them, so it would drop trigrams and replace the
+    // estimates of pruned or quantized counts
+    public void saveMapped(String path) throws Exception {
+        if (order() > 2) {
+            throw new Exception("The mapped format has no trigrams, save this order " + order()
+                    + " model serialized");
+        }
+        if (counts instanceof PrunedNGramCounts || counts instanceof QuantizedNGramCounts) {
+            throw new Exception("The mapped format only stores exact counts, save "
+                    + counts.getClass().getSimpleName() + " serialized");
+        }
+        MappedModelWriter.write(new File(path), smoothingType(), counts);
+    }
+
+    private static class ProbabilityBounds {
+        final double[] max;
+        final double[] maxAfter;
+        double maxFirst = 0;
+
+        ProbabilityBounds(final LanguageModel model) {
+            int size = model.counts.size();
+            max = new double[size];
+            maxAfter = new double[size];
+            // what a bigram nobody saw can have, whatever its history
+            double maxUnseen = model.unseenBigramBound(-1);
+            for (int w = 0; w < size; ++w) {
+                max[w] = model.unseenBigramBound(w);
+                maxUnseen = Math.max(maxUnseen, max[w]);
+                maxFirst = Math.max(maxFirst, model.unigramProbability(w));
+            }
+            Arrays.fill(maxAfter, maxUnseen);
+            model.counts.forEachBigram(new NGramCounts.BigramVisitor() {
+                @Override
+                public void visit(int w1, int w2, int count) {
+                    double p = model.bigramProbability(w1, w2);
+                    max[w2] = Math.max(max[w2], p);
+                    maxAfter[w1] = Math.max(maxAfter[w1], p);
+                }
+            });
+        }
+    }
 }
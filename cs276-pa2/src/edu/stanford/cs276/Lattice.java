@@ -0,0 +1,210 @@
+package edu.stanford.cs276;
+
+import java.util.Arrays;
+
+/**
+ * Beam search lattice for SpellCorrector.viterbi. Column i holds the best
+ * hypotheses covering the first i tokens of a query, at most beamWidth
+ * of them, in a min-heap with the worst hypothesis on top.
+ *
+ * Hypotheses live in parallel arrays and point back to their
+ * predecessor, so a path is only spelled out once, for the winner.
+ * Among equal scores the hypothesis added first ranks higher; ties are
+ * kept, not dropped.
+ */
+public class Lattice {
+    private final int beamWidth;
+
+    // hypotheses, in the order they were added
+    private String[] text;
+    private int[] word;
+    // the word before word, for trigram histories
+    private int[] previous;
+    private int[] back;
+    private double[] score;
+    private int size;
+
+    // per column heaps of hypothesis indices
+    private int[][] columns;
+    private int[] columnSize;
+
+    public Lattice(int beamWidth, int numColumns) {
+        if (beamWidth < 1) {
+            throw new IllegalArgumentException("Beam width must be positive: " + beamWidth);
+        }
+        this.beamWidth = beamWidth;
+        int capacity = Math.min(beamWidth, 64) * numColumns + 1;
+        text = new String[capacity];
+        word = new int[capacity];
+        previous = new int[capacity];
+        back = new int[capacity];
+        score = new double[capacity];
+        size = 0;
+        columns = new int[numColumns][];
+        columnSize = new int[numColumns];
+    }
+
+    /**
+     * Add a hypothesis to column unless the column is full of better ones.
+     *
+     * @param text the words this hypothesis appends to the path of back
+     * @param word id of its last word, the history of the next n-gram
+     * @param back the predecessor, or -1 to start a new path
+     * @return the index of the hypothesis, -1 if it was not kept
+     */
+    public int add(int column, String text, int word, int back, double score) {
+        return add(column, text, back >= 0 ? this.word[back] : -1, word, back, score);
+    }
+
+    /**
+     * Same as add(column, text, word, back, score) for a text of several
+     * words, whose second to last word previous is not the last word of
+     * back.
+     */
+    public int add(int column, String text, int previous, int word, int back, double score) {
+        int[] heap = columns[column];
+        if (heap == null) {
+            heap = columns[column] = new int[Math.min(beamWidth, 16)];
+        }
+        int n = columnSize[column];
+        if (n == beamWidth) {
+            // new hypotheses lose ties, so only a strictly higher score
+            // displaces the worst
+            if (!(score > this.score[heap[0]])) {
+                return -1;
+            }
+            int h = newHypothesis(text, previous, word, back, score);
+            heap[0] = h;
+            siftDown(heap, 0, n);
+            return h;
+        }
+
+        if (n == heap.length) {
+            heap = columns[column] = Arrays.copyOf(heap, Math.min(beamWidth, n * 2));
+        }
+        int h = newHypothesis(text, previous, word, back, score);
+        heap[n] = h;
+        columnSize[column] = n + 1;
+        siftUp(heap, n);
+        return h;
+    }
+
+    /**
+     * The hypotheses of column, best first.
+     */
+    public int[] ranked(int column) {
+        int n = columnSize[column];
+        int[] result = new int[n];
+        if (n == 0) {
+            return result;
+        }
+        // pop the worst off a copy of the heap until it is empty
+        int[] heap = Arrays.copyOf(columns[column], n);
+        while (n > 0) {
+            result[n - 1] = heap[0];
+            heap[0] = heap[--n];
+            siftDown(heap, 0, n);
+        }
+        return result;
+    }
+
+    public double score(int h) {
+        return score[h];
+    }
+
+    /**
+     * The predecessor of hypothesis h, -1 if it starts a path.
+     */
+    public int back(int h) {
+        return back[h];
+    }
+
+    public int word(int h) {
+        return word[h];
+    }
+
+    /**
+     * The word before word(h) on the path of h, -1 if there is none.
+     */
+    public int previousWord(int h) {
+        return previous[h];
+    }
+
+    /**
+     * The path ending at hypothesis h: the texts along its back pointers,
+     * each preceded by a space unless it starts the path.
+     */
+    public String path(int h) {
+        StringBuilder path = new StringBuilder();
+        int steps = 0;
+        int[] chain = new int[16];
+        for (int i = h; i >= 0; i = back[i]) {
+            if (steps == chain.length) {
+                chain = Arrays.copyOf(chain, steps * 2);
+            }
+            chain[steps++] = i;
+        }
+        for (int i = steps - 1; i >= 0; --i) {
+            int node = chain[i];
+            if (back[node] >= 0) {
+                path.append(' ');
+            }
+            path.append(text[node]);
+        }
+        return path.toString();
+    }
+
+    // true if hypothesis a ranks below b
+    private boolean worse(int a, int b) {
+        return score[a] < score[b] || (score[a] == score[b] && a > b);
+    }
+
+    private int newHypothesis(String text, int previous, int word, int back, double score) {
+        if (size == this.text.length) {
+            int capacity = size * 2;
+            this.text = Arrays.copyOf(this.text, capacity);
+            this.word = Arrays.copyOf(this.word, capacity);
+            this.previous = Arrays.copyOf(this.previous, capacity);
+            this.back = Arrays.copyOf(this.back, capacity);
+            this.score = Arrays.copyOf(this.score, capacity);
+        }
+        this.text[size] = text;
+        this.word[size] = word;
+        this.previous[size] = previous;
+        this.back[size] = back;
+        this.score[size] = score;
+        return size++;
+    }
+
+    private void siftUp(int[] heap, int i) {
+        int h = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(h, heap[parent])) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = h;
+    }
+
+    private void siftDown(int[] heap, int i, int n) {
+        int h = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) {
+                break;
+            }
+            if (child + 1 < n && worse(heap[child + 1], heap[child])) {
+                ++child;
+            }
+            if (!worse(heap[child], h)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = h;
+    }
+}
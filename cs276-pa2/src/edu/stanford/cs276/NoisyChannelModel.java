@@ -57,10 +57,18 @@ public class NoisyChannelModel implements Serializable {
     }
 
     public void setProbabilityType(String type) throws Exception {
+        ecm_ = costModel(type);
+    }
+
+    /**
+     * Return the cost model of the given type without changing this
+     * model, so it can be shared between threads.
+     */
+    public EditCostModel costModel(String type) throws Exception {
         if (type.equals("empirical")) {
-            ecm_ = this.empiricalCostModel;
+            return this.empiricalCostModel;
         } else if (type.equals("uniform")) {
-            ecm_ = this.uniformCostModel;
+            return this.uniformCostModel;
         } else {
             throw new Exception("Invalid noisy channel probability type "
                     + "- must be one of <uniform | empirical>");
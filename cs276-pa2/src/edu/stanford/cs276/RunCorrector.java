@@ -1,25 +1,211 @@
 package edu.stanford.cs276;
 
-import edu.stanford.cs276.edit.EditDistance;
+import edu.stanford.cs276.util.BoundedCache;
+import edu.stanford.cs276.util.Options;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.util.*;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class RunCorrector {
+    static final String SEARCH_OPTIONS_USAGE =
+            "  --candidates=S   single token edits from the deletion index (index, default, \n" +
+            "                   enumeration if its file is missing), a vocabulary trie \n" +
+            "                   (trie), a Levenshtein automaton over the trie (automaton) \n" +
+            "                   or enumeration (enumerate) \n" +
+            "  --cache=N        remember the corrections of N queries \n" +
+            "  --token-cache=N  remember the candidates of N tokens \n" +
+            "  --eviction=P     lru (default) or lfu \n" +
+            "  --search-threads=N  expand each lattice column of a query on N threads \n" +
+            "                   (extra), for the latency of long queries \n" +
+            "  --early-exit=T   keep a query of known words unchanged, without a search, \n" +
+            "                   if no correction can score more than T above it \n" +
+            "                   (0 never keeps a query a correction outscores) \n" +
+            "  --exhaustive     score every whole query candidate instead of skipping the \n" +
+            "                   edits the bounds rule out (same corrections, slower) \n";
 
-    public static LanguageModel languageModel;
-    public static NoisyChannelModel nsm;
-    public static CandidateGenerator cg;
+    /**
+     * names and the options of SEARCH_OPTIONS_USAGE, which setUpCandidates,
+     * setUpSearch and Caches read, for Options.parse.
+     */
+    static String[] withSearchOptions(String... names) {
+        List<String> all = new ArrayList<String>(Arrays.asList(names));
+        Collections.addAll(all, "candidates", "cache", "token-cache", "eviction", "search-threads",
+                "early-exit", "exhaustive");
+        return all.toArray(new String[all.size()]);
+    }
+
+    /**
+     * Set up cg for the --candidates strategy. Without the option a missing
+     * index file means enumeration; asking for the index requires it.
+     */
+    static void setUpCandidates(Options options, CandidateGenerator cg, LanguageModel languageModel) throws Exception {
+        String strategy = options.get("candidates", "index");
+        if (strategy.equals("index")) {
+            if (!options.has("candidates") && !new File(Config.candidateGenFile).exists()) {
+                System.err.println("No candidate index (" + Config.candidateGenFile + "), enumerating edits");
+                cg.setEditIndex(null);
+            } else {
+                cg.setEditIndex(DeletionIndex.load());
+            }
+        } else if (strategy.equals("trie")) {
+            cg.setEditIndex(TrieVocabulary.create(languageModel));
+        } else if (strategy.equals("automaton")) {
+            cg.setEditIndex(AutomatonIndex.create(languageModel));
+        } else if (strategy.equals("enumerate")) {
+            cg.setEditIndex(null);
+        } else {
+            throw new Exception("Unknown candidate strategy: " + strategy + " (expected index, trie, automaton or enumerate)");
+        }
+    }
+
+    /**
+     * Give corrector a search pool of --search-threads threads, if more
+     * than one, the --early-exit threshold and --exhaustive.
+     */
+    static void setUpSearch(Options options, SpellCorrector corrector) throws Exception {
+        int threads = options.getInt("search-threads", 1);
+        if (threads > 1) {
+            corrector.setSearchPool(new ForkJoinPool(threads));
+        }
+        corrector.setEarlyExit(options.getDouble("early-exit", Double.NaN));
+        corrector.setExhaustive(options.has("exhaustive"));
+    }
+
+    // print the early exit counters to stderr
+    static void reportSearch(Options options, SpellCorrector corrector) {
+        if (options.has("early-exit")) {
+            System.err.format("early exit: %d of %d queries kept unchanged\n",
+                    corrector.earlyExits(), corrector.searches());
+        }
+    }
+
+    /**
+     * The optional query and token caches set up from --cache,
+     * --token-cache and --eviction.
+     */
+    static class Caches {
+        BoundedCache<SpellCorrector.QueryKey, String> queries;
+        BoundedCache<String, Set<String>> tokens;
+
+        static Caches create(Options options, SpellCorrector corrector, CandidateGenerator cg) throws Exception {
+            Caches caches = new Caches();
+            BoundedCache.Policy policy = BoundedCache.policy(options.get("eviction", "lru"));
+            int size = options.getInt("cache", 0);
+            if (size > 0) {
+                caches.queries = new BoundedCache<SpellCorrector.QueryKey, String>(size, policy);
+                corrector.setCache(caches.queries);
+            }
+            size = options.getInt("token-cache", 0);
+            if (size > 0) {
+                caches.tokens = new BoundedCache<String, Set<String>>(size, policy);
+                cg.setTokenCache(caches.tokens);
+            }
+            return caches;
+        }
 
-    private static double mu = 1;
+        // print the cache counters to stderr
+        void report() {
+            if (queries != null) {
+                System.err.println("query cache: " + queries);
+            }
+            if (tokens != null) {
+                System.err.println("token cache: " + tokens);
+            }
+        }
+    }
 
+    /**
+     * Correct the queries of a file, or of stdin for "-", as they are read,
+     * writing each correction to stdout as soon as the order allows.
+     */
+    private static void stream(Options options, SpellCorrector corrector, String queryFilePath) throws Exception {
+        BufferedReader in = queryFilePath.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : new BufferedReader(new FileReader(new File(queryFilePath)));
+        // not System.out, which hides a closed pipe
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)));
+        StreamingCorrector streaming = new StreamingCorrector(corrector, options.getInt("threads", 1),
+                options.getInt("pending", StreamingCorrector.DEFAULT_MAX_PENDING));
+        streaming.setDeadline(options.getInt("deadline", 0));
+        try {
+            streaming.run(in, out);
+        } finally {
+            in.close();
+        }
+        if (streaming.timeouts() > 0) {
+            System.err.println("queries past the deadline, written unchanged: " + streaming.timeouts());
+        }
+    }
+
+    /**
+     * Writes each correction to stdout as it arrives and, if a gold file
+     * was provided, compares it to the gold correction.
+     */
+    private static class GoldComparison implements SpellCorrector.CorrectionSink {
+        private final BufferedReader goldFileReader;
+        int totalCount = 0;
+        int yourCorrectCount = 0;
+
+        GoldComparison(BufferedReader goldFileReader) {
+            this.goldFileReader = goldFileReader;
+        }
+
+        @Override
+        public void correction(String query, String correctedQuery) throws Exception {
+            // If a gold file was provided, compare our correction to the gold correction
+            // and output the running accuracy
+            if (goldFileReader != null) {
+                String goldQuery = goldFileReader.readLine();
+                if (goldQuery.equals(correctedQuery)) {
+//                    System.out.format("%d √: %s\n", totalCount, correctedQuery);
+                    yourCorrectCount++;
+                } else {
+//                    System.out.format("%d x: %s -> %s -> %s\n", totalCount, query, correctedQuery, goldQuery);
+                }
+            } else {
+//                System.out.format("%d: %s\n", totalCount, correctedQuery);
+            }
+            System.out.println(correctedQuery);
+            totalCount++;
+        }
+    }
+
+    /**
+     * Write the k best corrections of each query to stdout, one per line
+     * with its score, channel and language model log scores, tab
+     * separated, and an empty line after each query.
+     */
+    private static void top(SpellCorrector corrector, List<String> queries, int k) throws Exception {
+        for (String query : queries) {
+            for (SpellCorrector.Correction correction : corrector.topCorrections(query, k)) {
+                System.out.format("%s\t%.4f\t%.4f\t%.4f\n", correction.text(), correction.score(),
+                        correction.channel(), correction.language());
+            }
+            System.out.println();
+        }
+    }
 
     public static void main(String[] args) throws Exception {
 
         long startTime = System.currentTimeMillis();
 
+        Options options = Options.parse(args,
+                withSearchOptions("threads", "beam", "stream", "pending", "deadline", "top"));
+        args = options.positional();
+
         // Parse input arguments
         String uniformOrEmpirical = null;
         String queryFilePath = null;
@@ -56,200 +242,92 @@ public class RunCorrector {
                     "SAMPLE: ./runcorrector empirical data/queries.txt \n" +
                     "SAMPLE: ./runcorrector empirical data/queries.txt data/gold.txt \n" +
                     "SAMPLE: ./runcorrector empirical data/queries.txt extra \n" +
-                    "SAMPLE: ./runcorrector empirical data/queries.txt extra data/gold.txt \n");
+                    "SAMPLE: ./runcorrector empirical data/queries.txt extra data/gold.txt \n" +
+                    "SAMPLE: tail -f queries.log | ./runcorrector empirical - extra \n" +
+                    "Options: \n" +
+                    "  --threads=N      correct queries on N threads, output stays in input order \n" +
+                    "  --beam=N         hypotheses kept per token with extra (default 50) \n" +
+                    "  --stream         write each correction as soon as it is ready instead of \n" +
+                    "                   reading all queries first (a query file - reads stdin \n" +
+                    "                   and always streams; no gold file) \n" +
+                    "  --pending=N      with --stream, stop reading while N queries are in \n" +
+                    "                   flight (default " + StreamingCorrector.DEFAULT_MAX_PENDING + ") \n" +
+                    "  --deadline=MS    with --stream, write a query unchanged if its correction \n" +
+                    "                   is not ready MS milliseconds after it was submitted \n" +
+                    "  --top=K          write the K best corrections of each query with their \n" +
+                    "                   log scores, each query's followed by an empty line \n" +
+                    SEARCH_OPTIONS_USAGE);
             return;
         }
 
-        if (goldFilePath != null ){
-            goldFileReader = new BufferedReader(new FileReader(new File(goldFilePath)));
+        boolean stream = queryFilePath.equals("-") || options.has("stream");
+        if (stream && goldFilePath != null) {
+            System.err.println("A gold file can't be compared while streaming");
+            return;
+        }
+        int top = options.getInt("top", 0);
+        if (top > 0 && (stream || goldFilePath != null)) {
+            System.err.println("--top writes several corrections per query, it can't stream or compare to gold");
+            return;
+        }
+        if (top > 0 && options.has("early-exit")) {
+            System.err.println("--early-exit does not apply to --top, every query is searched");
         }
 
-        if (uniformOrEmpirical.equals("empirical")) {
-            mu = 1.25;
-        } else {
-            mu = 0.5;
+        if (goldFilePath != null ){
+            goldFileReader = new BufferedReader(new FileReader(new File(goldFilePath)));
         }
 
         // Load models from disk
 //        System.out.println("Loading language model...");
-        languageModel = LanguageModel.load();
+        LanguageModel languageModel = LanguageModel.load();
 //        System.out.println("-- Completed!");
 //        System.out.println("Loading noisy channel model...");
-        nsm = NoisyChannelModel.load();
+        NoisyChannelModel nsm = NoisyChannelModel.load();
 //        System.out.println("-- Completed!");
 
-        BufferedReader queriesFileReader = new BufferedReader(new FileReader(new File(queryFilePath)));
-        nsm.setProbabilityType(uniformOrEmpirical);
-
         // Load candidate generator
-        cg = CandidateGenerator.get();
+        CandidateGenerator cg = CandidateGenerator.get();
+        setUpCandidates(options, cg, languageModel);
 
-        int totalCount = 0;
-        int yourCorrectCount = 0;
-        String query = null;
+        SpellCorrector corrector = new SpellCorrector(languageModel, nsm, uniformOrEmpirical, cg, "extra".equals(extra));
+        corrector.setBeamWidth(options.getInt("beam", SpellCorrector.DEFAULT_BEAM_WIDTH));
+        setUpSearch(options, corrector);
+        Caches caches = Caches.create(options, corrector, cg);
+
+        if (stream) {
+            stream(options, corrector, queryFilePath);
+            caches.report();
+            reportSearch(options, corrector);
+            return;
+        }
 
         /*
-         * Each line in the file represents one query.  We loop over each query and find
-         * the most likely correction
+         * Each line in the file represents one query.  We find the most
+         * likely correction of each, on several threads if asked to
          */
-        double maxSoFar, prob;
+        List<String> queries = new ArrayList<String>();
+        BufferedReader queriesFileReader = new BufferedReader(new FileReader(new File(queryFilePath)));
+        String query = null;
         while ((query = queriesFileReader.readLine()) != null) {
-
-            String correctedQuery = query;
-
-            if ("extra".equals(extra)) {
-                /*
-                 * If you are going to implement something regarding to running the corrector,
-                 * you can add code here. Feel free to move this code block to wherever
-                 * you think is appropriate. But make sure if you add "extra" parameter,
-                 * it will run code for your extra credit and it will run you basic
-                 * implementations without the "extra" parameter.
-                 */
-                correctedQuery = viterbi(query);
-            } else {
-                Set<String> candidates = cg.getCandidates(query, languageModel);
-                maxSoFar = Double.NEGATIVE_INFINITY;
-                for (String s : candidates) {
-                    if (uniformOrEmpirical.equals("empirical")) {
-                        prob = nsm.ecm_.editProbability(query, s, 1);
-                    } else {
-                        prob = nsm.ecm_.editProbability(query, s, EditDistance.editDistance(query, s));
-                    }
-                    prob += languageModel.computeProbability(s) * mu;
-//                System.out.format("%s, %f\n", s, prob);
-                    if (prob > maxSoFar) {
-                        maxSoFar = prob;
-                        correctedQuery = s;
-                    }
-                }
-            }
-
-
-            // If a gold file was provided, compare our correction to the gold correction
-            // and output the running accuracy
-            if (goldFileReader != null) {
-                String goldQuery = goldFileReader.readLine();
-                if (goldQuery.equals(correctedQuery)) {
-//                    System.out.format("%d √: %s\n", totalCount, correctedQuery);
-                    yourCorrectCount++;
-                } else {
-//                    System.out.format("%d x: %s -> %s -> %s\n", totalCount, query, correctedQuery, goldQuery);
-                }
-            } else {
-//                System.out.format("%d: %s\n", totalCount, correctedQuery);
-            }
-            System.out.println(correctedQuery);
-            totalCount++;
+            queries.add(query);
         }
         queriesFileReader.close();
+        if (top > 0) {
+            top(corrector, queries, top);
+            caches.report();
+            return;
+        }
+        GoldComparison output = new GoldComparison(goldFileReader);
+        corrector.correctAll(queries, options.getInt("threads", 1), output);
+        int totalCount = output.totalCount;
+        int yourCorrectCount = output.yourCorrectCount;
+        caches.report();
+        reportSearch(options, corrector);
         long endTime   = System.currentTimeMillis();
         long totalTime = endTime - startTime;
 //        System.out.println(yourCorrectCount);
 //        System.out.println(1.0 * yourCorrectCount / totalCount);
 //        System.out.println("RUNNING TIME: "+totalTime/1000+" seconds ");
     }
-
-    private static String viterbi(String query) throws Exception {
-        List<TreeSet<Node>> nodes = new ArrayList<TreeSet<Node>>();
-        TreeSet<Node> start = new TreeSet<Node>();
-        start.add(new Node("", 0, ""));
-        nodes.add(start);
-        String[] tokens = query.split("\\s+");
-
-        for (int i = 0; i < tokens.length; i++) {
-            String token = tokens[i];
-            Set<String> candidates = cg.getCandidatesForToken(token, languageModel);
-            nodes.add(new TreeSet<Node>());
-            /* Candidates have no space */
-            for (String cand : candidates) {
-                double score_channel = nsm.ecm_.editProbability(token, cand, EditDistance.editDistance(token, cand));
-                double score_language;
-                String best_path = "";
-                double best_so_far = Double.NEGATIVE_INFINITY;
-                for (Node prev : nodes.get(i)) {
-                    if (i == 0) {
-                        score_language = Math.log(languageModel.unigramProbability(cand)) * mu;
-                    } else {
-                        score_language = Math.log(languageModel.bigramProbability(prev.token, cand)) * mu;
-                    }
-                    if (prev.score + score_language + score_channel > best_so_far) {
-                        best_so_far = prev.score + score_language + score_channel;
-                        best_path = prev.path + " " + cand;
-                    }
-                }
-                nodes.get(i + 1).add(new Node(cand, best_so_far, best_path));
-            }
-
-            /* Consider splits: split "singledays" -> "single" "days" */
-            candidates = cg.getCandidatesForSplits(token, languageModel);
-            for (String cand : candidates) {
-                double score_channel = nsm.ecm_.editProbability(token, cand, EditDistance.editDistance(token, cand));
-                double score_language;
-                String best_path = "";
-                double best_so_far = Double.NEGATIVE_INFINITY;
-                String[] bigram = cand.split("\\s+");
-                for (Node prev : nodes.get(i)) {
-                    if (i == 0) {
-                        score_language = Math.log(languageModel.unigramProbability(bigram[0])) * mu;
-                        score_language += Math.log(languageModel.bigramProbability(bigram[0], bigram[1])) * mu;
-                    } else {
-                        score_language = Math.log(languageModel.bigramProbability(prev.token, bigram[0])) * mu;
-                        score_language += Math.log(languageModel.bigramProbability(bigram[0], bigram[1])) * mu;
-                    }
-                    if (prev.score + score_language + score_channel > best_so_far) {
-                        best_so_far = prev.score + score_language + score_channel;
-                        best_path = prev.path + " " + cand;
-                    }
-                }
-                nodes.get(i + 1).add(new Node(bigram[1], best_so_far, best_path));
-            }
-
-            /* Consider combine: "some thing" -> "something" */
-            if (i >= 1) {
-                candidates = cg.getCandidatesForToken(tokens[i - 1] + tokens[i], languageModel);
-                for (String cand : candidates) {
-                    double score_channel = nsm.ecm_.editProbability(tokens[i - 1] + " " + tokens[i], cand, EditDistance.editDistance(tokens[i - 1] + " " + tokens[i], cand));
-                    double score_language;
-                    String best_path = "";
-                    double best_so_far = Double.NEGATIVE_INFINITY;
-                    for (Node prev : nodes.get(i - 1)) {
-                        if (i - 1 == 0) {
-                            score_language = Math.log(languageModel.unigramProbability(cand)) * mu;
-                        } else {
-                            score_language = Math.log(languageModel.bigramProbability(prev.token, cand)) * mu;
-                        }
-                        if (prev.score + score_language + score_channel > best_so_far) {
-                            best_so_far = prev.score + score_language + score_channel;
-                            best_path = prev.path + " " + cand;
-                        }
-                    }
-                    nodes.get(i + 1).add(new Node(cand, best_so_far, best_path));
-                }
-            }
-
-            /* Reduce the size of nodes */
-            while (nodes.get(i + 1).size() > 50) {
-                nodes.get(i + 1).remove(nodes.get(i + 1).last());
-            }
-        }
-
-        return nodes.get(nodes.size() - 1).first().path.trim();
-    }
-
-    private static class Node implements Comparable<Node> {
-        public String token;
-        public double score;
-        public String path;
-        public Node(String token, double score, String path) {
-            this.token = token;
-            this.score = score;
-            this.path = path;
-        }
-
-        @Override
-        public int compareTo(Node o) {
-            return this.score == o.score ? 0 : (this.score > o.score ? -1 : 1);
-        }
-    }
-
 }
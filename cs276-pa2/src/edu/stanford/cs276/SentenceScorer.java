@@ -0,0 +1,130 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.util.Tokenizer;
+
+import java.util.Arrays;
+
+/**
+ * LanguageModel.computeProbability for the edits of one query.
+ *
+ * The log probabilities of the query's tokens are summed once from the
+ * left and once from the right. A candidate shares all but the tokens in
+ * its TokenWindow with the query, so its score is a prefix sum, the
+ * terms of the window tokens, the n-grams entering the untouched suffix
+ * (one for a bigram model, two for a trigram model), and a suffix sum:
+ * a handful of lookups however long the query is.
+ *
+ * Sums may round differently from computeProbability in the last bits.
+ */
+public class SentenceScorer {
+    // no predecessor: the first token of the sentence
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private final LanguageModel languageModel;
+    private final boolean trigram;
+    private final String query;
+    // term ids of the query's tokens
+    private final int[] ids;
+    // prefix[a]: log probability of the first a tokens
+    private final double[] prefix;
+    // suffix[j]: log probability of tokens j + 1 .. given their
+    // predecessors, i.e. without the term of token j
+    private final double[] suffix;
+    // tokensBefore[i]: number of tokens starting before position i
+    private final int[] tokensBefore;
+    // false if split("\\s+") would yield a leading empty token
+    private final boolean incremental;
+
+    public SentenceScorer(LanguageModel languageModel, String query) {
+        this.languageModel = languageModel;
+        this.trigram = languageModel.order() > 2;
+        this.query = query;
+        int n = query.length();
+        incremental = n > 0 && !Tokenizer.isWhitespace(query.charAt(0));
+
+        int[] ids = new int[n];
+        int numTokens = 0;
+        tokensBefore = new int[n + 1];
+        for (int i = 0; i < n; ++i) {
+            tokensBefore[i] = numTokens;
+            if (!Tokenizer.isWhitespace(query.charAt(i))
+                    && (i == 0 || Tokenizer.isWhitespace(query.charAt(i - 1)))) {
+                int j = i + 1;
+                while (j < n && !Tokenizer.isWhitespace(query.charAt(j))) {
+                    ++j;
+                }
+                ids[numTokens++] = languageModel.counts().id(query.substring(i, j));
+            }
+        }
+        tokensBefore[n] = numTokens;
+        this.ids = Arrays.copyOf(ids, numTokens);
+
+        prefix = new double[numTokens + 1];
+        for (int a = 0; a < numTokens; ++a) {
+            prefix[a + 1] = prefix[a] + term(a);
+        }
+        suffix = new double[numTokens + 1];
+        for (int j = numTokens - 2; j >= 0; --j) {
+            suffix[j] = term(j + 1) + suffix[j + 1];
+        }
+    }
+
+    /**
+     * Same as languageModel.computeProbability(candidate), up to rounding.
+     */
+    public double score(String candidate) {
+        if (!incremental || candidate.length() == 0 || Tokenizer.isWhitespace(candidate.charAt(0))) {
+            return languageModel.computeProbability(candidate);
+        }
+        TokenWindow window = new TokenWindow(query, candidate);
+        int a = tokensBefore[window.start];
+        int j = tokensBefore[window.queryEnd];
+
+        double prob = prefix[a];
+        int prev2 = a > 1 ? ids[a - 2] : NONE;
+        int prev = a > 0 ? ids[a - 1] : NONE;
+        int i = window.start;
+        while (i < window.end) {
+            if (Tokenizer.isWhitespace(candidate.charAt(i))) {
+                ++i;
+                continue;
+            }
+            int k = i + 1;
+            while (k < window.end && !Tokenizer.isWhitespace(candidate.charAt(k))) {
+                ++k;
+            }
+            int curr = languageModel.counts().id(candidate.substring(i, k));
+            prob += logProbability(prev2, prev, curr);
+            prev2 = prev;
+            prev = curr;
+            i = k;
+        }
+        if (j < ids.length) {
+            prob += logProbability(prev2, prev, ids[j]);
+            if (!trigram) {
+                return prob + suffix[j];
+            }
+            // the next token's history still reaches into the window
+            if (j + 1 < ids.length) {
+                prob += logProbability(prev, ids[j], ids[j + 1]);
+            }
+            prob += suffix[j + 1];
+        }
+        return prob;
+    }
+
+    // log probability of the query's token a given its predecessors
+    private double term(int a) {
+        return logProbability(a > 1 ? ids[a - 2] : NONE, a > 0 ? ids[a - 1] : NONE, ids[a]);
+    }
+
+    private double logProbability(int prev2, int prev, int curr) {
+        if (prev == NONE) {
+            return Math.log(languageModel.unigramProbability(curr));
+        }
+        if (!trigram || prev2 == NONE) {
+            return Math.log(languageModel.bigramProbability(prev, curr));
+        }
+        return Math.log(languageModel.trigramProbability(prev2, prev, curr));
+    }
+}
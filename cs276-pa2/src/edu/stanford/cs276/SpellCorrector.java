@@ -0,0 +1,1149 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.edit.EditDistance;
+import edu.stanford.cs276.lm.NGramCounts;
+import edu.stanford.cs276.util.BoundedCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the most likely correction of a query.
+ *
+ * A corrector only reads its models, which are never modified once built
+ * or loaded, and keeps no per-query state in fields, so one instance can
+ * be shared by any number of threads. The setters are the exception:
+ * they write plain fields, so call them before the corrector is handed to
+ * other threads (starting a thread or submitting a task afterwards makes
+ * the settings visible to it).
+ */
+public class SpellCorrector {
+    public static final int DEFAULT_BEAM_WIDTH = 50;
+    // language model lookups worth a task of their own, some 100 us
+    private static final int EXPANSION_WORK = 1024;
+
+    private final LanguageModel languageModel;
+    private final EditCostModel ecm;
+    private final boolean empirical;
+    private final CandidateGenerator cg;
+    private final double mu;
+    // use the token lattice (extra) instead of whole query candidates
+    private final boolean extra;
+    // the settings below are written by the setters before the corrector
+    // is shared, and only read afterwards
+
+    // hypotheses kept per lattice column
+    private int beamWidth = DEFAULT_BEAM_WIDTH;
+    // optional cache of corrections, may be shared between correctors
+    private BoundedCache<QueryKey, String> cache;
+    // optional pool expanding the columns of one query's lattice
+    private ForkJoinPool searchPool;
+    // score every candidate of a query instead of bounding the second round
+    private boolean exhaustive = false;
+    // keep a query whose improvementBound is below this, NaN for never
+    private double earlyExit = Double.NaN;
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong earlyExits = new AtomicLong();
+
+    /**
+     * @param uniformOrEmpirical the channel model, "uniform" or "empirical"
+     * @param extra true to correct with the token lattice (viterbi)
+     */
+    public SpellCorrector(LanguageModel languageModel, NoisyChannelModel nsm, String uniformOrEmpirical,
+                          CandidateGenerator cg, boolean extra) throws Exception {
+        this.languageModel = languageModel;
+        this.ecm = nsm.costModel(uniformOrEmpirical);
+        this.empirical = uniformOrEmpirical.equals("empirical");
+        this.cg = cg;
+        this.mu = empirical ? 1.25 : 0.5;
+        this.extra = extra;
+    }
+
+    /**
+     * Keep at most beamWidth hypotheses per token in the lattice (extra).
+     * Set it before the corrector is shared between threads.
+     */
+    public void setBeamWidth(int beamWidth) {
+        if (beamWidth < 1) {
+            throw new IllegalArgumentException("Beam width must be positive: " + beamWidth);
+        }
+        this.beamWidth = beamWidth;
+    }
+
+    /**
+     * Remember corrections in the given cache; pass null to stop caching.
+     * Set it before the corrector is shared between threads.
+     */
+    public void setCache(BoundedCache<QueryKey, String> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Expand each lattice column (extra) on pool, which lowers the latency
+     * of long queries rather than raising the throughput of many; pass
+     * null to search on the calling thread. The correction is the same
+     * either way. Set it before the corrector is shared between threads.
+     */
+    public void setSearchPool(ForkJoinPool pool) {
+        this.searchPool = pool;
+    }
+
+    /**
+     * Generate and score every candidate of a query (without extra),
+     * instead of skipping the edits of candidates whose bound rules them
+     * out. Both return the same correction; this is for comparison.
+     * Set it before the corrector is shared between threads.
+     */
+    public void setExhaustive(boolean exhaustive) {
+        this.exhaustive = exhaustive;
+    }
+
+    /**
+     * Return a query unchanged, without generating candidates, when
+     * improvementBound(query) is below threshold. At 0 it never keeps a
+     * query that some correction outscores. The search usually returns
+     * such a query too, but not always: with extra the beam may drop the
+     * query's own path, and without it the query need not be a candidate,
+     * so the search may return a lower-scoring correction instead. A
+     * higher threshold keeps more and may keep wrong ones. Double.NaN, the
+     * default, always searches. topCorrections never exits early.
+     * Set it before the corrector is shared between threads.
+     */
+    public void setEarlyExit(double threshold) {
+        this.earlyExit = threshold;
+    }
+
+    /**
+     * @return number of queries searched or kept by the early exit, not
+     * counting cache hits
+     */
+    public long searches() {
+        return searches.get();
+    }
+
+    /**
+     * @return number of queries kept unchanged by the early exit
+     */
+    public long earlyExits() {
+        return earlyExits.get();
+    }
+
+    public String correct(String query) throws Exception {
+        if (cache == null) {
+            return search(query);
+        }
+        QueryKey key = new QueryKey(query, empirical, mu, extra, extra ? beamWidth : 0, earlyExit);
+        String correction = cache.get(key);
+        if (correction == null) {
+            correction = search(query);
+            cache.put(key, correction);
+        }
+        return correction;
+    }
+
+    /**
+     * The k best corrections of query, best first, without the cache or
+     * the early exit: every query is searched. The first is the one
+     * correct returns, unless setEarlyExit lets correct keep the query
+     * without a search. With the lattice (extra) they
+     * are the k best distinct paths through the hypotheses the beam kept,
+     * found lazily, so a larger k costs little more than the search.
+     */
+    public List<Correction> topCorrections(String query, int k) throws Exception {
+        if (k < 1) {
+            throw new IllegalArgumentException("Number of corrections must be positive: " + k);
+        }
+        if (extra) {
+            return topPaths(query, k);
+        }
+
+        // the k best so far, the worst on top; earlier candidates win ties
+        // as in search
+        PriorityQueue<Correction> best = new PriorityQueue<Correction>(k + 1, new Comparator<Correction>() {
+            @Override
+            public int compare(Correction a, Correction b) {
+                return a.score != b.score ? Double.compare(a.score, b.score) : b.order - a.order;
+            }
+        });
+        Set<String> candidates = cg.getCandidates(query, languageModel);
+        if (candidates.isEmpty()) {
+            // search keeps such a query as it is
+            candidates = Collections.singleton(query);
+        }
+        SentenceScorer scorer = new SentenceScorer(languageModel, query);
+        int order = 0;
+        for (String s : candidates) {
+            double channel;
+            if (empirical) {
+                channel = ecm.editProbability(query, s, 1);
+            } else {
+                channel = ecm.editProbability(query, s, EditDistance.editDistance(query, s));
+            }
+            double language = scorer.score(s);
+            double prob = channel + language * mu;
+            if (best.size() == k) {
+                // ties lose against the earlier candidates already kept
+                if (!(prob > best.peek().score)) {
+                    ++order;
+                    continue;
+                }
+                best.poll();
+            }
+            best.add(new Correction(s, channel, language, prob, order++));
+        }
+
+        List<Correction> result = new ArrayList<Correction>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private String search(String query) throws Exception {
+        searches.incrementAndGet();
+        if (!Double.isNaN(earlyExit) && improvementBound(query) < earlyExit) {
+            earlyExits.incrementAndGet();
+            return query;
+        }
+        if (extra) {
+            return viterbi(query);
+        }
+        if (!exhaustive) {
+            String correction = boundedSearch(query);
+            if (correction != null) {
+                return correction;
+            }
+        }
+
+        String correctedQuery = query;
+        Set<String> candidates = cg.getCandidates(query, languageModel);
+        SentenceScorer scorer = new SentenceScorer(languageModel, query);
+        double maxSoFar = Double.NEGATIVE_INFINITY;
+        double prob;
+        for (String s : candidates) {
+            if (empirical) {
+                prob = ecm.editProbability(query, s, 1);
+            } else {
+                prob = ecm.editProbability(query, s, EditDistance.editDistance(query, s));
+            }
+            prob += scorer.score(s) * mu;
+//                System.out.format("%s, %f\n", s, prob);
+            if (prob > maxSoFar) {
+                maxSoFar = prob;
+                correctedQuery = s;
+            }
+        }
+        return correctedQuery;
+    }
+
+    /**
+     * Branch and bound over the two rounds of getCandidates. The first
+     * round, the known edits of query, is scored in full. Then, best bound
+     * first, the edits of each first round candidate s are scored unless
+     * none of them can beat the best score so far:
+     *
+     *   an edit of s other than query pays at least the most probable
+     *   edit in the channel, and replaces one or two neighbouring terms
+     *   of s, so its language model score is at most that of the other
+     *   terms of s, with the new terms and those after them at their
+     *   most probable (LanguageModel.maxProbabilityAfter and
+     *   maxProbability).
+     *
+     * Once the best remaining bound is below the best score the rest is
+     * skipped, edits1 and the known filter included, which is where the
+     * time of the whole query search goes. The correction is the same as
+     * scoring every candidate. Returns null to leave the query to the
+     * exhaustive search: if query is a known query but not among its own
+     * edits, when it might still be a second round candidate with a far
+     * better channel score (with an unknown term it is never one), or if
+     * the best score is tied, when the winner depends on the order of the
+     * full candidate set.
+     */
+    private String boundedSearch(String query) {
+        Set<String> edits = cg.getKnownEdits(query, languageModel);
+        if (!edits.contains(query) && languageModel.exists(query)) {
+            return null;
+        }
+        SentenceScorer scorer = new SentenceScorer(languageModel, query);
+        double edit = ecm.maxEditProbability();
+
+        String best = null;
+        double maxSoFar = Double.NEGATIVE_INFINITY;
+        int ties = 0;
+        List<String> parents = new ArrayList<String>(edits.size());
+        final Map<String, Double> bounds = new HashMap<String, Double>();
+        for (String s : edits) {
+            double prob = wholeQueryScore(query, s, scorer);
+            if (prob > maxSoFar) {
+                maxSoFar = prob;
+                best = s;
+                ties = 1;
+            } else if (prob == maxSoFar) {
+                ++ties;
+            }
+            // some slack for the rounding of scorer against the terms
+            bounds.put(s, edit + languageBound(s) * mu + 1e-6);
+            parents.add(s);
+        }
+        Collections.sort(parents, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Double.compare(bounds.get(b), bounds.get(a));
+            }
+        });
+
+        Set<String> scored = new HashSet<String>(edits);
+        for (String s : parents) {
+            if (bounds.get(s) < maxSoFar) {
+                break;
+            }
+            for (String c : cg.getKnownEdits(s, languageModel)) {
+                if (!scored.add(c)) {
+                    continue;
+                }
+                double prob = wholeQueryScore(query, c, scorer);
+                if (prob > maxSoFar) {
+                    maxSoFar = prob;
+                    best = c;
+                    ties = 1;
+                } else if (prob == maxSoFar) {
+                    ++ties;
+                }
+            }
+        }
+        return ties == 1 ? best : null;
+    }
+
+    // the score search gives candidate s of query
+    private double wholeQueryScore(String query, String s, SentenceScorer scorer) {
+        double prob;
+        if (empirical) {
+            prob = ecm.editProbability(query, s, 1);
+        } else {
+            prob = ecm.editProbability(query, s, EditDistance.editDistance(query, s));
+        }
+        return prob + scorer.score(s) * mu;
+    }
+
+    // an upper bound of log P(c) for the edits c of s. An edit replaces
+    // one term of s, or two next to each other, by one or two terms (edits1
+    // never deletes a single character term): the first new term is at
+    // most log maxProbabilityAfter the term before it, a second one at
+    // most 0, and the order - 1 terms after them are at most log
+    // maxProbability under their new history; the others stay as they are.
+    private double languageBound(String s) {
+        String[] tokens = s.split("\\s+");
+        NGramCounts counts = languageModel.counts();
+        int n = tokens.length;
+        double[] logProb = new double[n];
+        double[] logMax = new double[n];
+        double[] logMaxAfter = new double[n + 1];
+        logMaxAfter[0] = Math.log(languageModel.maxProbabilityAfter(-1));
+        double total = 0;
+        int prev2 = -1;
+        int prev = -1;
+        for (int j = 0; j < n; j++) {
+            int w = counts.id(tokens[j]);
+            double p = j == 0 ? languageModel.unigramProbability(w) : languageModel.trigramProbability(prev2, prev, w);
+            logProb[j] = Math.log(p);
+            logMax[j] = Math.log(languageModel.maxProbability(w));
+            logMaxAfter[j + 1] = Math.log(languageModel.maxProbabilityAfter(w));
+            total += logProb[j];
+            prev2 = prev;
+            prev = w;
+        }
+        int following = languageModel.order() - 1;
+        double bound = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j <= Math.min(n, i + 2); j++) {
+                // terms i to j - 1 replaced, the first new one after term i - 1
+                double edited = total + logMaxAfter[i];
+                for (int k = i; k < j; k++) {
+                    edited -= logProb[k];
+                }
+                for (int k = j; k < Math.min(n, j + following); k++) {
+                    edited += logMax[k] - logProb[k];
+                }
+                bound = Math.max(bound, edited);
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * An upper bound on how much the score of any correction of query can
+     * exceed the score of query itself; negative if query beats them all.
+     * Positive infinity for a query with an unknown token, or whitespace
+     * the search would not give back as it is.
+     *
+     * An edit rewrites one token, or two adjacent ones (a merge, or a
+     * space moved between them). Rewriting tokens i to j - 1 changes the
+     * language model terms i to j - 2 + order: the terms of those tokens
+     * and the order - 1 after them, whose history includes one of them.
+     * It raises their log probabilities at most to 0, costs at least the
+     * most probable edit, and in the lattice gives up the unchanged
+     * channel scores of the tokens it rewrites. The best such gain of the
+     * edits starting at each token, summed over the positive ones, or the
+     * largest when none is positive since a correction has at least one
+     * edit, is a handful of lookups per query.
+     */
+    public double improvementBound(String query) {
+        String[] tokens = query.split(" ", -1);
+        NGramCounts counts = languageModel.counts();
+        int n = tokens.length;
+        // loss[j]: -log P(token j | the tokens before it)
+        double[] loss = new double[n];
+        int prev2 = -1;
+        int prev = -1;
+        for (int j = 0; j < n; j++) {
+            int w = tokens[j].isEmpty() ? -1 : counts.id(tokens[j]);
+            if (w < 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double p = j == 0 ? languageModel.unigramProbability(w) : languageModel.trigramProbability(prev2, prev, w);
+            loss[j] = -Math.log(p);
+            prev2 = prev;
+            prev = w;
+        }
+
+        double edit = -ecm.maxEditProbability();
+        // what an edit gives up of the query's own channel score
+        double unchanged = -ecm.editProbability(query, query, 0);
+        int following = languageModel.order() - 1;
+        double sum = 0;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            double gain = Double.NEGATIVE_INFINITY;
+            for (int j = i + 1; j <= Math.min(n, i + 2); j++) {
+                // tokens i to j - 1 rewritten
+                double terms = 0;
+                for (int k = i; k < Math.min(n, j + following); k++) {
+                    terms += loss[k];
+                }
+                gain = Math.max(gain, terms * mu - edit + (extra ? (j - i) * unchanged : 0));
+            }
+            sum += Math.max(gain, 0);
+            max = Math.max(max, gain);
+        }
+        double bound = sum > 0 ? sum : max;
+        // the whole query pays the unchanged score once
+        return extra ? bound : bound + unchanged;
+    }
+
+    /**
+     * Correct queries on a pool of the given number of threads.
+     *
+     * @return corrections in the order of queries
+     */
+    public List<String> correctAll(List<String> queries, int threads) throws Exception {
+        final List<String> results = new ArrayList<String>(queries.size());
+        correctAll(queries, threads, new CorrectionSink() {
+            @Override
+            public void correction(String query, String correction) {
+                results.add(correction);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Correct queries on a pool of the given number of threads, passing
+     * each correction to sink, in the order of queries, as soon as it and
+     * every correction before it are ready. sink runs on the calling
+     * thread.
+     */
+    public void correctAll(List<String> queries, int threads, CorrectionSink sink) throws Exception {
+        if (threads <= 1) {
+            for (String query : queries) {
+                sink.correction(query, correct(query));
+            }
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>(queries.size());
+            for (final String query : queries) {
+                futures.add(pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return correct(query);
+                    }
+                }));
+            }
+            int i = 0;
+            for (String query : queries) {
+                sink.correction(query, futures.get(i++).get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Receives the corrections of correctAll.
+     */
+    public interface CorrectionSink {
+        public void correction(String query, String correction) throws Exception;
+    }
+
+    private String viterbi(String query) throws Exception {
+        String[] tokens = query.split("\\s+");
+        Lattice lattice = lattice(tokens, null);
+        return lattice.path(lattice.ranked(tokens.length)[0]).trim();
+    }
+
+    /**
+     * The lattice of tokens, searched column by column. If hypotheses is
+     * not null it gets the expansion of every hypothesis added, at its
+     * index, null for the start.
+     */
+    private Lattice lattice(String[] tokens, List<Expansion> hypotheses) throws Exception {
+        Lattice lattice = new Lattice(beamWidth, tokens.length + 1);
+        lattice.add(0, "", -1, -1, 0);
+        if (hypotheses != null) {
+            hypotheses.add(null);
+        }
+
+        List<List<Expansion>> columns = expansions(tokens);
+        for (int i = 0; i < tokens.length; i++) {
+            List<Expansion> column = columns.get(i);
+            int[] prevs = lattice.ranked(i);
+            int[] prevs2 = i >= 1 ? lattice.ranked(i - 1) : null;
+            expand(lattice, i, column, prevs, prevs2);
+
+            // into the beam in candidate order, however they were scored,
+            // so that ties break as they always did
+            for (Expansion e : column) {
+                if (e.backs != null) {
+                    for (int k = 0; k < e.states; k++) {
+                        int h = addHypothesis(lattice, i + 1, e.text, e.word, e.backs[k], e.scores[k]);
+                        if (hypotheses != null && h >= 0) {
+                            hypotheses.add(e);
+                        }
+                    }
+                    continue;
+                }
+                int h;
+                if (e.split) {
+                    h = addHypothesis(lattice, i + 1, e.text, e.previous, e.word, e.back, e.score);
+                } else {
+                    h = addHypothesis(lattice, i + 1, e.text, e.word, e.back, e.score);
+                }
+                if (hypotheses != null && h >= 0) {
+                    hypotheses.add(e);
+                }
+            }
+        }
+        return lattice;
+    }
+
+    // the k best distinct paths through the lattice of query
+    private List<Correction> topPaths(String query, int k) throws Exception {
+        String[] tokens = query.split("\\s+");
+        List<Expansion> hypotheses = new ArrayList<Expansion>();
+        Lattice lattice = lattice(tokens, hypotheses);
+        KBestPaths paths = new KBestPaths(lattice, hypotheses, tokens.length);
+
+        List<Correction> result = new ArrayList<Correction>(k);
+        Set<String> seen = new HashSet<String>();
+        for (int j = 0; result.size() < k; j++) {
+            Derivation d = paths.derivation(paths.end, j);
+            if (d == null) {
+                break;
+            }
+            // a split and two tokens can spell the same correction
+            String text = paths.text(d);
+            if (seen.add(text)) {
+                result.add(new Correction(text, d.channel, d.language / mu, d.score, j));
+            }
+        }
+        return result;
+    }
+    /**
+     * The expansions of every column: for token i its candidates, then
+     * its splits, then the candidates merging it with token i - 1. They
+     * don't depend on the lattice, so with a search pool all columns are
+     * generated at once.
+     */
+    private List<List<Expansion>> expansions(final String[] tokens) throws Exception {
+        List<Callable<List<Expansion>>> tasks = new ArrayList<Callable<List<Expansion>>>(tokens.length);
+        for (int i = 0; i < tokens.length; i++) {
+            final int column = i;
+            tasks.add(new Callable<List<Expansion>>() {
+                @Override
+                public List<Expansion> call() throws Exception {
+                    return expansions(tokens, column);
+                }
+            });
+        }
+
+        List<List<Expansion>> columns = new ArrayList<List<Expansion>>(tokens.length);
+        ForkJoinPool pool = searchPool;
+        if (pool == null || tokens.length == 1) {
+            for (Callable<List<Expansion>> task : tasks) {
+                columns.add(task.call());
+            }
+            return columns;
+        }
+        try {
+            for (Future<List<Expansion>> future : pool.invokeAll(tasks)) {
+                columns.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+        return columns;
+    }
+
+    private List<Expansion> expansions(String[] tokens, int i) throws Exception {
+        NGramCounts counts = languageModel.counts();
+        String token = tokens[i];
+        List<Expansion> column = new ArrayList<Expansion>();
+
+        /* Candidates have no space */
+        for (String cand : cg.getCandidatesForToken(token, languageModel)) {
+            column.add(new Expansion(i, cand, false, -1, counts.id(cand), false, channelProbability(token, cand)));
+        }
+
+        /* Consider splits: split "singledays" -> "single" "days" */
+        for (String cand : cg.getCandidatesForSplits(token, languageModel)) {
+            String[] bigram = cand.split("\\s+");
+            column.add(new Expansion(i, cand, true, counts.id(bigram[0]), counts.id(bigram[1]), false,
+                    channelProbability(token, cand)));
+        }
+
+        /* Consider combine: "some thing" -> "something" */
+        if (i >= 1) {
+            String original = tokens[i - 1] + " " + tokens[i];
+            for (String cand : cg.getCandidatesForToken(tokens[i - 1] + tokens[i], languageModel)) {
+                column.add(new Expansion(i, cand, false, -1, counts.id(cand), true,
+                        channelProbability(original, cand)));
+            }
+        }
+        return column;
+    }
+
+    // find the best predecessor of every expansion of column i, on the
+    // search pool if there is enough work to share
+    private void expand(Lattice lattice, int i, List<Expansion> column, int[] prevs, int[] prevs2) {
+        ForkJoinPool pool = searchPool;
+        if (pool == null || (long) column.size() * prevs.length < 2 * EXPANSION_WORK) {
+            for (Expansion e : column) {
+                expand(lattice, i, e, prevs, prevs2);
+            }
+            return;
+        }
+        pool.invoke(new ColumnExpansion(lattice, i, column, prevs, prevs2, 0, column.size()));
+    }
+
+    // reads column i (i - 1 for a merge) of the lattice, never writes it
+    private void expand(Lattice lattice, int i, Expansion e, int[] prevs, int[] prevs2) {
+        if (languageModel.order() > 2 && !e.split) {
+            expandStates(lattice, i, e, e.merge ? prevs2 : prevs);
+            return;
+        }
+        double score_channel = e.channel;
+        int best_prev = -1;
+        double best_so_far = Double.NEGATIVE_INFINITY;
+        for (int prev : e.merge ? prevs2 : prevs) {
+            double score_language = languageScore(lattice, i, e, prev);
+            if (lattice.score(prev) + score_language + score_channel > best_so_far) {
+                best_so_far = lattice.score(prev) + score_language + score_channel;
+                best_prev = prev;
+            }
+        }
+        e.back = best_prev;
+        e.score = best_so_far;
+    }
+
+    /**
+     * expand() for a trigram model: the next word is scored given the last
+     * two, so e gets the best predecessor for each word that can precede
+     * it, each the back of a hypothesis of its own, and paths that differ
+     * in that word do not recombine. A split ends in both of its words
+     * whatever comes before, so expand() keeps one predecessor for it.
+     */
+    private void expandStates(Lattice lattice, int i, Expansion e, int[] prevs) {
+        e.backs = new int[Math.max(prevs.length, 1)];
+        e.scores = new double[Math.max(prevs.length, 1)];
+        e.states = 0;
+        // word of a predecessor -> its entry in backs, in rank order
+        Map<Integer, Integer> states = new HashMap<Integer, Integer>();
+        for (int prev : prevs) {
+            double score = lattice.score(prev) + languageScore(lattice, i, e, prev) + e.channel;
+            Integer k = states.get(lattice.word(prev));
+            if (k == null) {
+                if (!(score > Double.NEGATIVE_INFINITY)) {
+                    continue;
+                }
+                k = e.states++;
+                states.put(lattice.word(prev), k);
+                e.backs[k] = prev;
+                e.scores[k] = score;
+            } else if (score > e.scores[k]) {
+                e.backs[k] = prev;
+                e.scores[k] = score;
+            }
+        }
+        if (e.states == 0) {
+            // no predecessor reaches e, as in expand()
+            e.backs[0] = -1;
+            e.scores[0] = Double.NEGATIVE_INFINITY;
+            e.states = 1;
+        }
+    }
+
+    // mu * log P(the words of e | hypothesis prev of column i, or i - 1
+    // for a merge)
+    private double languageScore(Lattice lattice, int i, Expansion e, int prev) {
+        double score_language;
+        if (e.merge) {
+            if (i - 1 == 0) {
+                score_language = Math.log(languageModel.unigramProbability(e.word)) * mu;
+            } else {
+                score_language = logProbability(lattice, prev, e.word) * mu;
+            }
+        } else if (e.split) {
+            int w0 = e.previous;
+            int w1 = e.word;
+            if (i == 0) {
+                score_language = Math.log(languageModel.unigramProbability(w0)) * mu;
+                score_language += Math.log(languageModel.bigramProbability(w0, w1)) * mu;
+            } else {
+                score_language = logProbability(lattice, prev, w0) * mu;
+                score_language += Math.log(languageModel.trigramProbability(lattice.word(prev), w0, w1)) * mu;
+            }
+        } else {
+            if (i == 0) {
+                score_language = Math.log(languageModel.unigramProbability(e.word)) * mu;
+            } else {
+                score_language = logProbability(lattice, prev, e.word) * mu;
+            }
+        }
+        return score_language;
+    }
+
+    // the empirical model aligns by itself, only the uniform one needs the
+    // edit distance
+    private double channelProbability(String original, String candidate) {
+        int distance = empirical ? 1 : EditDistance.editDistance(original, candidate);
+        return ecm.editProbability(original, candidate, distance);
+    }
+
+    // log P(w | the last words of hypothesis h): its last word for a
+    // bigram model, its last two for a trigram model
+    private double logProbability(Lattice lattice, int h, int w) {
+        return Math.log(languageModel.trigramProbability(lattice.previousWord(h), lattice.word(h), w));
+    }
+
+    // a hypothesis no predecessor could reach starts over with an empty path
+    private static int addHypothesis(Lattice lattice, int column, String text, int word, int back, double score) {
+        if (back < 0) {
+            text = "";
+        }
+        return lattice.add(column, text, word, back, score);
+    }
+
+    // same for a text of two words, previous and word
+    private static int addHypothesis(Lattice lattice, int column, String text, int previous, int word, int back,
+                                     double score) {
+        if (back < 0) {
+            text = "";
+        }
+        return lattice.add(column, text, previous, word, back, score);
+    }
+
+    /**
+     * One way to extend the hypotheses of a lattice column, and the best
+     * one found: a candidate for the token, a split of it into previous
+     * and word, or a candidate for it merged with the token before, which
+     * extends the column before.
+     */
+    private static class Expansion {
+        // the token it covers last
+        final int column;
+        final String text;
+        final boolean split;
+        final int previous;
+        final int word;
+        final boolean merge;
+        final double channel;
+
+        int back = -1;
+        double score = Double.NEGATIVE_INFINITY;
+        // with a trigram model, instead of back and score, the best
+        // predecessor for each of states words before this one
+        int[] backs;
+        double[] scores;
+        int states;
+
+        Expansion(int column, String text, boolean split, int previous, int word, boolean merge, double channel) {
+            this.column = column;
+            this.text = text;
+            this.split = split;
+            this.previous = previous;
+            this.word = word;
+            this.merge = merge;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Expands a range of a column's expansions, halving it until each
+     * part is about EXPANSION_WORK language model lookups. Every part
+     * writes only its own expansions, so no part waits on another.
+     */
+    private class ColumnExpansion extends RecursiveAction {
+        private final Lattice lattice;
+        private final int column;
+        private final List<Expansion> expansions;
+        private final int[] prevs;
+        private final int[] prevs2;
+        private final int from;
+        private final int to;
+
+        ColumnExpansion(Lattice lattice, int column, List<Expansion> expansions, int[] prevs, int[] prevs2,
+                        int from, int to) {
+            this.lattice = lattice;
+            this.column = column;
+            this.expansions = expansions;
+            this.prevs = prevs;
+            this.prevs2 = prevs2;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < 2 || (long) (to - from) * prevs.length <= EXPANSION_WORK) {
+                for (int k = from; k < to; k++) {
+                    expand(lattice, column, expansions.get(k), prevs, prevs2);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ColumnExpansion(lattice, column, expansions, prevs, prevs2, from, middle),
+                    new ColumnExpansion(lattice, column, expansions, prevs, prevs2, middle, to));
+        }
+    }
+
+    /**
+     * A correction with its log scores: channel is log P(query | text),
+     * language log P(text) and score channel + mu * language, by which
+     * corrections are ranked.
+     */
+    public static class Correction {
+        private final String text;
+        private final double channel;
+        private final double language;
+        private final double score;
+        // position among the candidates, for ties
+        private final int order;
+
+        Correction(String text, double channel, double language, double score, int order) {
+            this.text = text;
+            this.channel = channel;
+            this.language = language;
+            this.score = score;
+            this.order = order;
+        }
+
+        public String text() {
+            return text;
+        }
+
+        public double channel() {
+            return channel;
+        }
+
+        public double language() {
+            return language;
+        }
+
+        public double score() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%.3f = %.3f + %.3f)", text, score, channel, language);
+        }
+    }
+
+    /**
+     * A path to a hypothesis: back, the j-th best path to the source-th
+     * hypothesis its expansion extends, followed by the hypothesis. Scores
+     * add up along the path; language is still weighted by mu.
+     */
+    private static class Derivation {
+        final int hypothesis;
+        final Derivation back;
+        final int source;
+        final int j;
+        final double score;
+        final double channel;
+        final double language;
+
+        Derivation(int hypothesis, Derivation back, int source, int j, double score, double channel,
+                   double language) {
+            this.hypothesis = hypothesis;
+            this.back = back;
+            this.source = source;
+            this.j = j;
+            this.score = score;
+            this.channel = channel;
+            this.language = language;
+        }
+    }
+
+    // best first; on equal scores the better ranked source, as in expand
+    private static final Comparator<Derivation> BEST_FIRST = new Comparator<Derivation>() {
+        @Override
+        public int compare(Derivation a, Derivation b) {
+            if (a.score != b.score) {
+                return Double.compare(b.score, a.score);
+            }
+            return a.source != b.source ? a.source - b.source : a.j - b.j;
+        }
+    };
+
+    /**
+     * The k best paths through a searched lattice, by lazy enumeration
+     * over back pointers (Huang and Chiang, 2005). The best path to a
+     * hypothesis is the one the search kept. Only when the next one is
+     * asked for are the other hypotheses it could extend scored, into a
+     * heap of candidate paths; after that each further path takes the
+     * next path to one source, one heap operation, recursively.
+     *
+     * With a trigram model a hypothesis only extends the sources ending
+     * in the word before it, so the history each language model score
+     * uses is the one on the path.
+     */
+    private class KBestPaths {
+        private final Lattice lattice;
+        private final List<Expansion> hypotheses;
+        private final int[][] ranked;
+        private final Map<Integer, Node> nodes = new HashMap<Integer, Node>();
+        // the last column as a whole, reached from each of its hypotheses
+        final Node end;
+
+        KBestPaths(Lattice lattice, List<Expansion> hypotheses, int numTokens) {
+            this.lattice = lattice;
+            this.hypotheses = hypotheses;
+            ranked = new int[numTokens + 1][];
+            end = new Node(-1, null, ranked(numTokens));
+        }
+
+        /**
+         * The j-th best path to v, null if it has fewer.
+         */
+        Derivation derivation(Node v, int j) {
+            List<Derivation> found = v.derivations;
+            while (found.size() <= j) {
+                Derivation next;
+                if (found.isEmpty()) {
+                    next = best(v);
+                } else if (found.get(0).back == null) {
+                    // the start, or a hypothesis no predecessor could
+                    // reach, has one path
+                    next = null;
+                } else {
+                    if (v.candidates == null) {
+                        v.candidates = new PriorityQueue<Derivation>(Math.max(v.sources.length, 1), BEST_FIRST);
+                        Derivation first = found.get(0);
+                        for (int r = 0; r < v.sources.length; r++) {
+                            if (r != first.source) {
+                                push(v, r, 0);
+                            }
+                        }
+                        push(v, first.source, 1);
+                    } else {
+                        Derivation last = found.get(found.size() - 1);
+                        push(v, last.source, last.j + 1);
+                    }
+                    next = v.candidates.poll();
+                }
+                if (next == null) {
+                    return null;
+                }
+                found.add(next);
+            }
+            return found.get(j);
+        }
+
+        /**
+         * The words of a path to the end.
+         */
+        String text(Derivation d) {
+            List<String> texts = new ArrayList<String>();
+            // a path starting over has an empty text, as in Lattice.path
+            for (Derivation step = d.back; step != null && step.back != null; step = step.back) {
+                texts.add(hypotheses.get(step.hypothesis).text);
+            }
+            StringBuilder text = new StringBuilder();
+            for (int i = texts.size() - 1; i >= 0; i--) {
+                text.append(' ').append(texts.get(i));
+            }
+            return text.toString().trim();
+        }
+
+        // the path the search kept
+        private Derivation best(Node v) {
+            if (v.hypothesis == 0) {
+                return new Derivation(0, null, 0, 0, 0, 0, 0);
+            }
+            int back = v == end ? v.sources[0] : lattice.back(v.hypothesis);
+            if (back < 0) {
+                return new Derivation(v.hypothesis, null, 0, 0, lattice.score(v.hypothesis), 0, 0);
+            }
+            for (int r = 0; r < v.sources.length; r++) {
+                if (v.sources[r] == back) {
+                    Derivation path = derivation(node(back), 0);
+                    return path == null ? null : extend(v, r, 0, path);
+                }
+            }
+            return null;
+        }
+
+        // the j-th best path to source r of v, extended by v
+        private void push(Node v, int r, int j) {
+            Derivation back = derivation(node(v.sources[r]), j);
+            if (back != null) {
+                v.candidates.add(extend(v, r, j, back));
+            }
+        }
+
+        // back, the j-th best path to source r, extended by v
+        private Derivation extend(Node v, int r, int j, Derivation back) {
+            if (v == end) {
+                return new Derivation(-1, back, r, j, back.score, back.channel, back.language);
+            }
+            Expansion e = v.expansion;
+            double score_language = languageScore(lattice, e.column, e, v.sources[r]);
+            return new Derivation(v.hypothesis, back, r, j, back.score + score_language + e.channel,
+                    back.channel + e.channel, back.language + score_language);
+        }
+
+        private Node node(int h) {
+            Node v = nodes.get(h);
+            if (v == null) {
+                Expansion e = hypotheses.get(h);
+                int[] sources = e == null ? new int[0] : ranked(e.merge ? e.column - 1 : e.column);
+                if (e != null && e.backs != null) {
+                    sources = sameWord(sources, lattice.previousWord(h));
+                }
+                v = new Node(h, e, sources);
+                nodes.put(h, v);
+            }
+            return v;
+        }
+
+        // the hypotheses among sources ending in word, the ones a trigram
+        // state with that word before its own extends
+        private int[] sameWord(int[] sources, int word) {
+            int[] result = new int[sources.length];
+            int n = 0;
+            for (int source : sources) {
+                if (lattice.word(source) == word) {
+                    result[n++] = source;
+                }
+            }
+            return Arrays.copyOf(result, n);
+        }
+
+        private int[] ranked(int column) {
+            if (ranked[column] == null) {
+                ranked[column] = lattice.ranked(column);
+            }
+            return ranked[column];
+        }
+    }
+
+    // a hypothesis and the paths to it found so far
+    private static class Node {
+        final int hypothesis;
+        final Expansion expansion;
+        // the hypotheses it can extend, best first
+        final int[] sources;
+        final List<Derivation> derivations = new ArrayList<Derivation>();
+        PriorityQueue<Derivation> candidates;
+
+        Node(int hypothesis, Expansion expansion, int[] sources) {
+            this.hypothesis = hypothesis;
+            this.expansion = expansion;
+            this.sources = sources;
+        }
+    }
+
+    /**
+     * Everything a correction depends on besides the models. The query is
+     * kept as given: collapsing or trimming whitespace can change what
+     * the search returns.
+     */
+    public static class QueryKey {
+        private final String query;
+        private final boolean empirical;
+        private final double mu;
+        private final boolean extra;
+        private final int beamWidth;
+        private final double earlyExit;
+
+        public QueryKey(String query, boolean empirical, double mu, boolean extra, int beamWidth, double earlyExit) {
+            this.query = query;
+            this.empirical = empirical;
+            this.mu = mu;
+            this.extra = extra;
+            this.beamWidth = beamWidth;
+            this.earlyExit = earlyExit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof QueryKey)) return false;
+            QueryKey other = (QueryKey) o;
+            return empirical == other.empirical && extra == other.extra && beamWidth == other.beamWidth
+                    && Double.compare(mu, other.mu) == 0 && Double.compare(earlyExit, other.earlyExit) == 0
+                    && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(mu);
+            int result = query.hashCode();
+            result = 31 * result + (empirical ? 1 : 0);
+            result = 31 * result + (extra ? 1 : 0);
+            result = 31 * result + beamWidth;
+            result = 31 * result + (int) (bits ^ (bits >>> 32));
+            bits = Double.doubleToLongBits(earlyExit);
+            result = 31 * result + (int) (bits ^ (bits >>> 32));
+            return result;
+        }
+    }
+}
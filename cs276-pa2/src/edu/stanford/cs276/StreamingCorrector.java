@@ -0,0 +1,191 @@
+package edu.stanford.cs276;
+
+import java.io.BufferedReader;
+import java.io.Writer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Corrects queries as they arrive on a stream, one per line, and writes
+ * the corrections in input order as soon as they are ready: output is
+ * flushed whenever the next correction is still being worked on, so a
+ * consumer sees each one without waiting for later input.
+ *
+ * At most maxPending queries are read but not yet written. Once that many
+ * are in flight the reader stops reading, so a producer faster than the
+ * workers fills the pipe and blocks instead of growing this process.
+ * With a deadline, a query whose correction is not ready that long after
+ * it was submitted to the workers is written unchanged; its search still
+ * runs to the end on its worker, since the search can't be interrupted.
+ */
+public class StreamingCorrector {
+    public static final int DEFAULT_MAX_PENDING = 64;
+
+    private final SpellCorrector corrector;
+    private final int threads;
+    private final int maxPending;
+    private long deadlineNanos = 0;
+
+    private long timeouts = 0;
+
+    public StreamingCorrector(SpellCorrector corrector, int threads, int maxPending) {
+        if (threads < 1 || maxPending < 1) {
+            throw new IllegalArgumentException("Threads and pending queries must be positive: "
+                    + threads + ", " + maxPending);
+        }
+        this.corrector = corrector;
+        this.threads = threads;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Write a query unchanged if its correction takes longer than millis
+     * from the time it was submitted, which waits while maxPending queries
+     * are in flight; 0 (the default) waits for every one.
+     */
+    public void setDeadline(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Deadline must not be negative: " + millis);
+        }
+        deadlineNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * @return number of queries written unchanged because of the deadline
+     */
+    public long timeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Correct every line of in until it ends, writing one line per query
+     * to out. Returns once everything read has been written.
+     *
+     * If writing to out fails, reading stops at the next line and run
+     * throws the failure. A reader blocked on an idle in only notices once
+     * a line arrives or in ends, so until then the process stays up with
+     * its output gone.
+     *
+     * @return the number of queries
+     */
+    public long run(BufferedReader in, final Writer out) throws Exception {
+        final Semaphore permits = new Semaphore(maxPending);
+        final BlockingQueue<Pending> queue = new LinkedBlockingQueue<Pending>();
+        final Exception[] failure = new Exception[1];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(queue, permits, out);
+                } catch (Exception e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                    // wake the reader so it sees the failure
+                    permits.release(maxPending);
+                }
+            }
+        }, "correction-writer");
+        writer.start();
+
+        long count = 0;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                permits.acquire();
+                // the deadline starts once the query is handed to the
+                // pool, not while it waits for a permit
+                long arrival = System.nanoTime();
+                synchronized (failure) {
+                    if (failure[0] != null) {
+                        break;
+                    }
+                }
+                final String query = line;
+                Future<String> future = pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return corrector.correct(query);
+                    }
+                });
+                queue.put(new Pending(query, future, arrival));
+                ++count;
+            }
+        } finally {
+            queue.put(Pending.END);
+            writer.join();
+            pool.shutdownNow();
+        }
+
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        return count;
+    }
+
+    // runs on the writer thread until it takes END
+    private void write(BlockingQueue<Pending> queue, Semaphore permits, Writer out) throws Exception {
+        String newline = System.lineSeparator();
+        while (true) {
+            Pending pending = queue.take();
+            if (pending == Pending.END) {
+                break;
+            }
+            String correction;
+            try {
+                if (deadlineNanos > 0) {
+                    long remaining = deadlineNanos - (System.nanoTime() - pending.arrival);
+                    correction = pending.future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+                } else {
+                    correction = pending.future.get();
+                }
+            } catch (TimeoutException e) {
+                pending.future.cancel(true);
+                correction = pending.query;
+                ++timeouts;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+            out.write(correction);
+            out.write(newline);
+
+            // keep writing without a flush only while the next one is ready
+            Pending next = queue.peek();
+            if (next == null || next == Pending.END || !next.future.isDone()) {
+                out.flush();
+            }
+            permits.release();
+        }
+        out.flush();
+    }
+
+    private static class Pending {
+        static final Pending END = new Pending(null, null, 0);
+
+        final String query;
+        final Future<String> future;
+        // System.nanoTime() when the query was submitted
+        final long arrival;
+
+        Pending(String query, Future<String> future, long arrival) {
+            this.query = query;
+            this.future = future;
+            this.arrival = arrival;
+        }
+    }
+}
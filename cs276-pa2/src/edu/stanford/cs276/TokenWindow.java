@@ -0,0 +1,42 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.util.Tokenizer;
+
+/**
+ * The whole tokens of a candidate that an edit of the query touched.
+ *
+ * candidate[0, start) equals query[0, start) and candidate[end, m)
+ * equals query[queryEnd, n); both cut at token boundaries, so the tokens
+ * outside candidate[start, end) are tokens of the query.
+ */
+class TokenWindow {
+    final int start;
+    final int end;
+    final int queryEnd;
+
+    TokenWindow(String query, String candidate) {
+        int n = query.length();
+        int m = candidate.length();
+        int p = 0;
+        while (p < n && p < m && query.charAt(p) == candidate.charAt(p)) {
+            ++p;
+        }
+        int s = 0;
+        while (s < n - p && s < m - p && query.charAt(n - 1 - s) == candidate.charAt(m - 1 - s)) {
+            ++s;
+        }
+
+        // widen the changed span candidate[p, m - s) to whole tokens
+        int i = p;
+        while (i > 0 && !Tokenizer.isWhitespace(candidate.charAt(i - 1))) {
+            --i;
+        }
+        int j = m - s;
+        while (j < m && !Tokenizer.isWhitespace(candidate.charAt(j))) {
+            ++j;
+        }
+        start = i;
+        end = j;
+        queryEnd = n - (m - j);
+    }
+}
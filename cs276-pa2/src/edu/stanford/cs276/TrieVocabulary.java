@@ -0,0 +1,305 @@
+package edu.stanford.cs276;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Vocabulary stored as a trie in flat arrays.
+ *
+ * Nodes are numbered breadth first, which makes the children of a node a
+ * consecutive id range ordered by character. A node then costs one char
+ * (the label of the edge into it), one int (where its children start)
+ * and one terminal bit.
+ *
+ * fuzzyMatch() walks the trie with one Damerau–Levenshtein row per
+ * depth, so only prefixes of real terms are ever considered, and drops a
+ * subtree as soon as no completion can be within the distance.
+ */
+public class TrieVocabulary implements Vocabulary, EditIndex, Serializable {
+    // label[n]: character on the edge into node n (root: unused)
+    private char[] label;
+    // children of node n are the nodes firstChild[n] .. firstChild[n+1]-1
+    private int[] firstChild;
+    private BitSet terminal;
+    private int numTerms;
+    private int maxLength;
+
+    private TrieVocabulary(Collection<String> vocabulary) {
+        String[] terms = vocabulary.toArray(new String[vocabulary.size()]);
+        Arrays.sort(terms);
+
+        int chars = 0;
+        for (String term : terms) {
+            chars += term.length();
+            maxLength = Math.max(maxLength, term.length());
+        }
+        // at most one node per character, plus the root
+        int capacity = chars + 1;
+        label = new char[capacity];
+        firstChild = new int[capacity + 1];
+        terminal = new BitSet(capacity);
+
+        // breadth first over ranges of sorted terms sharing a prefix; node
+        // n covers terms[lo[n], hi[n]) whose prefix has length depth[n]
+        int[] lo = new int[capacity];
+        int[] hi = new int[capacity];
+        int[] depth = new int[capacity];
+        lo[0] = 0;
+        hi[0] = terms.length;
+        int nodes = 1;
+        for (int n = 0; n < nodes; ++n) {
+            firstChild[n] = nodes;
+            int i = lo[n];
+            int d = depth[n];
+            // sorting puts the term ending here first
+            while (i < hi[n] && terms[i].length() == d) {
+                if (!terminal.get(n)) {
+                    terminal.set(n);
+                    ++numTerms;
+                }
+                ++i;
+            }
+            while (i < hi[n]) {
+                char c = terms[i].charAt(d);
+                int j = i + 1;
+                while (j < hi[n] && terms[j].charAt(d) == c) {
+                    ++j;
+                }
+                label[nodes] = c;
+                lo[nodes] = i;
+                hi[nodes] = j;
+                depth[nodes] = d + 1;
+                ++nodes;
+                i = j;
+            }
+        }
+        firstChild[nodes] = nodes;
+
+        label = Arrays.copyOf(label, nodes);
+        firstChild = Arrays.copyOf(firstChild, nodes + 1);
+    }
+
+    public static TrieVocabulary create(LanguageModel languageModel) {
+        return new TrieVocabulary(languageModel.terms());
+    }
+
+    public int size() {
+        return numTerms;
+    }
+
+    public int numNodes() {
+        return label.length;
+    }
+
+    /**
+     * Heap bytes taken by the trie arrays.
+     */
+    public long sizeInBytes() {
+        // 16 byte array headers, the bit set holds longs
+        return 16 + 2L * label.length + 16 + 4L * firstChild.length + 16 + terminal.size() / 8;
+    }
+
+    @Override
+    public boolean contains(String term) {
+        int node = 0;
+        for (int i = 0; i < term.length() && node >= 0; ++i) {
+            node = child(node, term.charAt(i));
+        }
+        return node >= 0 && terminal.get(node);
+    }
+
+    /**
+     * Same as LanguageModel.exists: every whitespace separated token of
+     * word must be a term.
+     */
+    @Override
+    public boolean exists(String word) {
+        return KnownFilter.exists(this, word);
+    }
+
+    @Override
+    public Set<String> known(Set<String> candidates) {
+        Set<String> results = new HashSet<String>();
+        for (String s : candidates) {
+            if (this.exists(s)) {
+                results.add(s);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Return all terms within Damerau–Levenshtein distance maxDistance of
+     * token, with the distance EditDistance computes.
+     */
+    public Set<String> fuzzyMatch(String token, int maxDistance) {
+        Set<String> results = new HashSet<String>();
+        new Search(token, maxDistance, null).run(results);
+        return results;
+    }
+
+    /**
+     * fuzzyMatch(word, 1) restricted the way candidate generation edits:
+     * only alphabet characters are inserted or substituted, and word only
+     * counts as one edit away from itself if an edit leaves it unchanged.
+     */
+    @Override
+    public Set<String> lookup(String word) {
+        Set<String> results = new HashSet<String>();
+        new Search(word, 1, DeletionIndex.insertable).run(results);
+        if (!DeletionIndex.reachesItself(word)) {
+            results.remove(word);
+        }
+        return results;
+    }
+
+    // read access for walks outside this class, like AutomatonIndex
+
+    static int root() {
+        return 0;
+    }
+
+    int firstChild(int node) {
+        return firstChild[node];
+    }
+
+    int endChild(int node) {
+        return firstChild[node + 1];
+    }
+
+    char label(int node) {
+        return label[node];
+    }
+
+    boolean isTerminal(int node) {
+        return terminal.get(node);
+    }
+
+    int maxLength() {
+        return maxLength;
+    }
+
+    // child of node along c, -1 if none
+    private int child(int node, char c) {
+        int lo = firstChild[node];
+        int hi = firstChild[node + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = label[mid];
+            if (m < c) {
+                lo = mid + 1;
+            } else if (m > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Depth first walk computing the edit distance between token and the
+     * prefix spelled by the path. rows[d][j] is the distance between the
+     * first d characters of the path and the first j characters of token.
+     */
+    private class Search {
+        private final String token;
+        private final int k;
+        // characters the path may introduce by insertion or substitution,
+        // null for any
+        private final boolean[] insertable;
+        private final int[][] rows;
+        private final char[] path;
+
+        Search(String token, int k, boolean[] insertable) {
+            this.token = token;
+            this.k = k;
+            this.insertable = insertable;
+            // no term is longer than maxLength, and a longer path could
+            // not be within k of token anyway
+            int depth = Math.min(maxLength, token.length() + k);
+            rows = new int[depth + 1][token.length() + 1];
+            path = new char[depth];
+        }
+
+        void run(Set<String> results) {
+            int[] row = rows[0];
+            for (int j = 0; j < row.length; ++j) {
+                row[j] = j;
+            }
+            if (token.length() <= k && terminal.get(0)) {
+                results.add("");
+            }
+            visitChildren(0, 0, results);
+        }
+
+        private void visitChildren(int node, int d, Set<String> results) {
+            if (d == path.length) {
+                return;
+            }
+            for (int child = firstChild[node]; child < firstChild[node + 1]; ++child) {
+                visit(child, d + 1, results);
+            }
+        }
+
+        private void visit(int node, int d, Set<String> results) {
+            char c = label[node];
+            path[d - 1] = c;
+            boolean canIntroduce = insertable == null || insertable[c];
+            int[] prev = rows[d - 1];
+            int[] row = rows[d];
+            final int N = token.length();
+
+            row[0] = canIntroduce ? Math.min(prev[0] + 1, k + 1) : k + 1;
+            // the best cell of this row, and the best a transposition of
+            // c with the next character can reach from prev
+            int rowMin = row[0];
+            int swapMin = k + 1;
+            for (int j = 1; j <= N; ++j) {
+                char t = token.charAt(j - 1);
+                if (Math.abs(d - j) > k) {
+                    // outside the band every cell is above k
+                    row[j] = k + 1;
+                    if (j >= 2 && c == t) {
+                        swapMin = Math.min(swapMin, prev[j - 2] + 1);
+                    }
+                    continue;
+                }
+                int cost;
+                if (c == t) {
+                    cost = prev[j - 1];
+                    if (j >= 2) {
+                        swapMin = Math.min(swapMin, prev[j - 2] + 1);
+                    }
+                } else {
+                    // delete token[j-1]
+                    cost = row[j - 1] + 1;
+                    if (canIntroduce) {
+                        // insert c, or substitute it for token[j-1]
+                        cost = Math.min(cost, Math.min(prev[j], prev[j - 1]) + 1);
+                    }
+                }
+                if (d > 1 && j > 1 && c == token.charAt(j - 2) && path[d - 2] == t) {
+                    cost = Math.min(cost, rows[d - 2][j - 2] + 1);
+                }
+                // anything above k is as good as k + 1
+                row[j] = Math.min(cost, k + 1);
+                rowMin = Math.min(rowMin, row[j]);
+            }
+
+            if (row[N] <= k && terminal.get(node)) {
+                results.add(new String(path, 0, d));
+            }
+            // deeper rows only improve on this row, or on prev through a
+            // transposition of c
+            if (rowMin > k && swapMin > k) {
+                return;
+            }
+            visitChildren(node, d, results);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package edu.stanford.cs276;
 
 public class UniformCostModel implements EditCostModel {
+    // pinned so models saved before maxEditProbability still load
+    private static final long serialVersionUID = -7651612975874121395L;
 
     private static double UNIFORM_EDIT_COST = 0.03;
 
@@ -12,4 +14,9 @@ public class UniformCostModel implements EditCostModel {
             return distance * Math.log(UNIFORM_EDIT_COST);
         }
     }
+
+    @Override
+    public double maxEditProbability() {
+        return Math.log(UNIFORM_EDIT_COST);
+    }
 }
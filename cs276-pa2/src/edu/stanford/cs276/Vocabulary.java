@@ -3,6 +3,10 @@ package edu.stanford.cs276;
 import java.util.Set;
 
 public interface Vocabulary {
+    /**
+     * Return true if term, taken as a single token, is in the vocabulary.
+     */
+    public boolean contains(String term);
     public boolean exists(String word);
     public Set<String> known(Set<String> candidates);
 }
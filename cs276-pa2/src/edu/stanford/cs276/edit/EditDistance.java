@@ -5,6 +5,11 @@ import java.util.List;
 
 /**
  * An implementation of Damerau–Levenshtein edit distance.
+ *
+ * Distances and bestAlignment() are computed on rolling rows and
+ * determineEdits() reuses its matrices; all are kept per thread, so a
+ * call allocates nothing but its result.
+ *
  * Created by kavinyao on 4/28/14.
  */
 public class EditDistance {
@@ -12,6 +17,13 @@ public class EditDistance {
     // meta character representing the beginning of a sentence
     public static char BEGIN_CHAR = '$';
 
+    private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
     private EditDistance() {}
 
     /**
@@ -33,13 +45,11 @@ public class EditDistance {
         final int N = clean.length();
         final int M = noisy.length();
 
-        // allocate and initialize DP and backtrace matrix
-        int[][] D = new int[N+1][];
-        char[][] B = new char[N+1][];
-        for (int i = 0; i <= N; ++i) {
-            D[i] = new int[M+1];
-            B[i] = new char[M+1];
-        }
+        // initialize DP and backtrace matrix
+        Scratch buffers = scratch.get();
+        buffers.ensureMatrix(N + 1, M + 1);
+        int[][] D = buffers.D;
+        char[][] B = buffers.B;
 
         for (int i = 0; i <= N; ++i) {
             D[i][0] = i;
@@ -129,6 +139,119 @@ public class EditDistance {
         return edits;
     }
 
+    /**
+     * Log probability of the most probable edit sequence turning clean
+     * into noisy, each edit weighted as in weights, with the edits and
+     * contexts determineEdits would report.
+     *
+     * One DP over rolling rows: no backtrace, no Edit objects, and the
+     * rows are kept per thread. Like editDistance(s, t), it only fills a
+     * band around the diagonal and widens the band until the best
+     * alignment within it provably beats any leaving it.
+     */
+    public static double bestAlignment(final String clean, final String noisy, final EditWeights weights) {
+        final int N = clean.length();
+        final int M = noisy.length();
+        int limit = Math.max(N, M);
+        int delta = Math.abs(N - M);
+        int k = Math.max(1, delta);
+        while (true) {
+            if (k >= limit) {
+                return bestAlignment(clean, noisy, weights, limit);
+            }
+            double score = bestAlignment(clean, noisy, weights, k);
+            // leaving the band means passing a cell k + 1 off the
+            // diagonal, which takes at least 2(k + 1) - delta insertions
+            // and deletions, none more probable than maxIndel
+            if ((2 * (k + 1) - delta) * weights.maxIndel <= score) {
+                return score;
+            }
+            k *= 2;
+        }
+    }
+
+    // the best alignment using only cells within k of the diagonal
+    private static double bestAlignment(final String clean, final String noisy, final EditWeights weights, int k) {
+        final int N = clean.length();
+        final int M = noisy.length();
+        final double NONE = Double.NEGATIVE_INFINITY;
+        final double[][] deletion = weights.logProbabilities[EditType.DELETION.ordinal()];
+        final double[][] insertion = weights.logProbabilities[EditType.INSERTION.ordinal()];
+        final double[][] substitution = weights.logProbabilities[EditType.SUBSTITUTION.ordinal()];
+        final double[][] transposition = weights.logProbabilities[EditType.TRANSPOSITION.ordinal()];
+
+        Scratch buffers = scratch.get();
+        buffers.ensureWeightRows(Math.max(N, M) + 2);
+        double[] prev2 = buffers.weightRow0;
+        double[] prev = buffers.weightRow1;
+        double[] cur = buffers.weightRow2;
+        // character classes, position 0 standing for BEGIN_CHAR
+        int[] cleanClass = buffers.cleanClass;
+        int[] noisyClass = buffers.noisyClass;
+        int begin = weights.classOf(BEGIN_CHAR);
+        cleanClass[0] = begin;
+        for (int i = 1; i <= N; ++i) {
+            cleanClass[i] = weights.classOf(clean.charAt(i-1));
+        }
+        for (int j = 1; j <= M; ++j) {
+            noisyClass[j] = weights.classOf(noisy.charAt(j-1));
+        }
+
+        int hi = Math.min(M, k);
+        prev[0] = 0;
+        double[] insertionAtBegin = insertion[begin];
+        for (int j = 1; j <= hi; ++j) {
+            prev[j] = prev[j-1] + insertionAtBegin[noisyClass[j]];
+        }
+        prev[hi + 1] = NONE;
+
+        for (int i = 1; i <= N; ++i) {
+            int lo = Math.max(1, i - k);
+            hi = Math.min(M, i + k);
+            char ci = clean.charAt(i-1);
+            int x = cleanClass[i];
+            int before = cleanClass[i-1];
+            double deletionCost = deletion[before][x];
+            double[] insertionAfter = insertion[x];
+            double[] substitutionOf = substitution[x];
+            cur[lo - 1] = lo == 1 ? prev[0] + deletionCost : NONE;
+            for (int j = lo; j <= hi; ++j) {
+                char nj = noisy.charAt(j-1);
+                double w;
+                if (ci == nj) {
+                    w = prev[j-1];
+                } else {
+                    w = prev[j-1] + substitutionOf[noisyClass[j]];
+                }
+                double d = prev[j] + deletionCost;
+                if (d > w) {
+                    w = d;
+                }
+                d = cur[j-1] + insertionAfter[noisyClass[j]];
+                if (d > w) {
+                    w = d;
+                }
+                if (i > 1 && j > 1 && ci == noisy.charAt(j-2) && clean.charAt(i-2) == nj) {
+                    d = prev2[j-2] + transposition[before][x];
+                    if (d > w) {
+                        w = d;
+                    }
+                }
+                cur[j] = w;
+            }
+            if (hi < M) {
+                cur[hi + 1] = NONE;
+            }
+
+            double[] tmp = prev2;
+            prev2 = prev;
+            prev = cur;
+            cur = tmp;
+        }
+
+        return prev[M];
+    }
+
     /**
      * Return the edit type and involved characters.
      * Assume at most 1 edit between clean and noisy.
@@ -215,58 +338,151 @@ public class EditDistance {
      * Compute Damerau–Levenshtein edit distance between s and t.
      */
     public static int editDistance(String s, String t) {
-        final int N = s.length();
-        final int M = t.length();
-
-        // allocate and initialize DP and backtrace matrix
-        int[][] D = new int[N+1][];
-        for (int i = 0; i <= N; ++i) {
-            D[i] = new int[M+1];
+        // grow the band until it holds the distance, so the work is
+        // O(distance * length) instead of O(length^2)
+        int limit = Math.max(s.length(), t.length());
+        int k = Math.max(2, Math.abs(s.length() - t.length()));
+        while (true) {
+            if (k >= limit) {
+                return editDistance(s, t, limit);
+            }
+            int distance = editDistance(s, t, k);
+            if (distance <= k) {
+                return distance;
+            }
+            k *= 2;
         }
+    }
 
-        for (int i = 0; i <= N; ++i) {
-            D[i][0] = i;
+    /**
+     * Compute Damerau–Levenshtein edit distance between s and t if it is
+     * at most k, return k + 1 otherwise.
+     *
+     * Only cells within k of the diagonal are computed, and the
+     * computation stops as soon as no cell of the last two rows is within
+     * k, so it takes O(k * length) time.
+     */
+    public static int editDistance(String s, String t, int k) {
+        final int N = s.length();
+        final int M = t.length();
+        if (Math.abs(N - M) > k) {
+            return k + 1;
         }
 
-        for (int i = 0; i <= M; ++i) {
-            D[0][i] = i;
+        // cells outside the band hold INF, which no path through them can
+        // bring back within k
+        final int INF = k + 1;
+        Scratch buffers = scratch.get();
+        buffers.ensureRows(M + 2);
+        int[] prev2 = buffers.row0;
+        int[] prev = buffers.row1;
+        int[] cur = buffers.row2;
+
+        int hi = Math.min(M, k);
+        for (int j = 0; j <= hi; ++j) {
+            prev[j] = j;
         }
+        prev[hi + 1] = INF;
+        int prevMin = 0;
 
-        // 1. run DP to determine minimal #edits
-        // store edits in B
         for (int i = 1; i <= N; ++i) {
-            for (int j = 1; j <= M; ++j) {
+            int lo = Math.max(1, i - k);
+            hi = Math.min(M, i + k);
+            if (lo == 1) {
+                cur[0] = i;
+            } else {
+                cur[lo - 1] = INF;
+            }
+            int rowMin = lo == 1 ? i : INF;
+
+            char si = s.charAt(i-1);
+            for (int j = lo; j <= hi; ++j) {
+                int d;
                 // a. compute min(deletion, insertion, substitution) first
-                if (s.charAt(i-1) == t.charAt(j-1)) {
-                    D[i][j] = D[i-1][j-1];
+                if (si == t.charAt(j-1)) {
+                    d = prev[j-1];
                 } else {
-                    int deletionCost = D[i-1][j] + 1;
-                    int insertionCost = D[i][j-1] + 1;
-                    if (deletionCost <= insertionCost) {
-                        D[i][j] = deletionCost;
-                    } else {
-                        D[i][j] = insertionCost;
-                    }
-
-                    int substitutionCost = D[i-1][j-1] + 1;
-                    if (substitutionCost < D[i][j]) {
-                        D[i][j] = substitutionCost;
+                    d = Math.min(prev[j], cur[j-1]) + 1;
+                    int substitutionCost = prev[j-1] + 1;
+                    if (substitutionCost < d) {
+                        d = substitutionCost;
                     }
                 }
 
                 // b. consider transposition if possible
                 if (i > 1 && j > 1
-                        && (s.charAt(i-1) == t.charAt(j-2))
+                        && (si == t.charAt(j-2))
                         && (s.charAt(i-2) == t.charAt(j-1))) {
-                    int transpositionCost = D[i-2][j-2] + 1;
-                    if (transpositionCost < D[i][j]) {
-                        D[i][j] = transpositionCost;
+                    int transpositionCost = prev2[j-2] + 1;
+                    if (transpositionCost < d) {
+                        d = transpositionCost;
                     }
                 }
+
+                if (d > INF) {
+                    d = INF;
+                }
+                cur[j] = d;
+                if (d < rowMin) {
+                    rowMin = d;
+                }
+            }
+            if (hi < M) {
+                cur[hi + 1] = INF;
+            }
+
+            // the next row can only improve on this row, or on the
+            // previous row through a transposition
+            if (rowMin > k && prevMin >= k) {
+                return INF;
+            }
+            prevMin = rowMin;
+
+            int[] tmp = prev2;
+            prev2 = prev;
+            prev = cur;
+            cur = tmp;
+        }
+
+        return Math.min(prev[M], INF);
+    }
+
+    // per thread buffers, grown on demand
+    private static class Scratch {
+        int[] row0 = new int[0], row1 = new int[0], row2 = new int[0];
+        double[] weightRow0 = new double[0], weightRow1 = new double[0], weightRow2 = new double[0];
+        int[] cleanClass = new int[0], noisyClass = new int[0];
+        int[][] D = new int[0][];
+        char[][] B = new char[0][];
+
+        void ensureRows(int length) {
+            if (row0.length < length) {
+                length = Math.max(length, 2 * row0.length);
+                row0 = new int[length];
+                row1 = new int[length];
+                row2 = new int[length];
             }
         }
 
-        return D[N][M];
+        void ensureWeightRows(int length) {
+            if (weightRow0.length < length) {
+                length = Math.max(length, 2 * weightRow0.length);
+                weightRow0 = new double[length];
+                weightRow1 = new double[length];
+                weightRow2 = new double[length];
+                cleanClass = new int[length];
+                noisyClass = new int[length];
+            }
+        }
+
+        void ensureMatrix(int rows, int columns) {
+            if (D.length < rows || D[0].length < columns) {
+                rows = Math.max(rows, D.length);
+                columns = Math.max(columns, D.length == 0 ? 0 : D[0].length);
+                D = new int[rows][columns];
+                B = new char[rows][columns];
+            }
+        }
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,55 @@
+package edu.stanford.cs276.edit;
+
+/**
+ * Log probabilities of single edits between character classes, for
+ * EditDistance.bestAlignment. The characters of an edit are those an Edit
+ * of the same type would carry: deletion and insertion of y after x,
+ * substitution of y for x, transposition of xy.
+ */
+public class EditWeights {
+    // class index of each ASCII character, others are in unknownClass
+    private final int[] asciiClass;
+    private final int unknownClass;
+    // [edit type][class of x][class of y]
+    final double[][][] logProbabilities;
+    // the most probable insertion or deletion, bounding what an
+    // alignment far off the diagonal can score
+    final double maxIndel;
+    // the most probable edit of any type
+    private final double maxEdit;
+
+    public EditWeights(int[] asciiClass, int unknownClass, double[][][] logProbabilities) {
+        this.asciiClass = asciiClass;
+        this.unknownClass = unknownClass;
+        this.logProbabilities = logProbabilities;
+        double max = Double.NEGATIVE_INFINITY;
+        for (EditType type : new EditType[]{EditType.DELETION, EditType.INSERTION}) {
+            for (double[] row : logProbabilities[type.ordinal()]) {
+                for (double p : row) {
+                    max = Math.max(max, p);
+                }
+            }
+        }
+        maxIndel = max;
+        for (double[][] table : logProbabilities) {
+            for (double[] row : table) {
+                for (double p : row) {
+                    max = Math.max(max, p);
+                }
+            }
+        }
+        maxEdit = max;
+    }
+
+    public double maxLogProbability() {
+        return maxEdit;
+    }
+
+    public int classOf(char c) {
+        return c < asciiClass.length ? asciiClass[c] : unknownClass;
+    }
+
+    public double logProbability(EditType type, char x, char y) {
+        return logProbabilities[type.ordinal()][classOf(x)][classOf(y)];
+    }
+}
@@ -0,0 +1,197 @@
+package edu.stanford.cs276.edit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Universal (parametric) deterministic automaton for Damerau–Levenshtein
+ * distance up to k, with the transpositions EditDistance allows.
+ *
+ * Reading the i-th character c of a candidate, the DP row against the
+ * token only changes within k of the diagonal, and only depends on where
+ * c occurs in the token near position i. A state therefore holds that
+ * band of 2k + 1 cells plus what a transposition could still contribute
+ * to the next row, and an input is the characteristic vector of c: bit b
+ * set if c == token[i - k - 1 + b], for 2k + 3 positions. Neither refers
+ * to the token itself, so one automaton per k serves every token. It is
+ * built on the first forDistance(k) call and shared after that. The
+ * build is lazy rather than in a static initializer because candidate
+ * generation only uses k = 1 (a few ms), while k = 2 takes ~80 ms.
+ *
+ * An extra input bit says whether c may be introduced by an insertion or
+ * substitution, for candidate generation over a restricted alphabet.
+ */
+public class LevenshteinAutomaton {
+    public static final int DEAD = -1;
+    // k = 3 already has ~10k states times 512 inputs
+    public static final int MAX_DISTANCE = 2;
+
+    private static final LevenshteinAutomaton[] automata = new LevenshteinAutomaton[MAX_DISTANCE + 1];
+
+    private final int k;
+    private final int width;
+    // cells per row and bits per cell in a state key
+    private final int cells;
+    private final int bits;
+    // transitions[state][input], input = chi | canIntroduce << width
+    private final int[][] transitions;
+    // rows[state][i]: distance at token position i - k relative to the
+    // number of characters read
+    private final int[][] rows;
+
+    private LevenshteinAutomaton(int k) {
+        this.k = k;
+        width = 2 * k + 3;
+        cells = 2 * k + 1;
+        bits = 32 - Integer.numberOfLeadingZeros(k + 1);
+        int inputs = 1 << (width + 1);
+
+        Map<Long, Integer> ids = new HashMap<Long, Integer>();
+        List<int[]> stateRows = new ArrayList<int[]>();
+        List<int[]> stateSwaps = new ArrayList<int[]>();
+        List<int[]> stateTransitions = new ArrayList<int[]>();
+
+        // before reading anything: the distance to token[0, j) is j
+        int[] row = new int[cells];
+        int[] swap = new int[cells];
+        for (int i = 0; i < cells; ++i) {
+            int j = i - k;
+            row[i] = j < 0 ? k + 1 : Math.min(j, k + 1);
+            swap[i] = k + 1;
+        }
+        ids.put(key(row, swap), 0);
+        stateRows.add(row);
+        stateSwaps.add(swap);
+
+        // breadth first over the reachable states
+        for (int s = 0; s < stateRows.size(); ++s) {
+            int[] next = new int[inputs];
+            for (int input = 0; input < inputs; ++input) {
+                int[] newRow = new int[cells];
+                int[] newSwap = new int[cells];
+                if (!step(stateRows.get(s), stateSwaps.get(s), input, newRow, newSwap)) {
+                    next[input] = DEAD;
+                    continue;
+                }
+                long key = key(newRow, newSwap);
+                Integer id = ids.get(key);
+                if (id == null) {
+                    id = stateRows.size();
+                    ids.put(key, id);
+                    stateRows.add(newRow);
+                    stateSwaps.add(newSwap);
+                }
+                next[input] = id;
+            }
+            stateTransitions.add(next);
+        }
+
+        transitions = stateTransitions.toArray(new int[stateTransitions.size()][]);
+        rows = stateRows.toArray(new int[stateRows.size()][]);
+    }
+
+    /**
+     * The automaton for distance k, 0 <= k <= MAX_DISTANCE.
+     */
+    public static synchronized LevenshteinAutomaton forDistance(int k) {
+        if (k < 0 || k > MAX_DISTANCE) {
+            throw new IllegalArgumentException("Distance must be within [0, " + MAX_DISTANCE + "]: " + k);
+        }
+        if (automata[k] == null) {
+            automata[k] = new LevenshteinAutomaton(k);
+        }
+        return automata[k];
+    }
+
+    public int maxDistance() {
+        return k;
+    }
+
+    public int numStates() {
+        return rows.length;
+    }
+
+    public int start() {
+        return 0;
+    }
+
+    /**
+     * Read a character with characteristic vector chi (see chi()).
+     *
+     * @param canIntroduce whether the character may be inserted or
+     *                     substituted in, or only matched and transposed
+     * @return the next state, DEAD if no continuation is within k
+     */
+    public int step(int state, int chi, boolean canIntroduce) {
+        return transitions[state][canIntroduce ? chi | (1 << width) : chi];
+    }
+
+    /**
+     * Distance between the read prefix (of length read) and a token of
+     * length n, if it is at most k; k + 1 otherwise.
+     */
+    public int distance(int state, int read, int n) {
+        int i = n - read + k;
+        if (i < 0 || i >= cells) {
+            return k + 1;
+        }
+        return rows[state][i];
+    }
+
+    /**
+     * Characteristic vector of the character with occurrence mask mask in
+     * the token (bit p set if it occurs at position p), as input for the
+     * (read + 1)-th character.
+     */
+    public int chi(long mask, int read) {
+        int shift = read - k - 1;
+        long window = shift >= 0 ? mask >>> shift : mask << -shift;
+        return (int) (window & ((1L << width) - 1));
+    }
+
+    // compute the row after reading one character; false if dead
+    private boolean step(int[] row, int[] swap, int input, int[] newRow, int[] newSwap) {
+        boolean canIntroduce = (input >>> width & 1) != 0;
+        boolean alive = false;
+        for (int i = 0; i < cells; ++i) {
+            int cost;
+            if ((input >>> (i + 1) & 1) != 0) {
+                // c matches token[j - 1]
+                cost = row[i];
+            } else {
+                // delete token[j - 1]
+                cost = (i > 0 ? newRow[i - 1] : k + 1) + 1;
+                if (canIntroduce) {
+                    // substitute c for token[j - 1], or insert c
+                    cost = Math.min(cost, row[i] + 1);
+                    cost = Math.min(cost, (i + 1 < cells ? row[i + 1] : k + 1) + 1);
+                }
+            }
+            if ((input >>> i & 1) != 0) {
+                // c == token[j - 2]: transpose with the previous character
+                cost = Math.min(cost, swap[i]);
+            }
+            newRow[i] = Math.min(cost, k + 1);
+            // a transposition in the next row needs c == token[j - 1]
+            newSwap[i] = (input >>> (i + 2) & 1) != 0 ? Math.min(row[i] + 1, k + 1) : k + 1;
+            alive |= newRow[i] <= k || newSwap[i] <= k;
+        }
+        return alive;
+    }
+
+    private long key(int[] row, int[] swap) {
+        long key = 0;
+        for (int i = 0; i < cells; ++i) {
+            key = key << bits | row[i];
+            key = key << bits | swap[i];
+        }
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return "LevenshteinAutomaton(k = " + k + ", " + numStates() + " states)";
+    }
+}
@@ -2,56 +2,54 @@ package edu.stanford.cs276.lm;
 
 import edu.stanford.cs276.LanguageModel;
 
-import java.util.Map;
-
 /**
  * Created by kavinyao on 4/29/14.
  */
 public class AbsoluteDiscountLM extends LanguageModel {
     private double D;
+    // the largest D * N1+(w1 .) / c(w1) of any w1
+    private double maxBackoff;
     
     public AbsoluteDiscountLM(String corpusFilePath) throws Exception {
         super(corpusFilePath);
     }
 
+    public AbsoluteDiscountLM(NGramCounts counts) {
+        super(counts);
+    }
+
     @Override
-    public void constructDictionaries(String corpusFilePath) throws Exception {
-        super.constructDictionaries(corpusFilePath);
-
-        // compute n1 and n2
-        int n1 = 0, n2 = 0;
-        for (Map<String, Integer> counts : bigramCounts.values()) {
-            for (int c : counts.values()) {
-                if (c == 1) {
-                    ++n1;
-                } else if (c == 2) {
-                    ++n2;
-                }
-            }
-        }
+    public SmoothingType smoothingType() {
+        return SmoothingType.ABSOLUTE_DISCOUNTING;
+    }
+
+    @Override
+    protected void initialize() {
+        super.initialize();
 
         // use n1 and n2 to estimate discount D
+        long n1 = counts.bigramsWithCount(1);
+        long n2 = counts.bigramsWithCount(2);
         D = 1.0 * n1 / (n1 + 2 * n2);
 
+        maxBackoff = 0;
+        for (int w1 = 0; w1 < counts.size(); ++w1) {
+            maxBackoff = Math.max(maxBackoff, D * counts.successorTypes(w1) / counts.unigramCount(w1));
+        }
+
         // System.out.println(String.format("n1 = %d, n2 = %d, D = %f", n1, n2, D));
     }
 
     @Override
-    public double bigramProbability(String w1, String w2) {
+    public double bigramProbability(int w1, int w2) {
         // bigram part with absolute discounting
         double prefixCount = 1;
-        if (unigramCounts.containsKey(w1)) {
-            prefixCount = unigramCounts.get(w1);
+        if (w1 >= 0) {
+            prefixCount = counts.unigramCount(w1);
         }
 
-        double w2Count = 0, N1Plus = 0;
-        if (bigramCounts.containsKey(w1)) {
-            Map<String, Integer> prefix = bigramCounts.get(w1);
-            N1Plus = prefix.size();
-            if (prefix.containsKey(w2)) {
-                w2Count = prefix.get(w2);
-            }
-        }
+        double w2Count = counts.bigramCount(w1, w2);
+        double N1Plus = counts.successorTypes(w1);
 
         double discountedCount = Math.max(w2Count - D, 0);
 
@@ -64,9 +62,15 @@ public class AbsoluteDiscountLM extends LanguageModel {
         return bigramPart + unigramPart;
     }
 
+    @Override
+    protected double unseenBigramBound(int w2) {
+        // no discounted count, only the unigram part
+        return maxBackoff * smoothedUnigramProbability(w2);
+    }
+
 
     // For Kneser-Ney LM
-    protected double smoothedUnigramProbability(final String w2) {
+    protected double smoothedUnigramProbability(final int w2) {
         return unigramProbability(w2);
     }
 }
@@ -0,0 +1,163 @@
+package edu.stanford.cs276.lm;
+
+import edu.stanford.cs276.util.TermDictionary;
+
+import java.util.Arrays;
+
+/**
+ * In-heap NGramCounts. Unigram counts live in an int[] indexed by term id;
+ * bigrams are stored row by row (compressed sparse rows): the successors
+ * of w1 are successors[offsets[w1] .. offsets[w1+1]), sorted by id, with
+ * their counts at the same positions of bigramCounts.
+ */
+public class ArrayNGramCounts implements NGramCounts {
+    private TermDictionary terms;
+    private long totalTokens;
+    private int[] unigramCounts;
+
+    private int[] offsets;
+    private int[] successors;
+    private int[] bigramCounts;
+
+    private int[] predecessorTypes;
+    private long[] countOfCounts;
+
+    /**
+     * @param bigramKeys sorted keys ((long) w1 << 32 | w2)
+     * @param bigramValues counts for bigramKeys
+     */
+    ArrayNGramCounts(TermDictionary terms, int[] unigramCounts, long[] bigramKeys, int[] bigramValues) {
+        this.terms = terms;
+        final int n = terms.size();
+        this.unigramCounts = unigramCounts.length == n ? unigramCounts : Arrays.copyOf(unigramCounts, n);
+        totalTokens = 0;
+        for (int c : this.unigramCounts) {
+            totalTokens += c;
+        }
+
+        offsets = new int[n + 1];
+        successors = new int[bigramKeys.length];
+        bigramCounts = new int[bigramKeys.length];
+        predecessorTypes = new int[n];
+        countOfCounts = new long[MAX_COUNT_OF_COUNTS + 1];
+        for (int i = 0; i < bigramKeys.length; ++i) {
+            int w1 = (int) (bigramKeys[i] >>> 32);
+            int w2 = (int) bigramKeys[i];
+            ++offsets[w1 + 1];
+            successors[i] = w2;
+            bigramCounts[i] = bigramValues[i];
+            ++predecessorTypes[w2];
+            if (bigramValues[i] <= MAX_COUNT_OF_COUNTS) {
+                ++countOfCounts[bigramValues[i]];
+            }
+        }
+        for (int w = 0; w < n; ++w) {
+            offsets[w + 1] += offsets[w];
+        }
+    }
+
+    /**
+     * Copy any NGramCounts into the heap, keeping term ids.
+     */
+    public static ArrayNGramCounts copyOf(NGramCounts counts) {
+        final int n = counts.size();
+        TermDictionary terms = new TermDictionary(n);
+        int[] unigramCounts = new int[n];
+        for (int id = 0; id < n; ++id) {
+            terms.add(counts.term(id));
+            unigramCounts[id] = counts.unigramCount(id);
+        }
+
+        final long[] keys = new long[(int) counts.bigramTypes()];
+        final int[] values = new int[keys.length];
+        counts.forEachBigram(new BigramVisitor() {
+            private int i = 0;
+
+            @Override
+            public void visit(int w1, int w2, int count) {
+                keys[i] = NGramCounter.bigramKey(w1, w2);
+                values[i] = count;
+                ++i;
+            }
+        });
+        return new ArrayNGramCounts(terms, unigramCounts, keys, values);
+    }
+
+    @Override
+    public int id(String term) {
+        return terms.find(term);
+    }
+
+    @Override
+    public String term(int id) {
+        return terms.term(id);
+    }
+
+    @Override
+    public int size() {
+        return terms.size();
+    }
+
+    @Override
+    public long totalTokens() {
+        return totalTokens;
+    }
+
+    @Override
+    public int unigramCount(int id) {
+        return id < 0 ? 0 : unigramCounts[id];
+    }
+
+    @Override
+    public int bigramCount(int w1, int w2) {
+        if (w1 < 0 || w2 < 0) {
+            return 0;
+        }
+        // binary search the row of w1
+        int lo = offsets[w1], hi = offsets[w1 + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int s = successors[mid];
+            if (s < w2) {
+                lo = mid + 1;
+            } else if (s > w2) {
+                hi = mid - 1;
+            } else {
+                return bigramCounts[mid];
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public int successorTypes(int w1) {
+        return w1 < 0 ? 0 : offsets[w1 + 1] - offsets[w1];
+    }
+
+    @Override
+    public int predecessorTypes(int w2) {
+        return w2 < 0 ? 0 : predecessorTypes[w2];
+    }
+
+    @Override
+    public long bigramTypes() {
+        return successors.length;
+    }
+
+    @Override
+    public long bigramsWithCount(int c) {
+        if (c < 1 || c > MAX_COUNT_OF_COUNTS) {
+            throw new IllegalArgumentException("Count must be within [1, " + MAX_COUNT_OF_COUNTS + "]: " + c);
+        }
+        return countOfCounts[c];
+    }
+
+    @Override
+    public void forEachBigram(BigramVisitor visitor) {
+        for (int w1 = 0; w1 < offsets.length - 1; ++w1) {
+            for (int i = offsets[w1]; i < offsets[w1 + 1]; ++i) {
+                visitor.visit(w1, successors[i], bigramCounts[i]);
+            }
+        }
+    }
+}
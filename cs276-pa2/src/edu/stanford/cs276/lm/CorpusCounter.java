@@ -0,0 +1,248 @@
+package edu.stanford.cs276.lm;
+
+import edu.stanford.cs276.util.Tokenizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the unigrams and bigrams of a corpus directory on a fork-join
+ * pool. Files are cut into chunks at line boundaries; every chunk is
+ * counted into its own NGramCounter and neighbouring counters are merged
+ * left to right, so the result (term ids included) is the same as reading
+ * the files one after another with BufferedReader.readLine() and
+ * splitting each line with trim().split("\\s+").
+ *
+ * Lines are decoded with the default charset, which must be ASCII
+ * compatible ('\r' and '\n' never occur inside a multi-byte character).
+ */
+public class CorpusCounter {
+    private static final int CHUNK_SIZE = 32 << 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private CorpusCounter() {}
+
+    public static NGramCounts count(String corpusFilePath, int threads) throws IOException {
+        return count(corpusFilePath, threads, CHUNK_SIZE);
+    }
+
+    /**
+     * Count with chunks of about chunkSize bytes; tests use tiny ones to
+     * cut lines and merge many counters.
+     */
+    static NGramCounts count(String corpusFilePath, int threads, int chunkSize) throws IOException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        List<Chunk> chunks = chunks(corpusFilePath, chunkSize);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            NGramCounter counter = pool.invoke(new CountTask(chunks, 0, chunks.size()));
+            return counter.build();
+        } catch (RuntimeException e) {
+            // a task's exception rethrown on another thread comes wrapped
+            // once more, so the IOException may be further down the chain
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw e;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Stream the sentences of a corpus directory, one file after another,
+     * to sink on the calling thread. For passes that keep their state in
+     * one structure instead of per chunk counters.
+     */
+    static void forEachSentence(String corpusFilePath, SentenceSink sink) throws IOException {
+        for (Chunk chunk : chunks(corpusFilePath, CHUNK_SIZE)) {
+            chunk.read(sink);
+        }
+    }
+
+    public static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private static List<Chunk> chunks(String corpusFilePath, int chunkSize) throws IOException {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        File dir = new File(corpusFilePath);
+        for (File file : dir.listFiles()) {
+            // ignore hidden files
+            if (file.getName().charAt(0) == '.') {
+                continue; // Ignore the self and parent aliases.
+            }
+            split(file, chunkSize, chunks);
+        }
+        return chunks;
+    }
+
+    // cut a file into chunks ending right after a '\n'
+    private static void split(File file, int chunkSize, List<Chunk> chunks) throws IOException {
+        long length = file.length();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long start = 0;
+            while (start < length) {
+                long end = start + chunkSize;
+                if (end >= length) {
+                    end = length;
+                } else {
+                    raf.seek(end);
+                    int b;
+                    while ((b = raf.read()) >= 0 && b != '\n') {
+                        ++end;
+                    }
+                    end = Math.min(end + 1, length);
+                }
+                chunks.add(new Chunk(file, start, end));
+                start = end;
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static class Chunk {
+        final File file;
+        final long start;
+        final long end;
+
+        Chunk(File file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        NGramCounter count() throws IOException {
+            NGramCounter counter = new NGramCounter();
+            read(counter);
+            return counter;
+        }
+
+        void read(SentenceSink sink) throws IOException {
+            LineSplitter lines = new LineSplitter(sink);
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                long position = start;
+                while (position < end) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(BUFFER_SIZE, end - position));
+                    int n = channel.read(buffer, position);
+                    if (n < 0) {
+                        break;
+                    }
+                    lines.feed(buffer.array(), n);
+                    position += n;
+                }
+                lines.finish();
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * Splits bytes into lines the way BufferedReader.readLine() does:
+     * "\n", "\r" and "\r\n" end a line, and a last line without
+     * terminator counts unless it is empty.
+     */
+    private static class LineSplitter {
+        private static final Charset CHARSET = Charset.defaultCharset();
+
+        private final SentenceSink sink;
+        private byte[] line = new byte[256];
+        private int length = 0;
+        private boolean afterCR = false;
+
+        LineSplitter(SentenceSink sink) {
+            this.sink = sink;
+        }
+
+        void feed(byte[] bytes, int n) {
+            for (int i = 0; i < n; ++i) {
+                byte b = bytes[i];
+                if (b == '\n') {
+                    if (!afterCR) {
+                        emit();
+                    }
+                    afterCR = false;
+                } else if (b == '\r') {
+                    emit();
+                    afterCR = true;
+                } else {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, length * 2);
+                    }
+                    line[length++] = b;
+                    afterCR = false;
+                }
+            }
+        }
+
+        void finish() {
+            if (length > 0) {
+                emit();
+            }
+        }
+
+        private void emit() {
+            sink.addSentence(Tokenizer.tokenize(new String(line, 0, length, CHARSET)));
+            length = 0;
+        }
+    }
+
+    /**
+     * Receives the tokens of every line of a corpus.
+     */
+    interface SentenceSink {
+        void addSentence(String[] tokens);
+    }
+
+    private static class CountTask extends RecursiveTask<NGramCounter> {
+        private final List<Chunk> chunks;
+        private final int lo, hi;
+
+        CountTask(List<Chunk> chunks, int lo, int hi) {
+            this.chunks = chunks;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected NGramCounter compute() {
+            if (hi - lo == 0) {
+                return new NGramCounter();
+            }
+            if (hi - lo == 1) {
+                try {
+                    return chunks.get(lo).count();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            int mid = (lo + hi) >>> 1;
+            CountTask right = new CountTask(chunks, mid, hi);
+            right.fork();
+            NGramCounter left = new CountTask(chunks, lo, mid).compute();
+            // merge in corpus order so term ids match a serial pass
+            left.merge(right.join());
+            return left;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package edu.stanford.cs276.lm;
+
+import edu.stanford.cs276.util.TermDictionary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Counts bigrams out of core: bigram keys ((long) w1 << 32 | w2) fill a
+ * buffer of runSize keys, which is sorted, collapsed into (key, count)
+ * pairs and spilled to a temporary file whenever it is full. The sorted
+ * runs are then merged, at most MAX_FAN_IN at a time, into one ascending
+ * stream of bigram counts that goes straight into a MappedModelWriter,
+ * or into an ArrayNGramCounts for corpora whose bigrams fit in the heap.
+ *
+ * Memory is the buffer, one read buffer per merged run and the terms
+ * with their unigram counts, however many bigrams the corpus has; the
+ * temporary files take up to 12 bytes per distinct bigram of each run.
+ * Term ids are assigned in corpus order, as by CorpusCounter.
+ */
+public class ExternalNGramCounter implements CorpusCounter.SentenceSink {
+    // 32 MB of keys
+    public static final int DEFAULT_RUN_SIZE = 1 << 22;
+    private static final int MAX_FAN_IN = 64;
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final File tempDir;
+    private final TermDictionary terms = new TermDictionary();
+    private int[] unigramCounts = new int[1024];
+
+    private final long[] buffer;
+    private int buffered = 0;
+    private final List<File> runs = new ArrayList<File>();
+    // the first failed spill; later sentences are dropped
+    private IOException spillError;
+
+    /**
+     * @param runSize bigrams buffered before a run is spilled
+     * @param tempDir directory of the run files
+     */
+    public ExternalNGramCounter(int runSize, File tempDir) {
+        if (runSize < 1) {
+            throw new IllegalArgumentException("Run size must be positive: " + runSize);
+        }
+        this.tempDir = tempDir;
+        buffer = new long[runSize];
+    }
+
+    /**
+     * Count a corpus directory into a mapped model file, spilling runs to
+     * the directory of that file.
+     */
+    public static void countToMapped(String corpusFilePath, int runSize, File file, SmoothingType smoothingType)
+            throws IOException {
+        ExternalNGramCounter counter = new ExternalNGramCounter(runSize, file.getAbsoluteFile().getParentFile());
+        try {
+            counter.read(corpusFilePath);
+            counter.writeMapped(file, smoothingType);
+        } finally {
+            counter.deleteRuns();
+        }
+    }
+
+    /**
+     * Count a corpus directory into the heap, spilling runs to the working
+     * directory while reading it.
+     */
+    public static NGramCounts count(String corpusFilePath, int runSize) throws IOException {
+        ExternalNGramCounter counter = new ExternalNGramCounter(runSize, new File("."));
+        try {
+            counter.read(corpusFilePath);
+            return counter.build();
+        } finally {
+            counter.deleteRuns();
+        }
+    }
+
+    /**
+     * Count the sentences of a corpus directory.
+     */
+    public void read(String corpusFilePath) throws IOException {
+        CorpusCounter.forEachSentence(corpusFilePath, this);
+        if (spillError != null) {
+            throw spillError;
+        }
+    }
+
+    @Override
+    public void addSentence(String[] tokens) {
+        if (spillError != null) {
+            return;
+        }
+        int prev = -1;
+        for (String token : tokens) {
+            int id = terms.add(token);
+            if (id == unigramCounts.length) {
+                unigramCounts = Arrays.copyOf(unigramCounts, id * 2);
+            }
+            ++unigramCounts[id];
+            if (prev >= 0) {
+                if (buffered == buffer.length) {
+                    try {
+                        spill();
+                    } catch (IOException e) {
+                        spillError = e;
+                        return;
+                    }
+                }
+                buffer[buffered++] = NGramCounter.bigramKey(prev, id);
+            }
+            prev = id;
+        }
+    }
+
+    public void writeMapped(File file, SmoothingType smoothingType) throws IOException {
+        final MappedModelWriter writer = new MappedModelWriter(file, smoothingType);
+        try {
+            List<String> termList = new ArrayList<String>(terms.size());
+            for (int id = 0; id < terms.size(); ++id) {
+                termList.add(terms.term(id));
+            }
+            writer.writeTerms(termList, Arrays.copyOf(unigramCounts, terms.size()));
+            merge(new Sink() {
+                @Override
+                public void add(long key, int count) throws IOException {
+                    writer.addBigram((int) (key >>> 32), (int) key, count);
+                }
+            });
+            writer.close();
+        } finally {
+            writer.abort();
+        }
+    }
+
+    public NGramCounts build() throws IOException {
+        final List<long[]> keys = new ArrayList<long[]>();
+        final List<int[]> values = new ArrayList<int[]>();
+        final int[] n = new int[1];
+        merge(new Sink() {
+            private long[] keyBlock = new long[0];
+            private int[] valueBlock = new int[0];
+            private int i = 0;
+
+            @Override
+            public void add(long key, int count) {
+                if (i == keyBlock.length) {
+                    keyBlock = new long[1 << 16];
+                    valueBlock = new int[1 << 16];
+                    keys.add(keyBlock);
+                    values.add(valueBlock);
+                    i = 0;
+                }
+                keyBlock[i] = key;
+                valueBlock[i++] = count;
+                ++n[0];
+            }
+        });
+        long[] allKeys = new long[n[0]];
+        int[] allValues = new int[n[0]];
+        for (int b = 0, p = 0; b < keys.size(); ++b, p += 1 << 16) {
+            int length = Math.min(1 << 16, n[0] - p);
+            System.arraycopy(keys.get(b), 0, allKeys, p, length);
+            System.arraycopy(values.get(b), 0, allValues, p, length);
+        }
+        terms.trim();
+        return new ArrayNGramCounts(terms, unigramCounts, allKeys, allValues);
+    }
+
+    /**
+     * Delete the run files; the counter can't be merged afterwards.
+     */
+    public void deleteRuns() {
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    // sort, collapse and write the buffer as a new run
+    private void spill() throws IOException {
+        File run = File.createTempFile("bigrams", ".run", tempDir);
+        run.deleteOnExit();
+        runs.add(run);
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run), IO_BUFFER_SIZE));
+        try {
+            Arrays.sort(buffer, 0, buffered);
+            int i = 0;
+            while (i < buffered) {
+                int j = i + 1;
+                while (j < buffered && buffer[j] == buffer[i]) {
+                    ++j;
+                }
+                out.writeLong(buffer[i]);
+                out.writeInt(j - i);
+                i = j;
+            }
+        } finally {
+            out.close();
+        }
+        buffered = 0;
+    }
+
+    // merge the runs and the buffer into sink in ascending key order
+    private void merge(Sink sink) throws IOException {
+        if (!runs.isEmpty() && buffered > 0) {
+            spill();
+        }
+        if (runs.isEmpty()) {
+            // everything fit in the buffer
+            Arrays.sort(buffer, 0, buffered);
+            int i = 0;
+            while (i < buffered) {
+                int j = i + 1;
+                while (j < buffered && buffer[j] == buffer[i]) {
+                    ++j;
+                }
+                sink.add(buffer[i], j - i);
+                i = j;
+            }
+            buffered = 0;
+            return;
+        }
+
+        // merge groups of runs into longer runs until one pass is left
+        while (runs.size() > MAX_FAN_IN) {
+            List<File> next = new ArrayList<File>();
+            for (int from = 0; from < runs.size(); from += MAX_FAN_IN) {
+                List<File> group = runs.subList(from, Math.min(from + MAX_FAN_IN, runs.size()));
+                File merged = File.createTempFile("bigrams", ".run", tempDir);
+                merged.deleteOnExit();
+                next.add(merged);
+                final DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(merged), IO_BUFFER_SIZE));
+                try {
+                    merge(group, new Sink() {
+                        @Override
+                        public void add(long key, int count) throws IOException {
+                            out.writeLong(key);
+                            out.writeInt(count);
+                        }
+                    });
+                } finally {
+                    out.close();
+                }
+                for (File run : group) {
+                    run.delete();
+                }
+            }
+            runs.clear();
+            runs.addAll(next);
+        }
+        merge(runs, sink);
+    }
+
+    private static void merge(List<File> files, Sink sink) throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(files.size(), new Comparator<Run>() {
+            @Override
+            public int compare(Run a, Run b) {
+                return a.key < b.key ? -1 : (a.key == b.key ? 0 : 1);
+            }
+        });
+        List<Run> open = new ArrayList<Run>(files.size());
+        try {
+            for (File file : files) {
+                Run run = new Run(file);
+                open.add(run);
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                long key = run.key;
+                int count = run.count;
+                if (run.next()) {
+                    queue.add(run);
+                }
+                // the same bigram from other runs
+                while (!queue.isEmpty() && queue.peek().key == key) {
+                    run = queue.poll();
+                    count += run.count;
+                    if (run.next()) {
+                        queue.add(run);
+                    }
+                }
+                sink.add(key, count);
+            }
+        } finally {
+            for (Run run : open) {
+                run.close();
+            }
+        }
+    }
+
+    private interface Sink {
+        void add(long key, int count) throws IOException;
+    }
+
+    // a run file read one (key, count) pair at a time
+    private static class Run {
+        private final DataInputStream in;
+        long key;
+        int count;
+
+        Run(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+        }
+
+        boolean next() throws IOException {
+            try {
+                key = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            count = in.readInt();
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -2,8 +2,6 @@ package edu.stanford.cs276.lm;
 
 import edu.stanford.cs276.LanguageModel;
 
-import java.util.Map;
-
 /**
  * Created by kavinyao on 4/29/14.
  */
@@ -15,23 +13,32 @@ public class InterpolationLM extends LanguageModel {
         super(corpusFilePath);
     }
 
+    public InterpolationLM(NGramCounts counts) {
+        super(counts);
+    }
+
+    @Override
+    public SmoothingType smoothingType() {
+        return SmoothingType.LINEAR_INTERPOLATION;
+    }
+
     @Override
-    public double bigramProbability(String w1, String w2) {
+    public double bigramProbability(int w1, int w2) {
         double w2UnigramProb = unigramProbability(w2);
 
         double w1TotalCount = 1;
-        if (unigramCounts.containsKey(w1)) {
-            w1TotalCount = unigramCounts.get(w1);
-        }
-        int w2Count = 0;
-        if (bigramCounts.containsKey(w1)) {
-            Map<String, Integer> prefix = bigramCounts.get(w1);
-            if (prefix.containsKey(w2)) {
-                w2Count = prefix.get(w2);
-            }
+        if (w1 >= 0) {
+            w1TotalCount = counts.unigramCount(w1);
         }
+        int w2Count = counts.bigramCount(w1, w2);
         double w2BigramProb = w2Count / w1TotalCount;
 
         return LAMBDA * w2UnigramProb + (1 - LAMBDA) * w2BigramProb;
     }
+
+    @Override
+    protected double unseenBigramBound(int w2) {
+        // only the unigram part is left
+        return LAMBDA * unigramProbability(w2);
+    }
 }
@@ -0,0 +1,241 @@
+package edu.stanford.cs276.lm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the file format read by MappedNGramCounts. Bigrams are streamed,
+ * so they never have to be held in memory:
+ *
+ *   writer = new MappedModelWriter(file, smoothingType);
+ *   writer.writeTerms(terms, unigramCounts);
+ *   writer.addBigram(...);   // in ascending (w1, w2) order
+ *   writer.close();
+ *
+ * A writer that fails half way should be abort()ed, which closes and
+ * deletes the unfinished file; abort() does nothing after close().
+ */
+public class MappedModelWriter {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File file;
+    private SmoothingType smoothingType;
+    private DataOutputStream out;
+    private long position;
+    private boolean closed;
+
+    private int numTerms;
+    private long totalTokens;
+    private long[] sections;
+
+    // bigram state
+    private int[] rows;
+    private int[] predecessorTypes;
+    private long[] countOfCounts;
+    private long numBigrams;
+    private int lastW1, lastW2;
+
+    public MappedModelWriter(File file, SmoothingType smoothingType) throws IOException {
+        this.file = file;
+        this.smoothingType = smoothingType;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        position = 0;
+        // header is filled in by close()
+        writePadding(MappedNGramCounts.HEADER_SIZE);
+        sections = new long[8];
+    }
+
+    /**
+     * Write the term table and unigram counts. terms.get(id) is the term
+     * with the given id.
+     */
+    public void writeTerms(List<String> terms, int[] unigramCounts) throws IOException {
+        numTerms = terms.size();
+
+        // term blob
+        sections[0] = position;
+        int[] termIndex = new int[numTerms + 1];
+        long blobSize = 0;
+        for (int id = 0; id < numTerms; ++id) {
+            byte[] bytes = terms.get(id).getBytes(UTF8);
+            out.write(bytes);
+            blobSize += bytes.length;
+            if (blobSize > Integer.MAX_VALUE) {
+                throw new IOException("Term table too large");
+            }
+            termIndex[id + 1] = (int) blobSize;
+        }
+        position += blobSize;
+        writePadding((int) ((4 - (position & 3)) & 3));
+
+        // term index
+        sections[1] = position;
+        writeInts(termIndex, termIndex.length);
+
+        // hash slots
+        int capacity = 16;
+        while (capacity < numTerms * 2) {
+            capacity <<= 1;
+        }
+        int[] slots = new int[capacity];
+        for (int id = 0; id < numTerms; ++id) {
+            int slot = MappedNGramCounts.hash(terms.get(id)) & (capacity - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            slots[slot] = id + 1;
+        }
+        sections[2] = position;
+        sections[3] = capacity;
+        writeInts(slots, capacity);
+
+        // unigrams
+        sections[4] = position;
+        totalTokens = 0;
+        for (int id = 0; id < numTerms; ++id) {
+            totalTokens += unigramCounts[id];
+        }
+        writeInts(unigramCounts, numTerms);
+
+        // bigrams follow
+        sections[5] = position;
+        rows = new int[numTerms + 1];
+        predecessorTypes = new int[numTerms];
+        countOfCounts = new long[NGramCounts.MAX_COUNT_OF_COUNTS + 1];
+        numBigrams = 0;
+        lastW1 = -1;
+        lastW2 = -1;
+    }
+
+    /**
+     * Append one bigram; calls must come in ascending (w1, w2) order.
+     */
+    public void addBigram(int w1, int w2, int count) throws IOException {
+        if (w1 < lastW1 || (w1 == lastW1 && w2 <= lastW2)) {
+            throw new IOException("Bigrams out of order: (" + w1 + ", " + w2 + ")");
+        }
+        if (numBigrams == Integer.MAX_VALUE) {
+            throw new IOException("Too many bigrams");
+        }
+        out.writeInt(w2);
+        out.writeInt(count);
+        position += 8;
+
+        ++rows[w1 + 1];
+        ++predecessorTypes[w2];
+        if (count <= NGramCounts.MAX_COUNT_OF_COUNTS) {
+            ++countOfCounts[count];
+        }
+        ++numBigrams;
+        lastW1 = w1;
+        lastW2 = w2;
+    }
+
+    public void close() throws IOException {
+        // rows
+        for (int w = 0; w < numTerms; ++w) {
+            rows[w + 1] += rows[w];
+        }
+        sections[6] = position;
+        writeInts(rows, rows.length);
+
+        // predecessor types
+        sections[7] = position;
+        writeInts(predecessorTypes, numTerms);
+        out.close();
+
+        // header
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.writeInt(MappedNGramCounts.MAGIC);
+            raf.writeInt(MappedNGramCounts.VERSION);
+            raf.writeInt(smoothingType.ordinal());
+            raf.writeInt(numTerms);
+            raf.writeLong(totalTokens);
+            raf.writeLong(numBigrams);
+            for (long c : countOfCounts) {
+                raf.writeLong(c);
+            }
+            for (long s : sections) {
+                raf.writeLong(s);
+            }
+        } finally {
+            raf.close();
+        }
+        closed = true;
+    }
+
+    /**
+     * Close and delete the file unless close() completed.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            // the file goes anyway
+        }
+        file.delete();
+        closed = true;
+    }
+
+    /**
+     * Write counts in the mapped format in one go.
+     */
+    public static void write(File file, SmoothingType smoothingType, final NGramCounts counts) throws IOException {
+        final MappedModelWriter writer = new MappedModelWriter(file, smoothingType);
+        try {
+            int n = counts.size();
+            String[] terms = new String[n];
+            int[] unigramCounts = new int[n];
+            for (int id = 0; id < n; ++id) {
+                terms[id] = counts.term(id);
+                unigramCounts[id] = counts.unigramCount(id);
+            }
+            writer.writeTerms(Arrays.asList(terms), unigramCounts);
+
+            final IOException[] error = new IOException[1];
+            counts.forEachBigram(new NGramCounts.BigramVisitor() {
+                @Override
+                public void visit(int w1, int w2, int count) {
+                    if (error[0] == null) {
+                        try {
+                            writer.addBigram(w1, w2, count);
+                        } catch (IOException e) {
+                            error[0] = e;
+                        }
+                    }
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+            writer.close();
+        } finally {
+            writer.abort();
+        }
+    }
+
+    private void writeInts(int[] values, int n) throws IOException {
+        for (int i = 0; i < n; ++i) {
+            out.writeInt(values[i]);
+        }
+        position += 4L * n;
+    }
+
+    private void writePadding(int n) throws IOException {
+        for (int i = 0; i < n; ++i) {
+            out.writeByte(0);
+        }
+        position += n;
+    }
+}
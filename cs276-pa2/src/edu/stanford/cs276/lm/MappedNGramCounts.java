@@ -0,0 +1,292 @@
+package edu.stanford.cs276.lm;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * NGramCounts answered in place from a memory-mapped model file, so opening
+ * a model costs a header read no matter how big the model is, and every
+ * process on a host shares the same page cache.
+ *
+ * File layout (version 1, big-endian, every section 4-byte aligned):
+ *
+ *   header      magic, version, smoothing type, #terms, #tokens, #bigrams,
+ *               count-of-counts and the offsets of the sections below
+ *   term blob   UTF-8 bytes of all terms, in id order
+ *   term index  int[#terms + 1], offset of each term in the blob
+ *   hash slots  int[power of two], term id + 1 by hash(term), 0 = empty,
+ *               linear probing
+ *   unigrams    int[#terms]
+ *   bigrams     (successor id, count) int pairs, sorted by (w1, w2)
+ *   rows        int[#terms + 1], index of the first bigram of each w1
+ *   preds       int[#terms], N1+(. w2)
+ *
+ * Written by MappedModelWriter.
+ */
+public class MappedNGramCounts implements NGramCounts {
+    static final int MAGIC = 0x43534C4D; // "CSLM"
+    static final int VERSION = 1;
+
+    // header layout
+    static final int HEADER_SIZE = 136;
+    static final int SMOOTHING_POS = 8;
+    static final int TERMS_POS = 12;
+    static final int TOKENS_POS = 16;
+    static final int BIGRAMS_POS = 24;
+    static final int COUNT_OF_COUNTS_POS = 32;
+    static final int SECTIONS_POS = COUNT_OF_COUNTS_POS + 8 * (MAX_COUNT_OF_COUNTS + 1);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // the file is mapped in segments since a single mapping is limited to 2GB
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private transient MappedByteBuffer[] segments;
+
+    private transient SmoothingType smoothingType;
+    private transient int numTerms;
+    private transient long totalTokens;
+    private transient long numBigrams;
+    private transient long[] countOfCounts;
+
+    private transient long blobPos;
+    private transient long termIndexPos;
+    private transient long slotsPos;
+    private transient int slotMask;
+    private transient long unigramsPos;
+    private transient long bigramsPos;
+    private transient long rowsPos;
+    private transient long predsPos;
+
+    private MappedNGramCounts(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            int n = (int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS);
+            segments = new MappedByteBuffer[n];
+            for (int i = 0; i < n; ++i) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(size - start, 1L << SEGMENT_BITS));
+            }
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+
+        // header fields always lie in the first segment
+        MappedByteBuffer h = segments.length > 0 ? segments[0] : null;
+        if (h == null || h.capacity() < HEADER_SIZE || h.getInt(0) != MAGIC) {
+            throw new IOException("Not a mapped language model: " + file);
+        }
+        if (h.getInt(4) != VERSION) {
+            throw new IOException("Unsupported language model version " + h.getInt(4) + ": " + file);
+        }
+        smoothingType = SmoothingType.values()[h.getInt(SMOOTHING_POS)];
+        numTerms = h.getInt(TERMS_POS);
+        totalTokens = h.getLong(TOKENS_POS);
+        numBigrams = h.getLong(BIGRAMS_POS);
+        countOfCounts = new long[MAX_COUNT_OF_COUNTS + 1];
+        for (int c = 0; c <= MAX_COUNT_OF_COUNTS; ++c) {
+            countOfCounts[c] = h.getLong(COUNT_OF_COUNTS_POS + 8 * c);
+        }
+
+        int pos = SECTIONS_POS;
+        blobPos = h.getLong(pos);
+        termIndexPos = h.getLong(pos += 8);
+        slotsPos = h.getLong(pos += 8);
+        slotMask = (int) h.getLong(pos += 8) - 1;
+        unigramsPos = h.getLong(pos += 8);
+        bigramsPos = h.getLong(pos += 8);
+        rowsPos = h.getLong(pos += 8);
+        predsPos = h.getLong(pos += 8);
+    }
+
+    public static MappedNGramCounts open(File file) throws IOException {
+        return new MappedNGramCounts(file);
+    }
+
+    /**
+     * Return true if file starts with the mapped model magic number.
+     */
+    public static boolean isMappedModel(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return file.length() >= HEADER_SIZE && in.readInt() == MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    public SmoothingType smoothingType() {
+        return smoothingType;
+    }
+
+    @Override
+    public int id(String term) {
+        byte[] utf8 = null;
+        int slot = hash(term) & slotMask;
+        int id;
+        while ((id = getInt(slotsPos + 4L * slot) - 1) >= 0) {
+            long start = blobPos + getInt(termIndexPos + 4L * id);
+            long end = blobPos + getInt(termIndexPos + 4L * (id + 1));
+            if (utf8 == null && !isAscii(term)) {
+                utf8 = term.getBytes(UTF8);
+            }
+            if (utf8 == null ? equalsAscii(term, start, end) : equalsBytes(utf8, start, end)) {
+                return id;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return -1;
+    }
+
+    @Override
+    public String term(int id) {
+        long start = blobPos + getInt(termIndexPos + 4L * id);
+        long end = blobPos + getInt(termIndexPos + 4L * (id + 1));
+        byte[] bytes = new byte[(int) (end - start)];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = getByte(start + i);
+        }
+        return new String(bytes, UTF8);
+    }
+
+    @Override
+    public int size() {
+        return numTerms;
+    }
+
+    @Override
+    public long totalTokens() {
+        return totalTokens;
+    }
+
+    @Override
+    public int unigramCount(int id) {
+        return id < 0 ? 0 : getInt(unigramsPos + 4L * id);
+    }
+
+    @Override
+    public int bigramCount(int w1, int w2) {
+        if (w1 < 0 || w2 < 0) {
+            return 0;
+        }
+        // binary search the row of w1
+        int lo = getInt(rowsPos + 4L * w1), hi = getInt(rowsPos + 4L * (w1 + 1)) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long pos = bigramsPos + 8L * mid;
+            int s = getInt(pos);
+            if (s < w2) {
+                lo = mid + 1;
+            } else if (s > w2) {
+                hi = mid - 1;
+            } else {
+                return getInt(pos + 4);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public int successorTypes(int w1) {
+        return w1 < 0 ? 0 : getInt(rowsPos + 4L * (w1 + 1)) - getInt(rowsPos + 4L * w1);
+    }
+
+    @Override
+    public int predecessorTypes(int w2) {
+        return w2 < 0 ? 0 : getInt(predsPos + 4L * w2);
+    }
+
+    @Override
+    public long bigramTypes() {
+        return numBigrams;
+    }
+
+    @Override
+    public long bigramsWithCount(int c) {
+        if (c < 1 || c > MAX_COUNT_OF_COUNTS) {
+            throw new IllegalArgumentException("Count must be within [1, " + MAX_COUNT_OF_COUNTS + "]: " + c);
+        }
+        return countOfCounts[c];
+    }
+
+    @Override
+    public void forEachBigram(BigramVisitor visitor) {
+        for (int w1 = 0; w1 < numTerms; ++w1) {
+            int end = getInt(rowsPos + 4L * (w1 + 1));
+            for (int i = getInt(rowsPos + 4L * w1); i < end; ++i) {
+                long pos = bigramsPos + 8L * i;
+                visitor.visit(w1, getInt(pos), getInt(pos + 4));
+            }
+        }
+    }
+
+    // a mapping cannot be serialized; write a heap copy instead
+    private Object writeReplace() throws ObjectStreamException {
+        return ArrayNGramCounts.copyOf(this);
+    }
+
+    private int getInt(long pos) {
+        return segments[(int) (pos >>> SEGMENT_BITS)].getInt((int) (pos & SEGMENT_MASK));
+    }
+
+    private byte getByte(long pos) {
+        return segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & SEGMENT_MASK));
+    }
+
+    private boolean equalsAscii(String term, long start, long end) {
+        if (end - start != term.length()) {
+            return false;
+        }
+        for (int i = 0; i < term.length(); ++i) {
+            if (getByte(start + i) != term.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equalsBytes(byte[] utf8, long start, long end) {
+        if (end - start != utf8.length) {
+            return false;
+        }
+        for (int i = 0; i < utf8.length; ++i) {
+            if (getByte(start + i) != utf8[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String term) {
+        for (int i = 0; i < term.length(); ++i) {
+            if (term.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hash of a term as used by the hash slots; part of the file format.
+     * It builds on String.hashCode, whose value the String javadoc defines
+     * (s[0]*31^(n-1) + ... + s[n-1] over the UTF-16 chars), so a file
+     * written by one JVM is read the same by any other. A change here needs
+     * a new VERSION.
+     */
+    static int hash(String term) {
+        int h = term.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,31 @@
+package edu.stanford.cs276.lm;
+
+import edu.stanford.cs276.LanguageModel;
+
+/**
+ * Converts a language model file between the memory-mapped and the
+ * Java serialization formats. Trigram models and pruned or quantized
+ * counts only convert to serialized, see LanguageModel.saveMapped.
+ *
+ * Usage: ModelConverter <input model> <output model> <mapped | serialized>
+ */
+public class ModelConverter {
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println(
+                    "Invalid arguments.  Argument count must be 3 \n" +
+                    "ModelConverter <input model> <output model> <mapped | serialized> \n" +
+                    "SAMPLE: ModelConverter languageModel languageModel.ser serialized \n");
+            return;
+        }
+
+        LanguageModel languageModel = LanguageModel.load(args[0]);
+        if (args[2].equals("mapped")) {
+            languageModel.saveMapped(args[1]);
+        } else if (args[2].equals("serialized")) {
+            languageModel.save(args[1]);
+        } else {
+            throw new Exception("Invalid target format - must be one of <mapped | serialized>");
+        }
+    }
+}
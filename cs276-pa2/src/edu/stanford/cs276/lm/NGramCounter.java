@@ -0,0 +1,79 @@
+package edu.stanford.cs276.lm;
+
+import edu.stanford.cs276.util.LongIntMap;
+import edu.stanford.cs276.util.TermDictionary;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates unigram and bigram counts sentence by sentence and freezes
+ * them into an ArrayNGramCounts.
+ */
+public class NGramCounter implements CorpusCounter.SentenceSink {
+    private TermDictionary terms;
+    private int[] unigramCounts;
+    // ((long) w1 << 32 | w2) -> count
+    private LongIntMap bigramCounts;
+
+    public NGramCounter() {
+        terms = new TermDictionary();
+        unigramCounts = new int[1024];
+        bigramCounts = new LongIntMap();
+    }
+
+    @Override
+    public void addSentence(String[] tokens) {
+        int prev = -1;
+        for (String token : tokens) {
+            int id = terms.add(token);
+            if (id == unigramCounts.length) {
+                unigramCounts = Arrays.copyOf(unigramCounts, unigramCounts.length * 2);
+            }
+            ++unigramCounts[id];
+            if (prev >= 0) {
+                bigramCounts.add(bigramKey(prev, id), 1);
+            }
+            prev = id;
+        }
+    }
+
+    /**
+     * Add the counts of other to this counter. Terms new to this counter
+     * get ids in the order other first saw them, so merging counters of
+     * consecutive pieces of a corpus in order assigns the same ids as
+     * counting the whole corpus with one counter.
+     */
+    public void merge(NGramCounter other) {
+        final int[] idMap = new int[other.terms.size()];
+        for (int i = 0; i < idMap.length; ++i) {
+            int id = terms.add(other.terms.term(i));
+            if (id == unigramCounts.length) {
+                unigramCounts = Arrays.copyOf(unigramCounts, unigramCounts.length * 2);
+            }
+            unigramCounts[id] += other.unigramCounts[i];
+            idMap[i] = id;
+        }
+        other.bigramCounts.forEach(new LongIntMap.Visitor() {
+            @Override
+            public void visit(long key, int value) {
+                int w1 = idMap[(int) (key >>> 32)];
+                int w2 = idMap[(int) key];
+                bigramCounts.add(bigramKey(w1, w2), value);
+            }
+        });
+    }
+
+    public NGramCounts build() {
+        long[] keys = bigramCounts.sortedKeys();
+        int[] values = new int[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            values[i] = bigramCounts.get(keys[i]);
+        }
+        terms.trim();
+        return new ArrayNGramCounts(terms, unigramCounts, keys, values);
+    }
+
+    static long bigramKey(int w1, int w2) {
+        return ((long) w1 << 32) | (w2 & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,52 @@
+package edu.stanford.cs276.lm;
+
+import java.io.Serializable;
+
+/**
+ * Read-only unigram and bigram counts over integer term ids.
+ * Every method accepts the id -1 (unknown term) and treats it as a term
+ * that never occurred.
+ */
+public interface NGramCounts extends Serializable {
+    // count-of-counts are kept for bigram counts 1..MAX_COUNT_OF_COUNTS
+    public static final int MAX_COUNT_OF_COUNTS = 4;
+
+    /**
+     * @return id of term, -1 if it never occurred
+     */
+    public int id(String term);
+
+    public String term(int id);
+
+    // number of distinct terms
+    public int size();
+
+    // number of tokens in the corpus
+    public long totalTokens();
+
+    public int unigramCount(int id);
+
+    public int bigramCount(int w1, int w2);
+
+    // N1+(w1 .): number of distinct terms following w1
+    public int successorTypes(int w1);
+
+    // N1+(. w2): number of distinct terms preceding w2
+    public int predecessorTypes(int w2);
+
+    // number of distinct bigrams
+    public long bigramTypes();
+
+    /**
+     * @param c 1 <= c <= MAX_COUNT_OF_COUNTS
+     * @return number of distinct bigrams occurring exactly c times
+     * @throws IllegalArgumentException for c outside that range
+     */
+    public long bigramsWithCount(int c);
+
+    public void forEachBigram(BigramVisitor visitor);
+
+    public interface BigramVisitor {
+        public void visit(int w1, int w2, int count);
+    }
+}
@@ -0,0 +1,242 @@
+package edu.stanford.cs276.lm;
+
+import edu.stanford.cs276.util.CountMinSketch;
+import edu.stanford.cs276.util.LongIntMap;
+import edu.stanford.cs276.util.TermDictionary;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Counts of a corpus too large to keep every distinct bigram, built in
+ * memory bounded by the vocabulary, the sketch and the frequent bigrams.
+ *
+ * The first pass counts unigrams exactly and streams every bigram into a
+ * CountMinSketch. Since a conservative update sketch raises a key's
+ * estimate by one per occurrence, the same pass also estimates what the
+ * smoothing needs about all bigrams: the number of distinct bigrams, the
+ * successor and predecessor types of every term, and how many bigrams
+ * occur once, twice, ... The second pass counts exactly the bigrams the
+ * sketch estimates at minCount or more (never missing one), and keeps
+ * those that really occur minCount times.
+ *
+ * bigramCount is 0 for pruned bigrams, while the type statistics still
+ * cover them, so AbsoluteDiscountLM and KneserNeyLM give the pruned
+ * bigrams' mass to the unigram part as if they had been seen.
+ *
+ * A first occurrence is missed when all counters of the new bigram
+ * already collided; each one found counts for 1 / (1 - p) types, p
+ * being the collision probability at that time, which keeps the type
+ * estimates close even when the sketch fills up. The missed bigrams are
+ * taken out of the count of twice seen bigrams, where most of them land;
+ * the counts below minCount degrade as the sketch fills, so size it to a
+ * few times the number of distinct bigrams when the discount matters.
+ */
+public class PrunedNGramCounts implements NGramCounts {
+    public static final int DEFAULT_SKETCH_WIDTH = 1 << 21;
+    public static final int DEFAULT_SKETCH_DEPTH = 4;
+
+    // unigrams and the kept bigrams
+    private final ArrayNGramCounts kept;
+    private final long bigramTypes;
+    private final long[] countOfCounts;
+    private final int[] successorTypes;
+    private final int[] predecessorTypes;
+
+    private PrunedNGramCounts(ArrayNGramCounts kept, SketchPass sketch, int minCount) {
+        this.kept = kept;
+        int n = kept.size();
+        bigramTypes = Math.round(sketch.types);
+        successorTypes = new int[n];
+        predecessorTypes = new int[n];
+        for (int w = 0; w < n; ++w) {
+            // kept bigrams are exact, collisions can only hide types
+            successorTypes[w] = Math.max(Math.round(sketch.successorTypes[w]), kept.successorTypes(w));
+            predecessorTypes[w] = Math.max(Math.round(sketch.predecessorTypes[w]), kept.predecessorTypes(w));
+        }
+        countOfCounts = new long[MAX_COUNT_OF_COUNTS + 1];
+        // a missed first occurrence mostly lands on a counter at 1, so it
+        // was taken for a second occurrence
+        long[] atLeast = Arrays.copyOf(sketch.atLeast, sketch.atLeast.length);
+        atLeast[1] = Math.round(sketch.types);
+        atLeast[2] = Math.max(atLeast[2] - Math.round(sketch.types - sketch.found), atLeast[3]);
+        for (int c = 1; c <= MAX_COUNT_OF_COUNTS; ++c) {
+            countOfCounts[c] = c >= minCount ? kept.bigramsWithCount(c)
+                    : Math.max(atLeast[c] - atLeast[c + 1], 0);
+        }
+    }
+
+    /**
+     * Count a corpus directory, keeping the bigrams occurring at least
+     * minCount times. The sketch takes 4 * sketchWidth * sketchDepth bytes.
+     */
+    public static PrunedNGramCounts count(String corpusFilePath, int minCount, int sketchWidth, int sketchDepth)
+            throws IOException {
+        if (minCount < 1) {
+            throw new IllegalArgumentException("Minimum bigram count must be positive: " + minCount);
+        }
+        SketchPass sketch = new SketchPass(new CountMinSketch(sketchWidth, sketchDepth));
+        CorpusCounter.forEachSentence(corpusFilePath, sketch);
+
+        KeepPass keep = new KeepPass(sketch, minCount);
+        CorpusCounter.forEachSentence(corpusFilePath, keep);
+
+        long[] candidates = keep.bigramCounts.sortedKeys();
+        long[] keys = new long[candidates.length];
+        int[] values = new int[candidates.length];
+        int numKept = 0;
+        for (long key : candidates) {
+            int count = keep.bigramCounts.get(key);
+            // drop the ones the sketch overestimated
+            if (count >= minCount) {
+                keys[numKept] = key;
+                values[numKept++] = count;
+            }
+        }
+        sketch.terms.trim();
+        ArrayNGramCounts kept = new ArrayNGramCounts(sketch.terms, sketch.unigramCounts,
+                Arrays.copyOf(keys, numKept), Arrays.copyOf(values, numKept));
+        return new PrunedNGramCounts(kept, sketch, minCount);
+    }
+
+    @Override
+    public int id(String term) {
+        return kept.id(term);
+    }
+
+    @Override
+    public String term(int id) {
+        return kept.term(id);
+    }
+
+    @Override
+    public int size() {
+        return kept.size();
+    }
+
+    @Override
+    public long totalTokens() {
+        return kept.totalTokens();
+    }
+
+    @Override
+    public int unigramCount(int id) {
+        return kept.unigramCount(id);
+    }
+
+    @Override
+    public int bigramCount(int w1, int w2) {
+        return kept.bigramCount(w1, w2);
+    }
+
+    @Override
+    public int successorTypes(int w1) {
+        return w1 < 0 ? 0 : successorTypes[w1];
+    }
+
+    @Override
+    public int predecessorTypes(int w2) {
+        return w2 < 0 ? 0 : predecessorTypes[w2];
+    }
+
+    @Override
+    public long bigramTypes() {
+        return bigramTypes;
+    }
+
+    @Override
+    public long bigramsWithCount(int c) {
+        if (c < 1 || c > MAX_COUNT_OF_COUNTS) {
+            throw new IllegalArgumentException("Count must be within [1, " + MAX_COUNT_OF_COUNTS + "]: " + c);
+        }
+        return countOfCounts[c];
+    }
+
+    // only the kept bigrams
+    @Override
+    public void forEachBigram(BigramVisitor visitor) {
+        kept.forEachBigram(visitor);
+    }
+
+    /**
+     * Exact unigrams, sketched bigrams and the statistics read off the
+     * sketch as it is updated.
+     */
+    private static class SketchPass implements CorpusCounter.SentenceSink {
+        final CountMinSketch sketch;
+        final TermDictionary terms = new TermDictionary();
+        int[] unigramCounts = new int[1024];
+        // type estimates, corrected for missed first occurrences
+        float[] successorTypes = new float[1024];
+        float[] predecessorTypes = new float[1024];
+        double types = 0;
+        // first occurrences found, i.e. types without the correction
+        long found = 0;
+        // atLeast[c]: bigrams whose estimate reached c
+        final long[] atLeast = new long[MAX_COUNT_OF_COUNTS + 2];
+
+        SketchPass(CountMinSketch sketch) {
+            this.sketch = sketch;
+        }
+
+        @Override
+        public void addSentence(String[] tokens) {
+            int prev = -1;
+            for (String token : tokens) {
+                int id = terms.add(token);
+                if (id == unigramCounts.length) {
+                    unigramCounts = Arrays.copyOf(unigramCounts, id * 2);
+                    successorTypes = Arrays.copyOf(successorTypes, id * 2);
+                    predecessorTypes = Arrays.copyOf(predecessorTypes, id * 2);
+                }
+                ++unigramCounts[id];
+                if (prev >= 0) {
+                    int before = sketch.add(NGramCounter.bigramKey(prev, id));
+                    if (before == 0) {
+                        // first occurrence, standing for the missed ones too
+                        float weight = (float) (1 / (1 - sketch.collisionProbability()));
+                        types += weight;
+                        ++found;
+                        successorTypes[prev] += weight;
+                        predecessorTypes[id] += weight;
+                    }
+                    if (before + 1 < atLeast.length) {
+                        ++atLeast[before + 1];
+                    }
+                }
+                prev = id;
+            }
+        }
+    }
+
+    /**
+     * Exact counts of the bigrams the sketch estimates at minCount or more.
+     */
+    private static class KeepPass implements CorpusCounter.SentenceSink {
+        final TermDictionary terms;
+        final CountMinSketch sketch;
+        final int minCount;
+        final LongIntMap bigramCounts = new LongIntMap();
+
+        KeepPass(SketchPass sketchPass, int minCount) {
+            this.terms = sketchPass.terms;
+            this.sketch = sketchPass.sketch;
+            this.minCount = minCount;
+        }
+
+        @Override
+        public void addSentence(String[] tokens) {
+            int prev = -1;
+            for (String token : tokens) {
+                int id = terms.find(token);
+                if (prev >= 0) {
+                    long key = NGramCounter.bigramKey(prev, id);
+                    if (sketch.estimate(key) >= minCount) {
+                        bigramCounts.add(key, 1);
+                    }
+                }
+                prev = id;
+            }
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package edu.stanford.cs276.lm;
+
+import edu.stanford.cs276.util.MinimalPerfectHash;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact, lossy NGramCounts for small deployments.
+ *
+ * - Term ids are the slots of a minimal perfect hash of the terms; the
+ *   terms are kept once, as UTF-8, to verify lookups and for term().
+ * - Unigram counts, bigram counts and predecessor types are stored as
+ *   8 or 16 bit codes into a codebook: small values exactly, larger
+ *   ones in logarithmic buckets represented by their mean.
+ * - The successors of w1 form one byte row: its successor types and
+ *   the number of successors stored (fewer if counts were pruned), a
+ *   skip table for long rows, then per successor the gap to the
+ *   previous id as a variable-byte integer and the code of its count.
+ *
+ * Totals (tokens, bigram types, count-of-counts) and successor types
+ * stay exact, so the smoothing parameters do not move.
+ */
+public class QuantizedNGramCounts implements NGramCounts {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // successors per block between skip table entries
+    private static final int BLOCK = 32;
+
+    private final int bits;
+    private final MinimalPerfectHash hash;
+    private final byte[] termBlob;
+    private final int[] termOffsets;
+
+    private final long totalTokens;
+    private final long numBigrams;
+    private final long[] countOfCounts;
+
+    // codes, bits / 8 bytes each
+    private final Codebook unigramCodebook;
+    private final byte[] unigramCodes;
+    private final Codebook predecessorCodebook;
+    private final byte[] predecessorCodes;
+    private final Codebook bigramCodebook;
+    // successor rows
+    private final byte[] rows;
+    private final int[] rowOffsets;
+
+    private QuantizedNGramCounts(NGramCounts counts, int bits) {
+        if (bits != 8 && bits != 16) {
+            throw new IllegalArgumentException("Quantization must be 8 or 16 bits: " + bits);
+        }
+        this.bits = bits;
+        final int n = counts.size();
+        String[] terms = new String[n];
+        for (int id = 0; id < n; ++id) {
+            terms[id] = counts.term(id);
+        }
+        hash = new MinimalPerfectHash(terms);
+
+        // renumber terms by their hash slot
+        final int[] newId = new int[n];
+        String[] byId = new String[n];
+        for (int id = 0; id < n; ++id) {
+            newId[id] = hash.index(terms[id]);
+            byId[newId[id]] = terms[id];
+        }
+        ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        termOffsets = new int[n + 1];
+        for (int id = 0; id < n; ++id) {
+            byte[] utf8 = byId[id].getBytes(UTF8);
+            blob.write(utf8, 0, utf8.length);
+            termOffsets[id + 1] = blob.size();
+        }
+        termBlob = blob.toByteArray();
+
+        totalTokens = counts.totalTokens();
+        numBigrams = counts.bigramTypes();
+        countOfCounts = new long[MAX_COUNT_OF_COUNTS + 1];
+        for (int c = 1; c <= MAX_COUNT_OF_COUNTS; ++c) {
+            countOfCounts[c] = counts.bigramsWithCount(c);
+        }
+
+        int[] unigrams = new int[n];
+        int[] predecessors = new int[n];
+        for (int id = 0; id < n; ++id) {
+            unigrams[newId[id]] = counts.unigramCount(id);
+            predecessors[newId[id]] = counts.predecessorTypes(id);
+        }
+        unigramCodebook = new Codebook(unigrams, bits);
+        unigramCodes = encodeAll(unigramCodebook, unigrams);
+        predecessorCodebook = new Codebook(predecessors, bits);
+        predecessorCodes = encodeAll(predecessorCodebook, predecessors);
+
+        // bigrams by new ids: successor (high) and count (low) per row
+        final int[] rowStart = new int[n + 1];
+        counts.forEachBigram(new BigramVisitor() {
+            @Override
+            public void visit(int w1, int w2, int count) {
+                ++rowStart[newId[w1] + 1];
+            }
+        });
+        for (int w = 0; w < n; ++w) {
+            rowStart[w + 1] += rowStart[w];
+        }
+        // pruned counts visit fewer bigrams than bigramTypes()
+        final long[] entries = new long[rowStart[n]];
+        final int[] bigramValues = new int[rowStart[n]];
+        final int[] fill = Arrays.copyOf(rowStart, n);
+        counts.forEachBigram(new BigramVisitor() {
+            private int i = 0;
+
+            @Override
+            public void visit(int w1, int w2, int count) {
+                entries[fill[newId[w1]]++] = (long) newId[w2] << 32 | count;
+                bigramValues[i++] = count;
+            }
+        });
+        bigramCodebook = new Codebook(bigramValues, bits);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        rowOffsets = new int[n + 1];
+        for (int w1 = 0; w1 < n; ++w1) {
+            Arrays.sort(entries, rowStart[w1], rowStart[w1 + 1]);
+            writeRow(out, counts.successorTypes(w1), entries, rowStart[w1], rowStart[w1 + 1]);
+            rowOffsets[w1 + 1] = out.size();
+        }
+        rows = out.toByteArray();
+    }
+
+    /**
+     * Quantize counts into codes of the given number of bits, 8 or 16.
+     */
+    public static QuantizedNGramCounts create(NGramCounts counts, int bits) {
+        return new QuantizedNGramCounts(counts, bits);
+    }
+
+    public int bits() {
+        return bits;
+    }
+
+    private void writeRow(ByteArrayOutputStream out, int types, long[] entries, int from, int to) {
+        int size = to - from;
+        if (types == 0 && size == 0) {
+            return;
+        }
+        writeVarint(out, types);
+        writeVarint(out, size);
+        int numBlocks = (size + BLOCK - 1) / BLOCK;
+
+        // entries first, to know where the blocks start
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int[] blockOffsets = new int[numBlocks];
+        int prev = -1;
+        for (int i = 0; i < size; ++i) {
+            int w2 = (int) (entries[from + i] >>> 32);
+            int count = (int) entries[from + i];
+            if (i % BLOCK == 0) {
+                blockOffsets[i / BLOCK] = data.size();
+                prev = i == 0 ? -1 : w2 - 1;
+            }
+            writeVarint(data, w2 - prev - 1);
+            writeCode(data, bigramCodebook.encode(count));
+            prev = w2;
+        }
+
+        // skip table: first successor and data offset of blocks 1..
+        for (int b = 1; b < numBlocks; ++b) {
+            writeInt(out, (int) (entries[from + b * BLOCK] >>> 32));
+            writeInt(out, blockOffsets[b]);
+        }
+        byte[] bytes = data.toByteArray();
+        out.write(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public int id(String term) {
+        int slot = hash.index(term);
+        if (slot < 0) {
+            return -1;
+        }
+        // the hash maps every string somewhere; check it is this term
+        int p = termOffsets[slot];
+        int end = termOffsets[slot + 1];
+        for (int i = 0; i < term.length(); ++i) {
+            char c = term.charAt(i);
+            if (c >= 0x80) {
+                return term.equals(term(slot)) ? slot : -1;
+            }
+            if (p == end || termBlob[p++] != c) {
+                return -1;
+            }
+        }
+        return p == end ? slot : -1;
+    }
+
+    @Override
+    public String term(int id) {
+        return new String(termBlob, termOffsets[id], termOffsets[id + 1] - termOffsets[id], UTF8);
+    }
+
+    @Override
+    public int size() {
+        return termOffsets.length - 1;
+    }
+
+    @Override
+    public long totalTokens() {
+        return totalTokens;
+    }
+
+    @Override
+    public int unigramCount(int id) {
+        return id < 0 ? 0 : unigramCodebook.decode(readCode(unigramCodes, id * (bits / 8)));
+    }
+
+    @Override
+    public int bigramCount(int w1, int w2) {
+        if (w1 < 0 || w2 < 0) {
+            return 0;
+        }
+        int pos = rowOffsets[w1];
+        if (pos == rowOffsets[w1 + 1]) {
+            return 0;
+        }
+        pos += varintLength(readVarint(rows, pos));
+        int size = readVarint(rows, pos);
+        if (size == 0) {
+            return 0;
+        }
+        pos += varintLength(size);
+        int numBlocks = (size + BLOCK - 1) / BLOCK;
+        int data = pos + 8 * (numBlocks - 1);
+
+        // last block starting at or before w2
+        int block = 0;
+        int lo = 1, hi = numBlocks - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (readInt(rows, pos + 8 * (mid - 1)) <= w2) {
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        int prev = -1;
+        if (block > 0) {
+            prev = readInt(rows, pos + 8 * (block - 1)) - 1;
+            data += readInt(rows, pos + 8 * (block - 1) + 4);
+        }
+
+        int codeBytes = bits / 8;
+        int remaining = Math.min(BLOCK, size - block * BLOCK);
+        for (int i = 0; i < remaining; ++i) {
+            int gap = readVarint(rows, data);
+            data += varintLength(gap);
+            int s = prev + 1 + gap;
+            if (s == w2) {
+                return bigramCodebook.decode(readCode(rows, data));
+            }
+            if (s > w2) {
+                return 0;
+            }
+            data += codeBytes;
+            prev = s;
+        }
+        return 0;
+    }
+
+    @Override
+    public int successorTypes(int w1) {
+        if (w1 < 0 || rowOffsets[w1] == rowOffsets[w1 + 1]) {
+            return 0;
+        }
+        return readVarint(rows, rowOffsets[w1]);
+    }
+
+    @Override
+    public int predecessorTypes(int w2) {
+        return w2 < 0 ? 0 : predecessorCodebook.decode(readCode(predecessorCodes, w2 * (bits / 8)));
+    }
+
+    @Override
+    public long bigramTypes() {
+        return numBigrams;
+    }
+
+    @Override
+    public long bigramsWithCount(int c) {
+        if (c < 1 || c > MAX_COUNT_OF_COUNTS) {
+            throw new IllegalArgumentException("Count must be within [1, " + MAX_COUNT_OF_COUNTS + "]: " + c);
+        }
+        return countOfCounts[c];
+    }
+
+    @Override
+    public void forEachBigram(BigramVisitor visitor) {
+        int codeBytes = bits / 8;
+        for (int w1 = 0; w1 < size(); ++w1) {
+            int pos = rowOffsets[w1];
+            if (pos == rowOffsets[w1 + 1]) {
+                continue;
+            }
+            pos += varintLength(readVarint(rows, pos));
+            int size = readVarint(rows, pos);
+            pos += varintLength(size);
+            int skip = pos;
+            int numBlocks = (size + BLOCK - 1) / BLOCK;
+            pos += 8 * (numBlocks - 1);
+            int prev = -1;
+            for (int i = 0; i < size; ++i) {
+                int gap = readVarint(rows, pos);
+                pos += varintLength(gap);
+                if (i % BLOCK == 0 && i > 0) {
+                    // blocks restart from their first successor
+                    prev = readInt(rows, skip + 8 * (i / BLOCK - 1)) - 1;
+                }
+                int s = prev + 1 + gap;
+                visitor.visit(w1, s, bigramCodebook.decode(readCode(rows, pos)));
+                pos += codeBytes;
+                prev = s;
+            }
+        }
+    }
+
+    /**
+     * Heap bytes taken by the arrays of this model.
+     */
+    public long sizeInBytes() {
+        return hash.sizeInBytes()
+                + 16 + termBlob.length + 16 + 4L * termOffsets.length
+                + unigramCodebook.sizeInBytes() + 16 + unigramCodes.length
+                + predecessorCodebook.sizeInBytes() + 16 + predecessorCodes.length
+                + bigramCodebook.sizeInBytes() + 16 + rows.length + 16 + 4L * rowOffsets.length;
+    }
+
+    private byte[] encodeAll(Codebook codebook, int[] values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int v : values) {
+            writeCode(out, codebook.encode(v));
+        }
+        return out.toByteArray();
+    }
+
+    private void writeCode(ByteArrayOutputStream out, int code) {
+        if (bits == 16) {
+            out.write(code >>> 8);
+        }
+        out.write(code);
+    }
+
+    private int readCode(byte[] bytes, int pos) {
+        if (bits == 16) {
+            return (bytes[pos] & 0xFF) << 8 | bytes[pos + 1] & 0xFF;
+        }
+        return bytes[pos] & 0xFF;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] bytes, int pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[pos++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            ++length;
+        }
+        return length;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static int readInt(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xFF) << 24 | (bytes[pos + 1] & 0xFF) << 16
+                | (bytes[pos + 2] & 0xFF) << 8 | bytes[pos + 3] & 0xFF;
+    }
+
+    /**
+     * Maps counts to codes of a fixed number of bits: the smallest half of
+     * the codes are the values 0, 1, 2, ... themselves, the other half
+     * cover the rest in logarithmic buckets, each decoding to the mean of
+     * the values that fell into it. With few distinct values every value
+     * gets its own code and nothing is lost.
+     */
+    static class Codebook implements java.io.Serializable {
+        // code -> value, ascending
+        private final int[] levels;
+        // upper bound (inclusive) of the values mapped to each code
+        private final int[] bounds;
+
+        Codebook(int[] values, int bits) {
+            int numCodes = 1 << bits;
+            int[] sorted = Arrays.copyOf(values, values.length);
+            Arrays.sort(sorted);
+            int max = sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+
+            List<Integer> bucketBounds = new ArrayList<Integer>();
+            if (max < numCodes) {
+                for (int v = 0; v <= max; ++v) {
+                    bucketBounds.add(v);
+                }
+            } else {
+                int exact = numCodes / 2;
+                for (int v = 0; v < exact; ++v) {
+                    bucketBounds.add(v);
+                }
+                // geometric bounds from exact to max over the other codes
+                int logCodes = numCodes - exact;
+                double ratio = Math.pow((double) max / exact, 1.0 / logCodes);
+                double bound = exact;
+                for (int i = 0; i < logCodes; ++i) {
+                    bound *= ratio;
+                    int b = i == logCodes - 1 ? max : (int) Math.floor(bound);
+                    if (b > bucketBounds.get(bucketBounds.size() - 1)) {
+                        bucketBounds.add(b);
+                    }
+                }
+            }
+            bounds = new int[bucketBounds.size()];
+            for (int i = 0; i < bounds.length; ++i) {
+                bounds[i] = bucketBounds.get(i);
+            }
+
+            // each bucket decodes to the rounded mean of its values
+            long[] sums = new long[bounds.length];
+            long[] numbers = new long[bounds.length];
+            for (int v : sorted) {
+                int code = encode(v);
+                sums[code] += v;
+                ++numbers[code];
+            }
+            levels = new int[bounds.length];
+            for (int code = 0; code < bounds.length; ++code) {
+                levels[code] = numbers[code] == 0 ? bounds[code] : (int) Math.round((double) sums[code] / numbers[code]);
+            }
+        }
+
+        int encode(int value) {
+            int code = Arrays.binarySearch(bounds, value);
+            return code >= 0 ? code : -code - 1;
+        }
+
+        int decode(int code) {
+            return levels[code];
+        }
+
+        long sizeInBytes() {
+            return 16 + 4L * levels.length + 16 + 4L * bounds.length;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package edu.stanford.cs276.lm;
+
+import edu.stanford.cs276.util.LongIntMap;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Trigram counts over the term ids of an NGramCounts, and for every
+ * bigram history (w1, w2) the total count and the number of distinct
+ * terms following it, as Kneser-Ney needs them.
+ *
+ * Both kinds live in one open addressing table of longs, each key
+ * (three 21 bit ids) next to its value, so a lookup reads one cache line
+ * unless it has to probe past it: the table is at most two thirds full.
+ * Histories use the reserved id HISTORY in place of w3.
+ */
+public class TrigramCounts implements Serializable {
+    private static final int ID_BITS = 21;
+    // largest id, standing for "any w3" in history keys
+    private static final int HISTORY = (1 << ID_BITS) - 1;
+    public static final int MAX_TERMS = HISTORY;
+
+    private long numTrigrams;
+    private long[] countOfCounts;
+    // key + 1 (0 marks an empty slot) and value, slot after slot
+    private transient long[] table;
+    private transient int size;
+
+    private TrigramCounts(LongIntMap trigramCounts) {
+        final LongIntMap histories = new LongIntMap();
+        final LongIntMap historyTypes = new LongIntMap();
+        countOfCounts = new long[NGramCounts.MAX_COUNT_OF_COUNTS + 1];
+        trigramCounts.forEach(new LongIntMap.Visitor() {
+            @Override
+            public void visit(long key, int value) {
+                long history = key | HISTORY;
+                histories.add(history, value);
+                historyTypes.add(history, 1);
+                if (value <= NGramCounts.MAX_COUNT_OF_COUNTS) {
+                    ++countOfCounts[value];
+                }
+            }
+        });
+        numTrigrams = trigramCounts.size();
+
+        allocate(trigramCounts.size() + histories.size());
+        trigramCounts.forEach(new LongIntMap.Visitor() {
+            @Override
+            public void visit(long key, int value) {
+                put(key, value);
+            }
+        });
+        histories.forEach(new LongIntMap.Visitor() {
+            @Override
+            public void visit(long key, int value) {
+                put(key, (long) historyTypes.get(key) << 32 | value);
+            }
+        });
+    }
+
+    /**
+     * Count the trigrams of a corpus directory, lines being sentences as
+     * for CorpusCounter, with the term ids of counts.
+     */
+    public static TrigramCounts count(String corpusFilePath, final NGramCounts counts) throws IOException {
+        if (counts.size() > MAX_TERMS) {
+            throw new IllegalArgumentException("Trigram counts support at most " + MAX_TERMS + " terms");
+        }
+        final LongIntMap trigramCounts = new LongIntMap();
+        CorpusCounter.forEachSentence(corpusFilePath, new CorpusCounter.SentenceSink() {
+            @Override
+            public void addSentence(String[] tokens) {
+                int w1 = -1, w2 = -1;
+                for (String token : tokens) {
+                    int w3 = counts.id(token);
+                    if (w1 >= 0 && w2 >= 0 && w3 >= 0) {
+                        trigramCounts.add(key(w1, w2, w3), 1);
+                    }
+                    w1 = w2;
+                    w2 = w3;
+                }
+            }
+        });
+        return new TrigramCounts(trigramCounts);
+    }
+
+    public int trigramCount(int w1, int w2, int w3) {
+        if (w1 < 0 || w2 < 0 || w3 < 0) {
+            return 0;
+        }
+        return (int) get(key(w1, w2, w3));
+    }
+
+    /**
+     * @return c(w1 w2 .), the count of trigrams starting with w1 w2
+     */
+    public int historyCount(int w1, int w2) {
+        if (w1 < 0 || w2 < 0) {
+            return 0;
+        }
+        return (int) get(key(w1, w2, HISTORY));
+    }
+
+    /**
+     * @return N1+(w1 w2 .), the number of distinct terms following w1 w2
+     */
+    public int historyTypes(int w1, int w2) {
+        if (w1 < 0 || w2 < 0) {
+            return 0;
+        }
+        return (int) (get(key(w1, w2, HISTORY)) >>> 32);
+    }
+
+    /**
+     * historyCount and historyTypes in one lookup: types in the high,
+     * count in the low 32 bits; 0 if w1 w2 never started a trigram.
+     */
+    public long history(int w1, int w2) {
+        if (w1 < 0 || w2 < 0) {
+            return 0;
+        }
+        return get(key(w1, w2, HISTORY));
+    }
+
+    public long trigramTypes() {
+        return numTrigrams;
+    }
+
+    /**
+     * @param c 1 <= c <= NGramCounts.MAX_COUNT_OF_COUNTS
+     */
+    public long trigramsWithCount(int c) {
+        if (c < 1 || c > NGramCounts.MAX_COUNT_OF_COUNTS) {
+            throw new IllegalArgumentException("Count must be within [1, " + NGramCounts.MAX_COUNT_OF_COUNTS + "]: " + c);
+        }
+        return countOfCounts[c];
+    }
+
+    public long sizeInBytes() {
+        return 16 + 8L * table.length;
+    }
+
+    private static long key(int w1, int w2, int w3) {
+        return (long) w1 << (2 * ID_BITS) | (long) w2 << ID_BITS | w3;
+    }
+
+    private void allocate(int entries) {
+        int capacity = 16;
+        while (capacity < entries + entries / 2) {
+            capacity <<= 1;
+        }
+        table = new long[2 * capacity];
+        size = 0;
+    }
+
+    private void put(long key, long value) {
+        int mask = table.length / 2 - 1;
+        int slot = mix(key) & mask;
+        while (table[2 * slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[2 * slot] = key + 1;
+        table[2 * slot + 1] = value;
+        ++size;
+    }
+
+    private long get(long key) {
+        int mask = table.length / 2 - 1;
+        int slot = mix(key) & mask;
+        long stored = key + 1;
+        long k;
+        while ((k = table[2 * slot]) != 0) {
+            if (k == stored) {
+                return table[2 * slot + 1];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    // only the entries, not the empty slots
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int slot = 0; slot < table.length; slot += 2) {
+            if (table[slot] != 0) {
+                out.writeLong(table[slot] - 1);
+                out.writeLong(table[slot + 1]);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int entries = in.readInt();
+        allocate(entries);
+        for (int i = 0; i < entries; ++i) {
+            long key = in.readLong();
+            put(key, in.readLong());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package edu.stanford.cs276.lm;
+
+import edu.stanford.cs276.LanguageModel;
+
+/**
+ * Interpolated Kneser-Ney over trigrams:
+ *
+ *   P(w3|w1 w2) = (max(c(w1 w2 w3) - D3, 0)
+ *                  + D3 * N1+(w1 w2 .) * P_KN(w3|w2)) / c(w1 w2 .)
+ *
+ * with the bigram KneserNeyLM, whose unigram part already uses
+ * continuation counts, as the lower order, and D3 estimated from the
+ * trigram n1 and n2 like the bigram discount. A history that never
+ * started a trigram backs off to P_KN(w3|w2) entirely.
+ */
+public class TrigramKneserNeyLM extends KneserNeyLM {
+    private TrigramCounts trigrams;
+    private double D3;
+
+    public TrigramKneserNeyLM(NGramCounts counts, TrigramCounts trigrams) {
+        super(counts);
+        this.trigrams = trigrams;
+        long n1 = trigrams.trigramsWithCount(1);
+        long n2 = trigrams.trigramsWithCount(2);
+        D3 = n1 + n2 == 0 ? 0 : 1.0 * n1 / (n1 + 2 * n2);
+    }
+
+    @Override
+    public int order() {
+        return 3;
+    }
+
+    public TrigramCounts trigrams() {
+        return trigrams;
+    }
+
+    @Override
+    public double trigramProbability(int w1, int w2, int w3) {
+        double lower = bigramProbability(w2, w3);
+        long history = trigrams.history(w1, w2);
+        if (history == 0) {
+            return lower;
+        }
+        double historyCount = (int) history;
+        double historyTypes = (int) (history >>> 32);
+        double count = trigrams.trigramCount(w1, w2, w3);
+        return (Math.max(count - D3, 0) + D3 * historyTypes * lower) / historyCount;
+    }
+
+    @Override
+    public double maxProbability(int w) {
+        // not bounded by the bigrams: a trigram may beat them all
+        return 1;
+    }
+
+    @Override
+    public double maxProbabilityAfter(int w1) {
+        // the first term is still a unigram
+        return w1 < 0 ? super.maxProbabilityAfter(w1) : 1;
+    }
+}
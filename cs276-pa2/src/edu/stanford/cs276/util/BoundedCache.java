@@ -0,0 +1,236 @@
+package edu.stanford.cs276.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe cache holding at most a fixed number of entries. Keys are
+ * spread over independently locked segments, each evicting by its own
+ * policy once it holds its share of the capacity:
+ *
+ *   LRU - the entry used least recently
+ *   LFU - the entry used least often, the oldest of those on ties
+ *
+ * Hits, misses and evictions are counted across segments.
+ */
+public class BoundedCache<K, V> {
+    public enum Policy { LRU, LFU }
+
+    private final Segment<K, V>[] segments;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public BoundedCache(int capacity, Policy policy) {
+        this(capacity, policy, 16);
+    }
+
+    @SuppressWarnings("unchecked")
+    public BoundedCache(int capacity, Policy policy, int concurrency) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        int n = 1;
+        while (n < concurrency && n * 2 <= capacity) {
+            n <<= 1;
+        }
+        segments = (Segment<K, V>[]) new Segment<?, ?>[n];
+        for (int i = 0; i < n; ++i) {
+            // spread the remainder so the total is exactly capacity
+            int share = capacity / n + (i < capacity % n ? 1 : 0);
+            segments[i] = policy == Policy.LRU ? new LruSegment<K, V>(share) : new LfuSegment<K, V>(share);
+        }
+    }
+
+    /**
+     * Parse "lru" or "lfu", as given on the command line.
+     */
+    public static Policy policy(String name) throws Exception {
+        try {
+            return Policy.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new Exception("Unknown eviction policy: " + name + " (expected lru or lfu)");
+        }
+    }
+
+    /**
+     * Return the value of key, null if absent.
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        (value == null ? misses : hits).incrementAndGet();
+        return value;
+    }
+
+    public void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        boolean evicted;
+        synchronized (segment) {
+            evicted = segment.put(key, value);
+        }
+        if (evicted) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        long h = hits(), m = misses();
+        return String.format("%d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                size(), h, m, h + m == 0 ? 0.0 : 100.0 * h / (h + m), evictions());
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    private interface Segment<K, V> {
+        V get(K key);
+        // return true if an entry was evicted to make room
+        boolean put(K key, V value);
+        int size();
+    }
+
+    private static class LruSegment<K, V> implements Segment<K, V> {
+        private final int capacity;
+        private boolean evicted;
+        // access ordered, so the eldest entry is the least recently used
+        private final LinkedHashMap<K, V> map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                evicted = size() > capacity;
+                return evicted;
+            }
+        };
+
+        LruSegment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public V get(K key) {
+            return map.get(key);
+        }
+
+        @Override
+        public boolean put(K key, V value) {
+            evicted = false;
+            map.put(key, value);
+            return evicted;
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+    }
+
+    private static class LfuSegment<K, V> implements Segment<K, V> {
+        private final int capacity;
+        private final Map<K, V> values = new HashMap<K, V>();
+        private final Map<K, Integer> frequencies = new HashMap<K, Integer>();
+        // keys by use count, oldest first
+        private final Map<Integer, LinkedHashSet<K>> buckets = new HashMap<Integer, LinkedHashSet<K>>();
+        private int minFrequency = 0;
+
+        LfuSegment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public V get(K key) {
+            V value = values.get(key);
+            if (value != null) {
+                touch(key);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean put(K key, V value) {
+            if (values.containsKey(key)) {
+                values.put(key, value);
+                touch(key);
+                return false;
+            }
+
+            boolean evicted = false;
+            if (values.size() >= capacity) {
+                LinkedHashSet<K> bucket = buckets.get(minFrequency);
+                Iterator<K> oldest = bucket.iterator();
+                K victim = oldest.next();
+                oldest.remove();
+                if (bucket.isEmpty()) {
+                    buckets.remove(minFrequency);
+                }
+                values.remove(victim);
+                frequencies.remove(victim);
+                evicted = true;
+            }
+            values.put(key, value);
+            frequencies.put(key, 1);
+            bucketOf(1).add(key);
+            minFrequency = 1;
+            return evicted;
+        }
+
+        @Override
+        public int size() {
+            return values.size();
+        }
+
+        private void touch(K key) {
+            int frequency = frequencies.get(key);
+            LinkedHashSet<K> bucket = buckets.get(frequency);
+            bucket.remove(key);
+            if (bucket.isEmpty()) {
+                buckets.remove(frequency);
+                if (minFrequency == frequency) {
+                    minFrequency = frequency + 1;
+                }
+            }
+            frequencies.put(key, frequency + 1);
+            bucketOf(frequency + 1).add(key);
+        }
+
+        private LinkedHashSet<K> bucketOf(int frequency) {
+            LinkedHashSet<K> bucket = buckets.get(frequency);
+            if (bucket == null) {
+                bucket = new LinkedHashSet<K>();
+                buckets.put(frequency, bucket);
+            }
+            return bucket;
+        }
+    }
+}
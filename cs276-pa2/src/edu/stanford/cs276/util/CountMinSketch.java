@@ -0,0 +1,111 @@
+package edu.stanford.cs276.util;
+
+/**
+ * Count-min sketch over long keys with conservative update: depth rows of
+ * width counters; a key's estimate is the smallest of its depth counters,
+ * never below its true count, and adding raises only the counters that
+ * are below the new estimate. Memory is 4 * width * depth bytes however
+ * many keys are added.
+ *
+ * With conservative update the estimate of a key grows by exactly one
+ * per add, so the value add returns can also tell a key's first
+ * occurrence (0, unless all its counters collided) and when it reaches
+ * a given count. Not thread safe.
+ */
+public class CountMinSketch {
+    private final int width;
+    private final int depth;
+    // depth rows of width counters, one after another
+    private final int[] counters;
+    private final int[] positions;
+    // nonzero counters per row
+    private final int[] used;
+
+    public CountMinSketch(int width, int depth) {
+        if (width < 1 || depth < 1) {
+            throw new IllegalArgumentException("Sketch width and depth must be positive: " + width + " x " + depth);
+        }
+        if ((long) width * depth > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Sketch too large: " + width + " x " + depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        counters = new int[width * depth];
+        positions = new int[depth];
+        used = new int[depth];
+    }
+
+    /**
+     * Count one more occurrence of key.
+     *
+     * @return the estimate of key before this occurrence
+     */
+    public int add(long key) {
+        locate(key);
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; ++row) {
+            estimate = Math.min(estimate, counters[positions[row]]);
+        }
+        if (estimate == Integer.MAX_VALUE) {
+            return estimate;
+        }
+        int raised = estimate + 1;
+        for (int row = 0; row < depth; ++row) {
+            if (counters[positions[row]] < raised) {
+                if (counters[positions[row]] == 0) {
+                    ++used[row];
+                }
+                counters[positions[row]] = raised;
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * @return an upper bound of the number of times key was added
+     */
+    public int estimate(long key) {
+        locate(key);
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; ++row) {
+            estimate = Math.min(estimate, counters[positions[row]]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Probability that a key never added finds all its counters nonzero,
+     * i.e. that add would not report its first occurrence as 0.
+     */
+    public double collisionProbability() {
+        double p = 1;
+        for (int row = 0; row < depth; ++row) {
+            p *= (double) used[row] / width;
+        }
+        return p;
+    }
+
+    public long sizeInBytes() {
+        return 16 + 4L * counters.length;
+    }
+
+    // counter of key in every row, by double hashing one 64 bit hash
+    private void locate(long key) {
+        long h = mix(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int row = 0; row < depth; ++row) {
+            positions[row] = row * width + ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+        }
+    }
+
+    // murmur3 finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85EC3L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
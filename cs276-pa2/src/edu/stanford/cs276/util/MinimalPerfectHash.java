@@ -0,0 +1,146 @@
+package edu.stanford.cs276.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Minimal perfect hash of a fixed set of strings, by hash and displace
+ * (CHD): keys are hashed into buckets of about BUCKET_SIZE keys, and each
+ * bucket, largest first, gets the smallest displacement d that sends all
+ * its keys to free slots. Only the displacements are kept, about
+ * 32 / BUCKET_SIZE bits per key; the keys themselves are not, so a string
+ * outside the set maps to an arbitrary slot and callers must verify.
+ * The keys must be distinct.
+ */
+public class MinimalPerfectHash implements Serializable {
+    private static final int BUCKET_SIZE = 4;
+
+    private final int n;
+    private final int[] displacements;
+
+    public MinimalPerfectHash(final String[] keys) {
+        n = keys.length;
+        int numBuckets = Math.max(1, n / BUCKET_SIZE);
+        displacements = new int[numBuckets];
+
+        final long[] hashes = new long[n];
+        List<List<Integer>> buckets = new ArrayList<List<Integer>>(numBuckets);
+        for (int b = 0; b < numBuckets; ++b) {
+            buckets.add(new ArrayList<Integer>(BUCKET_SIZE));
+        }
+        for (int i = 0; i < n; ++i) {
+            hashes[i] = hash(keys[i]);
+            buckets.get(bucket(hashes[i], numBuckets)).add(i);
+        }
+
+        // keys with the same hash, duplicates above all, collide at every
+        // displacement, and the search below would never end
+        for (List<Integer> members : buckets) {
+            for (int k = 1; k < members.size(); ++k) {
+                for (int l = 0; l < k; ++l) {
+                    if (hashes[members.get(k)] == hashes[members.get(l)]) {
+                        String a = keys[members.get(l)];
+                        String b = keys[members.get(k)];
+                        throw new IllegalArgumentException(a.equals(b)
+                                ? "Duplicate key: " + a : "Keys with the same hash: " + a + ", " + b);
+                    }
+                }
+            }
+        }
+
+        Integer[] order = new Integer[numBuckets];
+        for (int b = 0; b < numBuckets; ++b) {
+            order[b] = b;
+        }
+        final List<List<Integer>> sizes = buckets;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return sizes.get(b).size() - sizes.get(a).size();
+            }
+        });
+
+        BitSet taken = new BitSet(n);
+        int[] slots = new int[0];
+        for (int b : order) {
+            List<Integer> members = buckets.get(b);
+            if (members.isEmpty()) {
+                break;
+            }
+            if (slots.length < members.size()) {
+                slots = new int[members.size()];
+            }
+            for (int d = 0; ; ++d) {
+                boolean free = true;
+                for (int k = 0; k < members.size() && free; ++k) {
+                    int slot = slot(hashes[members.get(k)], d, n);
+                    free = !taken.get(slot);
+                    for (int l = 0; l < k && free; ++l) {
+                        free = slots[l] != slot;
+                    }
+                    slots[k] = slot;
+                }
+                if (free) {
+                    for (int k = 0; k < members.size(); ++k) {
+                        taken.set(slots[k]);
+                    }
+                    displacements[b] = d;
+                    break;
+                }
+                if (d == Integer.MAX_VALUE) {
+                    throw new IllegalStateException("No displacement for bucket " + b);
+                }
+            }
+        }
+    }
+
+    /**
+     * The slot of key in [0, size()), distinct for distinct keys of the
+     * set; arbitrary for any other string.
+     */
+    public int index(String key) {
+        if (n == 0) {
+            return -1;
+        }
+        long h = hash(key);
+        return slot(h, displacements[bucket(h, displacements.length)], n);
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public long sizeInBytes() {
+        return 16 + 4L * displacements.length;
+    }
+
+    private static int bucket(long h, int numBuckets) {
+        return (int) ((h >>> 1) % numBuckets);
+    }
+
+    private static int slot(long h, int d, int n) {
+        return (int) ((mix(h + d * 0x9E3779B97F4A7C15L) >>> 1) % n);
+    }
+
+    private static long hash(String key) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); ++i) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    // murmur3 finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85EC3L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
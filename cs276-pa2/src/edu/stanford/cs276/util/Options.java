@@ -0,0 +1,82 @@
+package edu.stanford.cs276.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits command line arguments into positional arguments and
+ * --name=value (or bare --name) options, so options can be added to the
+ * entry points without disturbing their positional argument counts.
+ */
+public class Options {
+    private List<String> positional;
+    private Map<String, String> named;
+
+    private Options() {
+        positional = new ArrayList<String>();
+        named = new HashMap<String, String>();
+    }
+
+    /**
+     * Parse args, rejecting an option that is not one of names, so a
+     * misspelled option fails instead of being ignored.
+     */
+    public static Options parse(String[] args, String... names) throws Exception {
+        Set<String> known = new HashSet<String>(Arrays.asList(names));
+        Options options = new Options();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.length() > 2) {
+                int eq = arg.indexOf('=');
+                String name = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+                if (!known.contains(name)) {
+                    throw new Exception("Unknown option: --" + name);
+                }
+                options.named.put(name, eq < 0 ? "true" : arg.substring(eq + 1));
+            } else {
+                options.positional.add(arg);
+            }
+        }
+        return options;
+    }
+
+    public String[] positional() {
+        return positional.toArray(new String[positional.size()]);
+    }
+
+    public boolean has(String name) {
+        return named.containsKey(name);
+    }
+
+    public String get(String name, String defval) {
+        return MapUtility.getWithFallback(named, name, defval);
+    }
+
+    public int getInt(String name, int defval) throws Exception {
+        String value = named.get(name);
+        if (value == null) {
+            return defval;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for --" + name + ": " + value);
+        }
+    }
+
+    public double getDouble(String name, double defval) throws Exception {
+        String value = named.get(name);
+        if (value == null) {
+            return defval;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid value for --" + name + ": " + value);
+        }
+    }
+}
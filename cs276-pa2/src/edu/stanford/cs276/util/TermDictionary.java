@@ -0,0 +1,112 @@
+package edu.stanford.cs276.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Maps terms to dense int ids (0, 1, 2, ... in order of first insertion)
+ * with an open addressing hash table, so no boxed Integer or map entry is
+ * kept per term.
+ */
+public class TermDictionary implements Serializable {
+    // id -> term
+    private String[] terms;
+    private int size;
+    // hash slot -> id + 1, 0 marks an empty slot
+    private int[] slots;
+
+    public TermDictionary() {
+        this(1024);
+    }
+
+    public TermDictionary(int expectedSize) {
+        terms = new String[Math.max(expectedSize, 16)];
+        slots = new int[tableSize(terms.length)];
+        size = 0;
+    }
+
+    /**
+     * Return the id of term, or -1 if term is not in the dictionary.
+     */
+    public int find(String term) {
+        int mask = slots.length - 1;
+        int slot = mix(term.hashCode()) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (terms[id].equals(term)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Return the id of term, assigning the next free id if it is new.
+     */
+    public int add(String term) {
+        int mask = slots.length - 1;
+        int slot = mix(term.hashCode()) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (terms[id].equals(term)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = size++;
+        if (id == terms.length) {
+            terms = Arrays.copyOf(terms, terms.length * 2);
+        }
+        terms[id] = term;
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return id;
+    }
+
+    public String term(int id) {
+        return terms[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Release unused capacity once no more terms will be added.
+     */
+    public void trim() {
+        terms = Arrays.copyOf(terms, Math.max(size, 1));
+        rehash(tableSize(size));
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; ++id) {
+            int slot = mix(terms[id].hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    // power of two with load factor at most 1/2
+    private static int tableSize(int n) {
+        int capacity = 16;
+        while (capacity < n * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // spread String.hashCode() so that linear probing behaves
+    static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
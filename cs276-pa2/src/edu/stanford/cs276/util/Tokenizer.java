@@ -0,0 +1,53 @@
+package edu.stanford.cs276.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Regex-free replacement for line.trim().split("\\s+").
+ */
+public class Tokenizer {
+    private Tokenizer() {}
+
+    /**
+     * Same result as line.trim().split("\\s+"), including a single empty
+     * token for a blank line.
+     */
+    public static String[] tokenize(String line) {
+        // String.trim() strips every character <= ' '
+        int start = 0, end = line.length();
+        while (start < end && line.charAt(start) <= ' ') {
+            ++start;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            --end;
+        }
+        if (start == end) {
+            return new String[] {""};
+        }
+
+        List<String> tokens = new ArrayList<String>();
+        int tokenStart = start;
+        int i = start;
+        while (i < end) {
+            if (isWhitespace(line.charAt(i))) {
+                tokens.add(line.substring(tokenStart, i));
+                while (isWhitespace(line.charAt(i))) {
+                    ++i;
+                }
+                tokenStart = i;
+            } else {
+                ++i;
+            }
+        }
+        tokens.add(line.substring(tokenStart, end));
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    /**
+     * The characters matched by \s in a Java regex.
+     */
+    public static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
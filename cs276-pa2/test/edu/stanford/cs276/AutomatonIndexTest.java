@@ -0,0 +1,70 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.lm.SmoothingType;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class AutomatonIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TrieVocabulary trie;
+    private AutomatonIndex automaton;
+    private DeletionIndex index;
+    private List<String> tokens;
+
+    @Before
+    public void setUp() throws Exception {
+        LanguageModel languageModel = LanguageModel.create(SmoothingType.LINEAR_INTERPOLATION,
+                TestCorpus.write(folder, TestCorpus.SENTENCES).getPath());
+        trie = TrieVocabulary.create(languageModel);
+        automaton = new AutomatonIndex(trie);
+        index = DeletionIndex.create(languageModel);
+
+        // tokens, merged neighbours and, for the long token path, 15 to
+        // 20 characters of neighbours joined together
+        tokens = new ArrayList<String>();
+        Random random = new Random(9);
+        String[] words = TestCorpus.words();
+        for (int n = 0; n < 1000; ++n) {
+            String[] parts = TestCorpus.query(words, random).split(" ");
+            for (int i = 0; i < parts.length; ++i) {
+                tokens.add(parts[i]);
+                if (i > 0) {
+                    tokens.add(parts[i - 1] + parts[i]);
+                }
+            }
+            StringBuilder joined = new StringBuilder();
+            while (joined.length() < 15) {
+                joined.append(words[random.nextInt(words.length)]);
+            }
+            if (joined.length() <= 20) {
+                tokens.add(joined.toString());
+            }
+        }
+    }
+
+    @Test
+    public void lookupMatchesDeletionIndex() {
+        for (String token : tokens) {
+            assertEquals(token, index.lookup(token), automaton.lookup(token));
+        }
+    }
+
+    @Test
+    public void fuzzyMatchMatchesTrie() {
+        for (String token : tokens) {
+            for (int k = 0; k <= 2; ++k) {
+                assertEquals(token + " k = " + k, trie.fuzzyMatch(token, k), automaton.fuzzyMatch(token, k));
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.lm.SmoothingType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class CandidateGeneratorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LanguageModel languageModel;
+    private CandidateGenerator cg;
+
+    @Before
+    public void setUp() throws Exception {
+        languageModel = LanguageModel.create(SmoothingType.LINEAR_INTERPOLATION,
+                TestCorpus.write(folder, TestCorpus.SENTENCES).getPath());
+        cg = CandidateGenerator.get();
+    }
+
+    @After
+    public void tearDown() {
+        cg.setEditIndex(null);
+    }
+
+    @Test
+    public void indexedKnownEditsMatchEnumeration() throws Exception {
+        EditIndex index = DeletionIndex.create(languageModel);
+        Random random = new Random(42);
+        String[] words = TestCorpus.words();
+        for (int n = 0; n < 3000; ++n) {
+            assertSameKnownEdits(TestCorpus.query(words, random), index);
+        }
+    }
+
+    @Test
+    public void untidyQueriesFallBackToEnumeration() throws Exception {
+        EditIndex index = DeletionIndex.create(languageModel);
+        for (String query : new String[]{" a cat", "a cat ", "a  cat", "a\tcat", "", " "}) {
+            assertSameKnownEdits(query, index);
+        }
+    }
+
+    @Test
+    public void indexedCandidatesMatchEnumeration() throws Exception {
+        EditIndex index = DeletionIndex.create(languageModel);
+        for (String query : new String[]{"a cat sat", "i wantto eat", "the cast and", "dont go", "pag 1 page"}) {
+            cg.setEditIndex(null);
+            Set<String> expected = cg.getCandidates(query, languageModel);
+            cg.setEditIndex(index);
+            assertEquals(query, expected, cg.getCandidates(query, languageModel));
+        }
+    }
+
+    private void assertSameKnownEdits(String query, EditIndex index) {
+        cg.setEditIndex(null);
+        Set<String> expected = cg.getKnownEdits(query, languageModel);
+        cg.setEditIndex(index);
+        assertEquals("[" + query + "]", expected, cg.getKnownEdits(query, languageModel));
+    }
+}
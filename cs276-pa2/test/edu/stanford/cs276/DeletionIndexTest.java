@@ -0,0 +1,57 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.lm.SmoothingType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class DeletionIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LanguageModel languageModel;
+    private CandidateGenerator cg;
+
+    @Before
+    public void setUp() throws Exception {
+        languageModel = LanguageModel.create(SmoothingType.LINEAR_INTERPOLATION,
+                TestCorpus.write(folder, TestCorpus.SENTENCES).getPath());
+        cg = CandidateGenerator.get();
+    }
+
+    @After
+    public void tearDown() {
+        cg.setEditIndex(null);
+    }
+
+    @Test
+    public void tokenCandidatesMatchEnumeration() throws Exception {
+        DeletionIndex index = DeletionIndex.create(languageModel);
+        Random random = new Random(7);
+        String[] words = TestCorpus.words();
+        for (int n = 0; n < 2000; ++n) {
+            // the tokens and the merged pairs viterbi asks for
+            String[] tokens = TestCorpus.query(words, random).split(" ");
+            for (int i = 0; i < tokens.length; ++i) {
+                assertSameCandidates(tokens[i], index);
+                if (i > 0) {
+                    assertSameCandidates(tokens[i - 1] + tokens[i], index);
+                }
+            }
+        }
+    }
+
+    private void assertSameCandidates(String token, DeletionIndex index) throws Exception {
+        cg.setDeletionIndex(null);
+        Set<String> expected = cg.getCandidatesForToken(token, languageModel);
+        cg.setDeletionIndex(index);
+        assertEquals(token, expected, cg.getCandidatesForToken(token, languageModel));
+    }
+}
@@ -0,0 +1,66 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.edit.EditDistance;
+import edu.stanford.cs276.edit.EditType;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EmpiricalCostModelTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EmpiricalCostModel model;
+    private Random random;
+    private String[] words;
+
+    @Before
+    public void setUp() throws Exception {
+        random = new Random(17);
+        words = TestCorpus.words();
+        model = new EmpiricalCostModel(TestCorpus.edits(folder, 2000, 17).getPath());
+    }
+
+    @Test
+    public void bestAlignmentNeverScoresBelowMinimalAlignment() {
+        for (int n = 0; n < 3000; ++n) {
+            String q = TestCorpus.query(words, random);
+            String r = n % 2 == 0 ? TestCorpus.oneEdit(q, random) : TestCorpus.query(words, random);
+            double best = model.editProbability(q, r, 1);
+            double minimal = model.minimalEditProbability(q, r);
+            assertTrue("[" + q + "] [" + r + "] " + best + " < " + minimal, best >= minimal - 1e-9);
+        }
+    }
+
+    @Test
+    public void tablesMatchTheSmoothedCounts() {
+        // the alphabet, the begin marker, the unknown class's own
+        // character, and characters outside the alphabet
+        StringBuilder characters = new StringBuilder();
+        for (Character c : CandidateGenerator.alphabet) {
+            characters.append(c.charValue());
+        }
+        characters.append(EditDistance.BEGIN_CHAR).append("~!@#%^&*AZ_\t\u00e9\u4e2d");
+        for (EditType type : EditType.values()) {
+            for (int i = 0; i < characters.length(); ++i) {
+                for (int j = 0; j < characters.length(); ++j) {
+                    char x = characters.charAt(i);
+                    char y = characters.charAt(j);
+                    assertEquals(type + " [" + x + "] [" + y + "]", model.countedLogProbability(type, x, y),
+                            model.logProbability(type, x, y), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void unchangedQuery() {
+        assertEquals(Math.log(0.9), model.editProbability("a cat", "a cat", 0), 1e-12);
+    }
+}
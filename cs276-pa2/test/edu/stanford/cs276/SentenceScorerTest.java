@@ -0,0 +1,50 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.lm.SmoothingType;
+import edu.stanford.cs276.lm.TrigramCounts;
+import edu.stanford.cs276.lm.TrigramKneserNeyLM;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SentenceScorerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void scoresMatchComputeProbability() throws Exception {
+        String corpus = TestCorpus.random(folder, 500, 3).getPath();
+        for (SmoothingType smoothing : SmoothingType.values()) {
+            assertScores(LanguageModel.create(smoothing, corpus));
+        }
+    }
+
+    @Test
+    public void trigramScoresMatchComputeProbability() throws Exception {
+        File corpus = TestCorpus.random(folder, 500, 4);
+        LanguageModel bigrams = LanguageModel.create(SmoothingType.KNENSER_NEY_SMOOTHING, corpus.getPath());
+        assertScores(new TrigramKneserNeyLM(bigrams.counts(),
+                TrigramCounts.count(corpus.getPath(), bigrams.counts())));
+    }
+
+    private void assertScores(LanguageModel languageModel) throws Exception {
+        CandidateGenerator cg = CandidateGenerator.get();
+        Random random = new Random(13);
+        String[] words = TestCorpus.words();
+        for (int n = 0; n < 200; ++n) {
+            String query = TestCorpus.query(words, random);
+            SentenceScorer scorer = new SentenceScorer(languageModel, query);
+            for (String candidate : cg.getCandidates(query, languageModel)) {
+                double expected = languageModel.computeProbability(candidate);
+                // sums may differ in the last bits
+                assertEquals(languageModel.smoothingType() + " [" + query + "] [" + candidate + "]",
+                        expected, scorer.score(candidate), Math.abs(expected) * 1e-12);
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.lm.SmoothingType;
+import edu.stanford.cs276.lm.TrigramCounts;
+import edu.stanford.cs276.lm.TrigramKneserNeyLM;
+import edu.stanford.cs276.util.BoundedCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpellCorrectorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File corpus;
+    private NoisyChannelModel nsm;
+    private CandidateGenerator cg;
+    private List<String> queries;
+
+    @Before
+    public void setUp() throws Exception {
+        corpus = TestCorpus.random(folder, 2000, 21);
+        nsm = NoisyChannelModel.create(TestCorpus.edits(folder, 2000, 22).getPath());
+        cg = CandidateGenerator.get();
+
+        // mostly correct queries, which the early exit is for
+        queries = new ArrayList<String>();
+        Random random = new Random(23);
+        String[] words = TestCorpus.words();
+        for (int n = 0; n < 150; ++n) {
+            String query = TestCorpus.query(words, random);
+            queries.add(n % 3 == 0 ? query : query.replaceAll("[^a-z' ]", "").trim().replaceAll(" +", " "));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        cg.setEditIndex(null);
+        cg.setTokenCache(null);
+    }
+
+    @Test
+    public void earlyExitAtZeroKeepsTheCorrections() throws Exception {
+        LanguageModel bigrams = LanguageModel.create(SmoothingType.KNENSER_NEY_SMOOTHING, corpus.getPath());
+        assertSameWithEarlyExit(bigrams);
+        assertNoOutscoredQueryKept(bigrams);
+    }
+
+    @Test
+    public void earlyExitAtZeroKeepsTrigramCorrections() throws Exception {
+        LanguageModel bigrams = LanguageModel.create(SmoothingType.KNENSER_NEY_SMOOTHING, corpus.getPath());
+        assertSameWithEarlyExit(new TrigramKneserNeyLM(bigrams.counts(),
+                TrigramCounts.count(corpus.getPath(), bigrams.counts())));
+    }
+
+    @Test
+    public void improvementBoundHolds() throws Exception {
+        LanguageModel bigrams = LanguageModel.create(SmoothingType.KNENSER_NEY_SMOOTHING, corpus.getPath());
+        assertBoundHolds(bigrams);
+        assertBoundHolds(new TrigramKneserNeyLM(bigrams.counts(),
+                TrigramCounts.count(corpus.getPath(), bigrams.counts())));
+    }
+
+    @Test
+    public void trigramPathsScoreTheirOwnHistory() throws Exception {
+        LanguageModel bigrams = LanguageModel.create(SmoothingType.KNENSER_NEY_SMOOTHING, corpus.getPath());
+        LanguageModel trigrams = new TrigramKneserNeyLM(bigrams.counts(),
+                TrigramCounts.count(corpus.getPath(), bigrams.counts()));
+        cg.setEditIndex(DeletionIndex.create(trigrams));
+        for (String costModel : new String[]{"uniform", "empirical"}) {
+            SpellCorrector corrector = new SpellCorrector(trigrams, nsm, costModel, cg, true);
+            for (String query : queries) {
+                List<SpellCorrector.Correction> top = corrector.topCorrections(query, 20);
+                assertEquals(query, corrector.correct(query), top.get(0).text());
+                if (!singleWordCandidates(query, trigrams)) {
+                    continue;
+                }
+                for (SpellCorrector.Correction c : top) {
+                    if (!Double.isInfinite(c.score())) {
+                        assertEquals(c.text(), trigrams.computeProbability(c.text()), c.language(), 1e-9);
+                    }
+                }
+            }
+        }
+    }
+
+    // a token candidate with a space is scored as one unknown word, not
+    // as the words computeProbability sees
+    private boolean singleWordCandidates(String query, LanguageModel languageModel) throws Exception {
+        for (String token : query.split(" ")) {
+            for (String candidate : cg.getCandidatesForToken(token, languageModel)) {
+                if (candidate.indexOf(' ') >= 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void searchPoolKeepsTheCorrections() throws Exception {
+        LanguageModel bigrams = LanguageModel.create(SmoothingType.KNENSER_NEY_SMOOTHING, corpus.getPath());
+        LanguageModel trigrams = new TrigramKneserNeyLM(bigrams.counts(),
+                TrigramCounts.count(corpus.getPath(), bigrams.counts()));
+        cg.setEditIndex(DeletionIndex.create(bigrams));
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (LanguageModel languageModel : new LanguageModel[]{bigrams, trigrams}) {
+                for (String costModel : new String[]{"uniform", "empirical"}) {
+                    // a wide beam makes the trigram columns large enough to split
+                    for (int beamWidth : new int[]{SpellCorrector.DEFAULT_BEAM_WIDTH, 1000}) {
+                        SpellCorrector serial = new SpellCorrector(languageModel, nsm, costModel, cg, true);
+                        serial.setBeamWidth(beamWidth);
+                        SpellCorrector pooled = new SpellCorrector(languageModel, nsm, costModel, cg, true);
+                        pooled.setBeamWidth(beamWidth);
+                        pooled.setSearchPool(pool);
+                        for (String query : queries) {
+                            String message = "order " + languageModel.order() + " " + costModel
+                                    + " beam " + beamWidth + " [" + query + "]";
+                            assertEquals(message, serial.correct(query), pooled.correct(query));
+                            assertSameCorrections(message, serial.topCorrections(query, 20),
+                                    pooled.topCorrections(query, 20));
+                        }
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSameCorrections(String message, List<SpellCorrector.Correction> expected,
+                                              List<SpellCorrector.Correction> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(message, expected.get(i).text(), actual.get(i).text());
+            assertEquals(message, expected.get(i).channel(), actual.get(i).channel(), 0);
+            assertEquals(message, expected.get(i).language(), actual.get(i).language(), 0);
+        }
+    }
+
+    @Test
+    public void cachesKeepTheCorrections() throws Exception {
+        LanguageModel bigrams = LanguageModel.create(SmoothingType.KNENSER_NEY_SMOOTHING, corpus.getPath());
+        cg.setEditIndex(DeletionIndex.create(bigrams));
+        for (BoundedCache.Policy policy : BoundedCache.Policy.values()) {
+            for (boolean extra : new boolean[]{false, true}) {
+                SpellCorrector uncached = new SpellCorrector(bigrams, nsm, "empirical", cg, extra);
+                List<String> expected = new ArrayList<String>();
+                for (String query : queries) {
+                    expected.add(uncached.correct(query));
+                }
+
+                // small enough to evict, and every query twice for hits
+                BoundedCache<SpellCorrector.QueryKey, String> queryCache =
+                        new BoundedCache<SpellCorrector.QueryKey, String>(40, policy);
+                BoundedCache<String, Set<String>> tokenCache = new BoundedCache<String, Set<String>>(30, policy);
+                SpellCorrector cached = new SpellCorrector(bigrams, nsm, "empirical", cg, extra);
+                cached.setCache(queryCache);
+                cg.setTokenCache(tokenCache);
+                for (int round = 0; round < 2; ++round) {
+                    for (int i = 0; i < queries.size(); ++i) {
+                        assertEquals(policy + (extra ? " extra" : "") + " [" + queries.get(i) + "]",
+                                expected.get(i), cached.correct(queries.get(i)));
+                    }
+                }
+                cg.setTokenCache(null);
+                assertTrue(queryCache.hits() > 0 && queryCache.evictions() > 0);
+                if (extra) {
+                    assertTrue(tokenCache.hits() > 0 && tokenCache.evictions() > 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void correctAllPassesCorrectionsInQueryOrder() throws Exception {
+        LanguageModel bigrams = LanguageModel.create(SmoothingType.KNENSER_NEY_SMOOTHING, corpus.getPath());
+        cg.setEditIndex(DeletionIndex.create(bigrams));
+        SpellCorrector corrector = new SpellCorrector(bigrams, nsm, "empirical", cg, true);
+        final List<String> seen = new ArrayList<String>();
+        final List<String> corrections = new ArrayList<String>();
+        corrector.correctAll(queries, 4, new SpellCorrector.CorrectionSink() {
+            @Override
+            public void correction(String query, String correction) {
+                seen.add(query);
+                corrections.add(correction);
+            }
+        });
+        assertEquals(queries, seen);
+        assertEquals(corrector.correctAll(queries, 1), corrections);
+    }
+
+    // no correction scores more than improvementBound above the query
+    private void assertBoundHolds(LanguageModel languageModel) throws Exception {
+        cg.setEditIndex(DeletionIndex.create(languageModel));
+        for (String costModel : new String[]{"uniform", "empirical"}) {
+            for (boolean extra : new boolean[]{false, true}) {
+                SpellCorrector corrector = new SpellCorrector(languageModel, nsm, costModel, cg, extra);
+                for (String query : queries) {
+                    double bound = corrector.improvementBound(query);
+                    if (Double.isInfinite(bound)) {
+                        continue;
+                    }
+                    SpellCorrector.Correction self = null;
+                    SpellCorrector.Correction best = null;
+                    for (SpellCorrector.Correction c : corrector.topCorrections(query, 1000)) {
+                        if (c.text().equals(query)) {
+                            self = c;
+                        } else if (best == null) {
+                            best = c;
+                        }
+                    }
+                    if (self != null && best != null) {
+                        assertTrue(costModel + (extra ? " extra" : "") + " [" + query + "] [" + best.text() + "] "
+                                        + (best.score() - self.score()) + " > " + bound,
+                                best.score() - self.score() <= bound + 1e-9);
+                    }
+                }
+            }
+        }
+    }
+
+    // with a narrow beam the search may lose the query's own path and
+    // return one scoring lower, so the corrections can change; the early
+    // exit still keeps no query some path outscores
+    private void assertNoOutscoredQueryKept(LanguageModel languageModel) throws Exception {
+        cg.setEditIndex(DeletionIndex.create(languageModel));
+        for (String costModel : new String[]{"uniform", "empirical"}) {
+            SpellCorrector always = new SpellCorrector(languageModel, nsm, costModel, cg, true);
+            always.setBeamWidth(1);
+            SpellCorrector exiting = new SpellCorrector(languageModel, nsm, costModel, cg, true);
+            exiting.setBeamWidth(1);
+            exiting.setEarlyExit(0);
+            // scores the paths the narrow beam may have pruned
+            SpellCorrector wide = new SpellCorrector(languageModel, nsm, costModel, cg, true);
+            wide.setBeamWidth(1000);
+            for (String query : queries) {
+                String searched = always.correct(query);
+                long exits = exiting.earlyExits();
+                String kept = exiting.correct(query);
+                if (exiting.earlyExits() == exits) {
+                    assertEquals(costModel + " [" + query + "]", searched, kept);
+                    continue;
+                }
+                assertEquals(costModel + " [" + query + "]", query, kept);
+                List<SpellCorrector.Correction> top = wide.topCorrections(query, 1000);
+                double self = bestScore(top, query);
+                for (SpellCorrector.Correction c : top) {
+                    assertTrue(costModel + " [" + query + "] [" + c.text() + "]", c.score() <= self + 1e-9);
+                }
+            }
+            if (costModel.equals("uniform")) {
+                assertTrue("no early exit", exiting.earlyExits() > 0);
+            }
+        }
+    }
+
+    private static double bestScore(List<SpellCorrector.Correction> corrections, String text) {
+        for (SpellCorrector.Correction c : corrections) {
+            if (c.text().equals(text)) {
+                return c.score();
+            }
+        }
+        throw new AssertionError("no path for [" + text + "]");
+    }
+
+    private void assertSameWithEarlyExit(LanguageModel languageModel) throws Exception {
+        cg.setEditIndex(DeletionIndex.create(languageModel));
+        for (String costModel : new String[]{"uniform", "empirical"}) {
+            for (boolean extra : new boolean[]{false, true}) {
+                SpellCorrector always = new SpellCorrector(languageModel, nsm, costModel, cg, extra);
+                SpellCorrector exiting = new SpellCorrector(languageModel, nsm, costModel, cg, extra);
+                exiting.setEarlyExit(0);
+                for (String query : queries) {
+                    assertEquals(costModel + (extra ? " extra" : "") + " [" + query + "]",
+                            always.correct(query), exiting.correct(query));
+                }
+                // the random edits of the test channel make every edit cheap
+                // enough that only the uniform costs leave queries to keep
+                if (costModel.equals("uniform")) {
+                    assertTrue((extra ? "extra" : "") + ": no early exit", exiting.earlyExits() > 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.lm.SmoothingType;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingCorrectorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LanguageModel languageModel;
+    private NoisyChannelModel nsm;
+    private List<String> queries;
+
+    @Before
+    public void setUp() throws Exception {
+        languageModel = LanguageModel.create(SmoothingType.KNENSER_NEY_SMOOTHING,
+                TestCorpus.write(folder, TestCorpus.SENTENCES).getPath());
+        nsm = NoisyChannelModel.create(TestCorpus.edits(folder, 100, 31).getPath());
+        queries = new ArrayList<String>();
+        for (int n = 0; n < 40; ++n) {
+            queries.add("query " + n);
+        }
+    }
+
+    @Test
+    public void writesCorrectionsInInputOrder() throws Exception {
+        // later queries finish first
+        SpellCorrector upperCase = new SpellCorrector(languageModel, nsm, "uniform", CandidateGenerator.get(), false) {
+            @Override
+            public String correct(String query) throws Exception {
+                Thread.sleep(query.hashCode() % 2 == 0 ? 20 : 1);
+                return query.toUpperCase();
+            }
+        };
+        StringWriter out = new StringWriter();
+        StreamingCorrector streaming = new StreamingCorrector(upperCase, 4, 8);
+        assertEquals(queries.size(), streaming.run(reader(queries), out));
+
+        List<String> expected = new ArrayList<String>();
+        for (String query : queries) {
+            expected.add(query.toUpperCase());
+        }
+        assertEquals(expected, lines(out));
+        assertEquals(0, streaming.timeouts());
+    }
+
+    @Test
+    public void stopsReadingAtMaxPending() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger started = new AtomicInteger();
+        SpellCorrector blocked = new SpellCorrector(languageModel, nsm, "uniform", CandidateGenerator.get(), false) {
+            @Override
+            public String correct(String query) throws Exception {
+                started.incrementAndGet();
+                release.await();
+                return query;
+            }
+        };
+        final StreamingCorrector streaming = new StreamingCorrector(blocked, 2, 3);
+        final CountingReader in = new CountingReader(queries);
+        final StringWriter out = new StringWriter();
+        final Exception[] failure = new Exception[1];
+        Thread runner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    streaming.run(in, out);
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        runner.start();
+
+        // three in flight, the fourth read and waiting for a permit
+        long stop = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (in.lines.get() < 4 && System.nanoTime() < stop) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(200);
+        assertEquals(4, in.lines.get());
+        assertEquals(2, started.get());
+        assertEquals("", out.toString());
+
+        release.countDown();
+        runner.join(TimeUnit.SECONDS.toMillis(10));
+        assertEquals(null, failure[0]);
+        assertEquals(queries, lines(out));
+    }
+
+    @Test
+    public void writesASlowQueryUnchangedAfterTheDeadline() throws Exception {
+        SpellCorrector slow = new SpellCorrector(languageModel, nsm, "uniform", CandidateGenerator.get(), false) {
+            @Override
+            public String correct(String query) throws Exception {
+                if (query.equals("query 7")) {
+                    // interrupted when the writer gives up on it
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                }
+                return query.toUpperCase();
+            }
+        };
+        StringWriter out = new StringWriter();
+        StreamingCorrector streaming = new StreamingCorrector(slow, 2, 4);
+        streaming.setDeadline(100);
+        long start = System.nanoTime();
+        streaming.run(reader(queries), out);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+
+        List<String> expected = new ArrayList<String>();
+        for (String query : queries) {
+            expected.add(query.equals("query 7") ? query : query.toUpperCase());
+        }
+        assertEquals(expected, lines(out));
+        assertEquals(1, streaming.timeouts());
+    }
+
+    @Test
+    public void rethrowsAWriteFailure() throws Exception {
+        SpellCorrector same = new SpellCorrector(languageModel, nsm, "uniform", CandidateGenerator.get(), false) {
+            @Override
+            public String correct(String query) {
+                return query;
+            }
+        };
+        Writer broken = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try {
+            new StreamingCorrector(same, 2, 4).run(reader(queries), broken);
+            fail("the writer failed");
+        } catch (IOException e) {
+            assertEquals("Broken pipe", e.getMessage());
+        }
+    }
+
+    private static BufferedReader reader(List<String> lines) {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        return new BufferedReader(new StringReader(text.toString()));
+    }
+
+    private static List<String> lines(StringWriter out) {
+        String text = out.toString();
+        if (text.isEmpty()) {
+            return new ArrayList<String>();
+        }
+        return Arrays.asList(text.split(System.lineSeparator()));
+    }
+
+    // counts the lines the corrector has taken
+    private static class CountingReader extends BufferedReader {
+        final AtomicInteger lines = new AtomicInteger();
+
+        CountingReader(List<String> lines) {
+            super(reader(lines));
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            String line = super.readLine();
+            if (line != null) {
+                lines.incrementAndGet();
+            }
+            return line;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package edu.stanford.cs276;
+
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+/**
+ * Small corpora and noisy queries for the tests.
+ */
+public class TestCorpus {
+    public static final String[] SENTENCES = {
+            "a cat sat on the mat",
+            "i want to eat at stanford university",
+            "the cats and an act of the cast",
+            "don't go there then",
+            "in to into onto on",
+            "page 1 page 2 page",
+            "x y z xy yz xyz",
+            "at a an and i in it is as",
+    };
+
+    // the characters perturb inserts or substitutes
+    private static final String NOISE = "abcdefghijklmnopqrstuvwxyz'12 ";
+
+    private TestCorpus() {}
+
+    /**
+     * Write sentences, one per line, to a new corpus directory in folder.
+     *
+     * @return the corpus directory
+     */
+    public static File write(TemporaryFolder folder, String... sentences) throws IOException {
+        File corpus = folder.newFolder();
+        Writer out = new FileWriter(new File(corpus, "sentences.txt"));
+        for (String sentence : sentences) {
+            out.write(sentence + "\n");
+        }
+        out.close();
+        return corpus;
+    }
+
+    /**
+     * Write count sentences of 1 to 12 words drawn from the words of
+     * SENTENCES, a few words much more often than the rest, as in text.
+     */
+    public static File random(TemporaryFolder folder, int count, long seed) throws IOException {
+        String[] words = words();
+        Random random = new Random(seed);
+        String[] sentences = new String[count];
+        for (int i = 0; i < count; ++i) {
+            StringBuilder sentence = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int j = 0; j < length; ++j) {
+                if (j > 0) {
+                    sentence.append(' ');
+                }
+                // squaring skews the choice towards the first words
+                double u = random.nextDouble();
+                sentence.append(words[(int) (u * u * words.length)]);
+            }
+            sentences[i] = sentence.toString();
+        }
+        return write(folder, sentences);
+    }
+
+    /**
+     * Write count noisy<TAB>clean lines, as in edit1s.txt, of queries and
+     * the same queries with one random edit.
+     */
+    public static File edits(TemporaryFolder folder, int count, long seed) throws IOException {
+        String[] words = words();
+        Random random = new Random(seed);
+        File edits = folder.newFile();
+        Writer out = new FileWriter(edits);
+        for (int n = 0; n < count; ) {
+            String clean = query(words, random);
+            if (clean.length() < 2) {
+                // EditDistance.determineOneEdit needs a character left over
+                continue;
+            }
+            out.write(oneEdit(clean, random) + "\t" + clean + "\n");
+            ++n;
+        }
+        out.close();
+        return edits;
+    }
+
+    /**
+     * s with one random insertion, deletion, substitution or transposition
+     * of letters, unchanged if the transposition falls off the end.
+     */
+    public static String oneEdit(String s, Random random) {
+        StringBuilder noisy = new StringBuilder(s);
+        int i = random.nextInt(s.length());
+        char c = (char) ('a' + random.nextInt(26));
+        switch (random.nextInt(4)) {
+            case 0:
+                noisy.insert(i, c);
+                break;
+            case 1:
+                noisy.deleteCharAt(i);
+                break;
+            case 2:
+                noisy.setCharAt(i, c);
+                break;
+            default:
+                if (i + 1 < s.length()) {
+                    noisy.setCharAt(i, s.charAt(i + 1));
+                    noisy.setCharAt(i + 1, s.charAt(i));
+                }
+        }
+        return noisy.toString();
+    }
+
+    /**
+     * The distinct words of SENTENCES.
+     */
+    public static String[] words() {
+        StringBuilder all = new StringBuilder();
+        for (String sentence : SENTENCES) {
+            all.append(sentence).append(' ');
+        }
+        return new LinkedHashSet<String>(Arrays.asList(all.toString().trim().split(" "))).toArray(new String[0]);
+    }
+
+    /**
+     * A query of 1 to 4 of the given words with up to two random edits,
+     * spaces included, single spaced as queries are.
+     */
+    public static String query(String[] words, Random random) {
+        StringBuilder query = new StringBuilder();
+        int tokens = 1 + random.nextInt(4);
+        for (int i = 0; i < tokens; ++i) {
+            if (i > 0) {
+                query.append(' ');
+            }
+            query.append(words[random.nextInt(words.length)]);
+        }
+        for (int edits = random.nextInt(3); edits > 0; --edits) {
+            perturb(query, random);
+        }
+        String tidy = query.toString().trim().replaceAll("\\s+", " ");
+        return tidy.isEmpty() ? words[0] : tidy;
+    }
+
+    private static void perturb(StringBuilder query, Random random) {
+        int length = query.length();
+        int i = random.nextInt(length + 1);
+        char c = NOISE.charAt(random.nextInt(NOISE.length()));
+        switch (random.nextInt(3)) {
+            case 0:
+                query.insert(i, c);
+                break;
+            case 1:
+                if (i < length) {
+                    query.deleteCharAt(i);
+                }
+                break;
+            default:
+                if (i < length) {
+                    query.setCharAt(i, c);
+                }
+        }
+    }
+}
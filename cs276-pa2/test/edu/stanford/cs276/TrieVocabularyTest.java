@@ -0,0 +1,82 @@
+package edu.stanford.cs276;
+
+import edu.stanford.cs276.edit.EditDistance;
+import edu.stanford.cs276.lm.SmoothingType;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrieVocabularyTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Set<String> terms;
+    private TrieVocabulary trie;
+    private DeletionIndex index;
+    private List<String> tokens;
+
+    @Before
+    public void setUp() throws Exception {
+        LanguageModel languageModel = LanguageModel.create(SmoothingType.LINEAR_INTERPOLATION,
+                TestCorpus.write(folder, TestCorpus.SENTENCES).getPath());
+        terms = new HashSet<String>(languageModel.terms());
+        trie = TrieVocabulary.create(languageModel);
+        index = DeletionIndex.create(languageModel);
+
+        // noisy tokens and merged neighbours, as candidate generation sees them
+        tokens = new ArrayList<String>();
+        Random random = new Random(5);
+        String[] words = TestCorpus.words();
+        for (int n = 0; n < 1000; ++n) {
+            String[] parts = TestCorpus.query(words, random).split(" ");
+            for (int i = 0; i < parts.length; ++i) {
+                tokens.add(parts[i]);
+                if (i > 0) {
+                    tokens.add(parts[i - 1] + parts[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void containsMatchesHashSet() {
+        assertEquals(terms.size(), trie.size());
+        for (String term : terms) {
+            assertEquals(term, true, trie.contains(term));
+        }
+        for (String token : tokens) {
+            assertEquals(token, terms.contains(token), trie.contains(token));
+        }
+    }
+
+    @Test
+    public void lookupMatchesDeletionIndex() {
+        for (String token : tokens) {
+            assertEquals(token, index.lookup(token), trie.lookup(token));
+        }
+    }
+
+    @Test
+    public void fuzzyMatchMatchesEditDistance() {
+        for (String token : tokens) {
+            for (int k = 0; k <= 2; ++k) {
+                Set<String> expected = new HashSet<String>();
+                for (String term : terms) {
+                    if (EditDistance.editDistance(token, term) <= k) {
+                        expected.add(term);
+                    }
+                }
+                assertEquals(token + " k = " + k, expected, trie.fuzzyMatch(token, k));
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package edu.stanford.cs276.edit;
+
+import edu.stanford.cs276.TestCorpus;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class EditDistanceTest {
+
+    @Test
+    public void bandedDistanceMatchesMatrix() {
+        Random random = new Random(7);
+        String[] words = TestCorpus.words();
+        for (int n = 0; n < 5000; ++n) {
+            String s = TestCorpus.query(words, random);
+            String t = n % 2 == 0 ? TestCorpus.query(words, random) : noisy(s, random);
+            assertDistances(s, t);
+        }
+    }
+
+    @Test
+    public void shortStringsOverSmallAlphabet() {
+        // few letters make repeats and transpositions common
+        Random random = new Random(11);
+        for (int n = 0; n < 20000; ++n) {
+            assertDistances(randomString(random), randomString(random));
+        }
+    }
+
+    @Test
+    public void emptyStrings() {
+        assertDistances("", "");
+        assertDistances("", "abc");
+        assertDistances("abcd", "");
+    }
+
+    private static void assertDistances(String s, String t) {
+        String pair = "[" + s + "] [" + t + "]";
+        int distance = matrixEditDistance(s, t);
+        assertEquals(pair, distance, EditDistance.editDistance(s, t));
+        for (int k = 0; k <= 3; ++k) {
+            assertEquals(pair + " k = " + k, Math.min(distance, k + 1), EditDistance.editDistance(s, t, k));
+        }
+    }
+
+    private static String noisy(String s, Random random) {
+        StringBuilder noisy = new StringBuilder(s);
+        for (int edits = random.nextInt(4); edits > 0 && noisy.length() > 1; --edits) {
+            int i = random.nextInt(noisy.length() - 1);
+            char c = noisy.charAt(i);
+            noisy.setCharAt(i, noisy.charAt(i + 1));
+            noisy.setCharAt(i + 1, c);
+        }
+        return noisy.toString();
+    }
+
+    private static String randomString(Random random) {
+        char[] chars = new char[random.nextInt(9)];
+        for (int i = 0; i < chars.length; ++i) {
+            chars[i] = "ab c".charAt(random.nextInt(4));
+        }
+        return new String(chars);
+    }
+
+    // the implementation before banding, one full matrix per call
+    private static int matrixEditDistance(String s, String t) {
+        final int N = s.length();
+        final int M = t.length();
+
+        int[][] D = new int[N+1][M+1];
+        for (int i = 0; i <= N; ++i) {
+            D[i][0] = i;
+        }
+        for (int i = 0; i <= M; ++i) {
+            D[0][i] = i;
+        }
+
+        for (int i = 1; i <= N; ++i) {
+            for (int j = 1; j <= M; ++j) {
+                if (s.charAt(i-1) == t.charAt(j-1)) {
+                    D[i][j] = D[i-1][j-1];
+                } else {
+                    D[i][j] = Math.min(D[i-1][j], D[i][j-1]) + 1;
+                    if (D[i-1][j-1] + 1 < D[i][j]) {
+                        D[i][j] = D[i-1][j-1] + 1;
+                    }
+                }
+
+                if (i > 1 && j > 1
+                        && (s.charAt(i-1) == t.charAt(j-2))
+                        && (s.charAt(i-2) == t.charAt(j-1))) {
+                    if (D[i-2][j-2] + 1 < D[i][j]) {
+                        D[i][j] = D[i-2][j-2] + 1;
+                    }
+                }
+            }
+        }
+
+        return D[N][M];
+    }
+}
@@ -0,0 +1,134 @@
+package edu.stanford.cs276.lm;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class CorpusCounterTest {
+    // separators inside a line: the \s characters and one that is not
+    private static final String[] GAPS = {" ", "  ", "\t", "\u000B", "\f", " \t ", "\u0001"};
+    private static final String[] ENDS = {"\n", "\r", "\r\n"};
+    private static final String[] WORDS = {"a", "cat", "sat", "on", "the", "mat", "don't", "1", "x"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File corpus;
+
+    @Before
+    public void setUp() throws Exception {
+        corpus = folder.newFolder();
+        write("edges.txt", "\r\n\n a cat \r\n\r\rthe\u0001mat\n\u0001 on \u000B\r\t\r\nsat sat\r");
+        write("empty.txt", "");
+        write("blank.txt", "\n");
+        write(".hidden", "never counted\n");
+        Random random = new Random(41);
+        for (int f = 0; f < 3; ++f) {
+            write("random" + f + ".txt", randomLines(random, 200));
+        }
+    }
+
+    @Test
+    public void tinyChunksCountAsTheSerialReader() throws Exception {
+        NGramCounts expected = readLines();
+        for (int chunkSize : new int[]{1, 2, 3, 7, 64, 1 << 20}) {
+            for (int threads : new int[]{1, 3, 8}) {
+                assertSameCounts(chunkSize + " bytes, " + threads + " threads", expected,
+                        CorpusCounter.count(corpus.getPath(), threads, chunkSize));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void chunkSizeMustBePositive() throws Exception {
+        CorpusCounter.count(corpus.getPath(), 1, 0);
+    }
+
+    private void write(String name, String text) throws IOException {
+        OutputStream out = new FileOutputStream(new File(corpus, name));
+        try {
+            out.write(text.getBytes(Charset.defaultCharset()));
+        } finally {
+            out.close();
+        }
+    }
+
+    // words, blank lines and whitespace-only lines with every line end,
+    // sometimes without one at the end of the file
+    private static String randomLines(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            if (random.nextInt(8) == 0) {
+                text.append(random.nextBoolean() ? "" : GAPS[random.nextInt(GAPS.length)]);
+            } else {
+                if (random.nextInt(4) == 0) {
+                    text.append(GAPS[random.nextInt(GAPS.length)]);
+                }
+                int length = 1 + random.nextInt(6);
+                for (int j = 0; j < length; ++j) {
+                    if (j > 0) {
+                        text.append(GAPS[random.nextInt(GAPS.length)]);
+                    }
+                    text.append(WORDS[random.nextInt(WORDS.length)]);
+                }
+                if (random.nextInt(4) == 0) {
+                    text.append(GAPS[random.nextInt(GAPS.length)]);
+                }
+            }
+            if (i < count - 1 || random.nextBoolean()) {
+                text.append(ENDS[random.nextInt(ENDS.length)]);
+            }
+        }
+        return text.toString();
+    }
+
+    // the serial pass the counter replaced
+    private NGramCounts readLines() throws IOException {
+        NGramCounter counter = new NGramCounter();
+        for (File file : corpus.listFiles()) {
+            if (file.getName().charAt(0) == '.') {
+                continue;
+            }
+            BufferedReader input = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), Charset.defaultCharset()));
+            try {
+                String line;
+                while ((line = input.readLine()) != null) {
+                    counter.addSentence(line.trim().split("\\s+"));
+                }
+            } finally {
+                input.close();
+            }
+        }
+        return counter.build();
+    }
+
+    private static void assertSameCounts(String message, final NGramCounts expected, final NGramCounts actual) {
+        assertEquals(message, expected.size(), actual.size());
+        assertEquals(message, expected.totalTokens(), actual.totalTokens());
+        assertEquals(message, expected.bigramTypes(), actual.bigramTypes());
+        for (int w = 0; w < expected.size(); ++w) {
+            assertEquals(message, expected.term(w), actual.term(w));
+            assertEquals(message, expected.unigramCount(w), actual.unigramCount(w));
+        }
+        expected.forEachBigram(new NGramCounts.BigramVisitor() {
+            @Override
+            public void visit(int w1, int w2, int count) {
+                assertEquals(count, actual.bigramCount(w1, w2));
+            }
+        });
+    }
+}
@@ -0,0 +1,124 @@
+package edu.stanford.cs276.lm;
+
+import edu.stanford.cs276.TestCorpus;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class ExternalNGramCounterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String corpus;
+    private NGramCounts expected;
+
+    @Before
+    public void setUp() throws Exception {
+        corpus = TestCorpus.random(folder, 3000, 6).getPath();
+        expected = CorpusCounter.count(corpus, 1);
+    }
+
+    @Test
+    public void allInBuffer() throws Exception {
+        assertSameCounts(countInto(folder.newFolder(), ExternalNGramCounter.DEFAULT_RUN_SIZE));
+    }
+
+    @Test
+    public void fewRuns() throws Exception {
+        assertSameCounts(countInto(folder.newFolder(), 5000));
+    }
+
+    @Test
+    public void manyRunsMergeInSeveralPasses() throws Exception {
+        // some 20000 bigrams in runs of 100 make more runs than one merge takes
+        File runs = folder.newFolder();
+        assertSameCounts(countInto(runs, 100));
+        assertEquals(0, runs.list().length);
+    }
+
+    @Test
+    public void mappedModelHasTheSameCounts() throws Exception {
+        File file = new File(folder.newFolder(), "languageModel.mapped");
+        ExternalNGramCounter.countToMapped(corpus, 100, file, SmoothingType.KNENSER_NEY_SMOOTHING);
+        assertEquals(1, file.getParentFile().list().length);
+
+        final MappedNGramCounts mapped = MappedNGramCounts.open(file);
+        assertEquals(SmoothingType.KNENSER_NEY_SMOOTHING, mapped.smoothingType());
+        assertEquals(expected.size(), mapped.size());
+        assertEquals(expected.totalTokens(), mapped.totalTokens());
+        assertEquals(expected.bigramTypes(), mapped.bigramTypes());
+        for (int w = 0; w < expected.size(); ++w) {
+            int id = mapped.id(expected.term(w));
+            assertEquals(expected.term(w), mapped.term(id));
+            assertEquals(expected.unigramCount(w), mapped.unigramCount(id));
+            assertEquals(expected.predecessorTypes(w), mapped.predecessorTypes(id));
+        }
+        expected.forEachBigram(new NGramCounts.BigramVisitor() {
+            @Override
+            public void visit(int w1, int w2, int count) {
+                assertEquals(count, mapped.bigramCount(mapped.id(expected.term(w1)), mapped.id(expected.term(w2))));
+            }
+        });
+    }
+
+    @Test(expected = IOException.class)
+    public void failedSpillThrowsItsIOException() throws Exception {
+        new ExternalNGramCounter(100, new File(folder.getRoot(), "missing")).read(corpus);
+    }
+
+    @Test
+    public void failedWriteDeletesTheFile() throws Exception {
+        File runs = folder.newFolder();
+        File file = new File(folder.newFolder(), "languageModel.mapped");
+        ExternalNGramCounter counter = new ExternalNGramCounter(100, runs);
+        counter.read(corpus);
+        for (File run : runs.listFiles()) {
+            run.delete();
+        }
+        try {
+            counter.writeMapped(file, SmoothingType.KNENSER_NEY_SMOOTHING);
+            fail("runs are gone");
+        } catch (IOException e) {
+            assertFalse(file.exists());
+        }
+    }
+
+    private NGramCounts countInto(File tempDir, int runSize) throws Exception {
+        ExternalNGramCounter counter = new ExternalNGramCounter(runSize, tempDir);
+        try {
+            counter.read(corpus);
+            return counter.build();
+        } finally {
+            counter.deleteRuns();
+        }
+    }
+
+    private void assertSameCounts(final NGramCounts actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.totalTokens(), actual.totalTokens());
+        assertEquals(expected.bigramTypes(), actual.bigramTypes());
+        for (int c = 1; c <= NGramCounts.MAX_COUNT_OF_COUNTS; ++c) {
+            assertEquals(expected.bigramsWithCount(c), actual.bigramsWithCount(c));
+        }
+        for (int w = 0; w < expected.size(); ++w) {
+            assertEquals(expected.term(w), actual.term(w));
+            assertEquals(expected.unigramCount(w), actual.unigramCount(w));
+            assertEquals(expected.successorTypes(w), actual.successorTypes(w));
+            assertEquals(expected.predecessorTypes(w), actual.predecessorTypes(w));
+        }
+        expected.forEachBigram(new NGramCounts.BigramVisitor() {
+            @Override
+            public void visit(int w1, int w2, int count) {
+                assertEquals(count, actual.bigramCount(w1, w2));
+            }
+        });
+    }
+}
@@ -0,0 +1,89 @@
+package edu.stanford.cs276.lm;
+
+import edu.stanford.cs276.TestCorpus;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrunedNGramCountsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String corpus;
+    private NGramCounts exact;
+
+    @Before
+    public void setUp() throws Exception {
+        corpus = TestCorpus.random(folder, 3000, 2).getPath();
+        exact = CorpusCounter.count(corpus, 1);
+    }
+
+    @Test
+    public void wideSketchEstimatesClosely() throws Exception {
+        PrunedNGramCounts pruned = PrunedNGramCounts.count(corpus, 2, 1 << 16, 4);
+        assertKeptBigrams(pruned, 2);
+        assertClose("bigram types", exact.bigramTypes(), pruned.bigramTypes(), 0.01);
+        for (int c = 1; c <= NGramCounts.MAX_COUNT_OF_COUNTS; ++c) {
+            assertClose("bigrams with count " + c, exact.bigramsWithCount(c), pruned.bigramsWithCount(c), 0.05);
+        }
+        for (int w = 0; w < exact.size(); ++w) {
+            assertClose(exact.term(w), exact.successorTypes(w), pruned.successorTypes(w), 0.05);
+            assertClose(exact.term(w), exact.predecessorTypes(w), pruned.predecessorTypes(w), 0.05);
+        }
+    }
+
+    @Test
+    public void narrowSketchStillKeepsEveryFrequentBigram() throws Exception {
+        // far fewer counters than bigram types
+        final PrunedNGramCounts pruned = PrunedNGramCounts.count(corpus, 3, 64, 2);
+        assertKeptBigrams(pruned, 3);
+        // the type estimates are off, but never below the kept bigrams
+        final int[] keptSuccessors = new int[exact.size()];
+        final int[] keptPredecessors = new int[exact.size()];
+        pruned.forEachBigram(new NGramCounts.BigramVisitor() {
+            @Override
+            public void visit(int w1, int w2, int count) {
+                ++keptSuccessors[w1];
+                ++keptPredecessors[w2];
+            }
+        });
+        for (int w = 0; w < exact.size(); ++w) {
+            assertTrue(exact.term(w), pruned.successorTypes(w) >= keptSuccessors[w]);
+            assertTrue(exact.term(w), pruned.predecessorTypes(w) >= keptPredecessors[w]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minCountMustBePositive() throws Exception {
+        PrunedNGramCounts.count(corpus, 0, 1024, 2);
+    }
+
+    // same terms and unigrams; a bigram is kept, exactly, iff it occurs minCount times
+    private void assertKeptBigrams(final PrunedNGramCounts pruned, final int minCount) {
+        assertEquals(exact.size(), pruned.size());
+        assertEquals(exact.totalTokens(), pruned.totalTokens());
+        for (int w = 0; w < exact.size(); ++w) {
+            assertEquals(exact.term(w), pruned.term(w));
+            assertEquals(exact.term(w), exact.unigramCount(w), pruned.unigramCount(w));
+        }
+        exact.forEachBigram(new NGramCounts.BigramVisitor() {
+            @Override
+            public void visit(int w1, int w2, int count) {
+                assertEquals(exact.term(w1) + " " + exact.term(w2),
+                        count >= minCount ? count : 0, pruned.bigramCount(w1, w2));
+            }
+        });
+        for (int c = minCount; c <= NGramCounts.MAX_COUNT_OF_COUNTS; ++c) {
+            assertEquals(exact.bigramsWithCount(c), pruned.bigramsWithCount(c));
+        }
+    }
+
+    private static void assertClose(String what, long expected, long actual, double relativeError) {
+        assertTrue(what + ": " + actual + " for " + expected,
+                Math.abs(actual - expected) <= relativeError * expected);
+    }
+}
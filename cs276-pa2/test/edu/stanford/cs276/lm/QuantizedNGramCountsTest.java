@@ -0,0 +1,120 @@
+package edu.stanford.cs276.lm;
+
+import edu.stanford.cs276.LanguageModel;
+import edu.stanford.cs276.TestCorpus;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QuantizedNGramCountsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NGramCounts exact;
+
+    @Before
+    public void setUp() throws Exception {
+        // enough text for bigram counts past the 256 codes of 8 bits
+        exact = CorpusCounter.count(TestCorpus.random(folder, 20000, 1).getPath(), 1);
+    }
+
+    @Test
+    public void sixteenBitsAreLossless() {
+        QuantizedNGramCounts quantized = QuantizedNGramCounts.create(exact, 16);
+        assertSameTotals(quantized);
+        assertBigrams(quantized, 0);
+    }
+
+    @Test
+    public void eightBitsKeepSmallCountsAndTotals() {
+        QuantizedNGramCounts quantized = QuantizedNGramCounts.create(exact, 8);
+        assertSameTotals(quantized);
+        // 128 geometric buckets from 128 up to the largest count
+        assertBigrams(quantized, 0.05);
+    }
+
+    @Test
+    public void unseenBigramsCountZero() {
+        QuantizedNGramCounts quantized = QuantizedNGramCounts.create(exact, 8);
+        Random random = new Random(276);
+        int n = exact.size();
+        for (int i = 0; i < 10000; ++i) {
+            int w1 = random.nextInt(n);
+            int w2 = random.nextInt(n);
+            if (exact.bigramCount(w1, w2) == 0) {
+                assertEquals(0, quantized.bigramCount(id(quantized, w1), id(quantized, w2)));
+            }
+        }
+        assertEquals(-1, quantized.id("no such term, surely"));
+    }
+
+    @Test
+    public void countOfCountsOnlyUpToTheKeptRange() {
+        for (NGramCounts counts : new NGramCounts[]{exact, QuantizedNGramCounts.create(exact, 8)}) {
+            for (int c : new int[]{0, NGramCounts.MAX_COUNT_OF_COUNTS + 1}) {
+                try {
+                    counts.bigramsWithCount(c);
+                    fail(counts.getClass().getSimpleName() + " c=" + c);
+                } catch (IllegalArgumentException expected) {
+                }
+            }
+        }
+    }
+
+    @Test(expected = Exception.class)
+    public void mappedFormatRefusesQuantizedCounts() throws Exception {
+        LanguageModel model = LanguageModel.create(SmoothingType.KNENSER_NEY_SMOOTHING,
+                QuantizedNGramCounts.create(exact, 8));
+        model.saveMapped(new File(folder.getRoot(), "languageModel").getPath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyEightOrSixteenBits() {
+        QuantizedNGramCounts.create(exact, 12);
+    }
+
+    private void assertSameTotals(QuantizedNGramCounts quantized) {
+        assertEquals(exact.size(), quantized.size());
+        assertEquals(exact.totalTokens(), quantized.totalTokens());
+        assertEquals(exact.bigramTypes(), quantized.bigramTypes());
+        for (int c = 1; c <= NGramCounts.MAX_COUNT_OF_COUNTS; ++c) {
+            assertEquals(exact.bigramsWithCount(c), quantized.bigramsWithCount(c));
+        }
+        for (int w = 0; w < exact.size(); ++w) {
+            int q = id(quantized, w);
+            assertEquals(exact.term(w), quantized.term(q));
+            assertEquals(exact.successorTypes(w), quantized.successorTypes(q));
+        }
+    }
+
+    // counts below half the codes are exact, the rest within maxError
+    private void assertBigrams(final QuantizedNGramCounts quantized, final double maxError) {
+        final int exactCodes = 1 << (quantized.bits() - 1);
+        exact.forEachBigram(new NGramCounts.BigramVisitor() {
+            @Override
+            public void visit(int w1, int w2, int count) {
+                int actual = quantized.bigramCount(id(quantized, w1), id(quantized, w2));
+                String bigram = exact.term(w1) + " " + exact.term(w2);
+                assertEquals(bigram, count, exact.bigramCount(w1, w2));
+                if (count < exactCodes) {
+                    assertEquals(bigram, count, actual);
+                } else {
+                    assertTrue(bigram + ": " + actual + " for " + count,
+                            Math.abs(actual - count) <= maxError * count);
+                }
+            }
+        });
+    }
+
+    private int id(QuantizedNGramCounts quantized, int exactId) {
+        return quantized.id(exact.term(exactId));
+    }
+}
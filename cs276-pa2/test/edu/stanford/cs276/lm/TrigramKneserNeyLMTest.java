@@ -0,0 +1,127 @@
+package edu.stanford.cs276.lm;
+
+import edu.stanford.cs276.TestCorpus;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrigramKneserNeyLMTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NGramCounts counts;
+    private TrigramCounts trigrams;
+    private TrigramKneserNeyLM model;
+    private List<int[]> sentences;
+
+    @Before
+    public void setUp() throws Exception {
+        File corpus = TestCorpus.random(folder, 2000, 8);
+        counts = CorpusCounter.count(corpus.getPath(), 1);
+        trigrams = TrigramCounts.count(corpus.getPath(), counts);
+        model = new TrigramKneserNeyLM(counts, trigrams);
+
+        sentences = new ArrayList<int[]>();
+        BufferedReader input = new BufferedReader(new FileReader(new File(corpus, "sentences.txt")));
+        String line;
+        while ((line = input.readLine()) != null) {
+            String[] tokens = line.split(" ");
+            int[] ids = new int[tokens.length];
+            for (int i = 0; i < tokens.length; ++i) {
+                ids[i] = counts.id(tokens[i]);
+            }
+            sentences.add(ids);
+        }
+        input.close();
+    }
+
+    @Test
+    public void countsMatchTheCorpus() {
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        Map<String, Integer> histories = new HashMap<String, Integer>();
+        Map<String, Set<Integer>> followers = new HashMap<String, Set<Integer>>();
+        for (int[] ids : sentences) {
+            for (int i = 2; i < ids.length; ++i) {
+                String history = ids[i - 2] + " " + ids[i - 1];
+                increment(expected, history + " " + ids[i]);
+                increment(histories, history);
+                if (!followers.containsKey(history)) {
+                    followers.put(history, new HashSet<Integer>());
+                }
+                followers.get(history).add(ids[i]);
+            }
+        }
+        assertEquals(expected.size(), trigrams.trigramTypes());
+        for (Map.Entry<String, Integer> e : expected.entrySet()) {
+            String[] w = e.getKey().split(" ");
+            assertEquals(e.getKey(), (int) e.getValue(), trigrams.trigramCount(
+                    Integer.parseInt(w[0]), Integer.parseInt(w[1]), Integer.parseInt(w[2])));
+        }
+        for (Map.Entry<String, Integer> e : histories.entrySet()) {
+            String[] w = e.getKey().split(" ");
+            int w1 = Integer.parseInt(w[0]);
+            int w2 = Integer.parseInt(w[1]);
+            assertEquals(e.getKey(), (int) e.getValue(), trigrams.historyCount(w1, w2));
+            assertEquals(e.getKey(), followers.get(e.getKey()).size(), trigrams.historyTypes(w1, w2));
+        }
+    }
+
+    @Test
+    public void probabilitiesInterpolateWithTheBigrams() {
+        int n = counts.size();
+        for (int w1 = 0; w1 < n; ++w1) {
+            for (int w2 = 0; w2 < n; ++w2) {
+                boolean seen = trigrams.history(w1, w2) != 0;
+                double trigramSum = 0, bigramSum = 0;
+                for (int w3 = 0; w3 < n; ++w3) {
+                    double p = model.trigramProbability(w1, w2, w3);
+                    if (!seen) {
+                        assertEquals(model.bigramProbability(w2, w3), p, 0);
+                    }
+                    trigramSum += p;
+                    bigramSum += model.bigramProbability(w2, w3);
+                }
+                // the discounted mass goes to the bigrams, so the sum lies
+                // between 1 and theirs
+                assertTrue(w1 + " " + w2 + ": " + trigramSum + " for " + bigramSum,
+                        trigramSum >= Math.min(1, bigramSum) - 1e-9 && trigramSum <= Math.max(1, bigramSum) + 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void trigramsFitTheTrainingTextBetter() {
+        double bigramLogProb = 0, trigramLogProb = 0;
+        for (int[] ids : sentences) {
+            for (int i = 2; i < ids.length; ++i) {
+                bigramLogProb += Math.log(model.bigramProbability(ids[i - 1], ids[i]));
+                trigramLogProb += Math.log(model.trigramProbability(ids[i - 2], ids[i - 1], ids[i]));
+            }
+        }
+        assertTrue(trigramLogProb + " <= " + bigramLogProb, trigramLogProb > bigramLogProb);
+    }
+
+    @Test(expected = Exception.class)
+    public void mappedFormatRefusesTrigrams() throws Exception {
+        model.saveMapped(new File(folder.getRoot(), "languageModel").getPath());
+    }
+
+    private static void increment(Map<String, Integer> map, String key) {
+        Integer count = map.get(key);
+        map.put(key, count == null ? 1 : count + 1);
+    }
+}
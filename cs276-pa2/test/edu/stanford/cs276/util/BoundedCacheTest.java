@@ -0,0 +1,128 @@
+package edu.stanford.cs276.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedCacheTest {
+    @Test
+    public void lruEvictsTheLeastRecentlyUsed() {
+        BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(3, BoundedCache.Policy.LRU, 1);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+        cache.put("d", 4);
+        assertNull(cache.get("b"));
+        cache.get("c");
+        cache.put("e", 5);
+        assertNull(cache.get("a"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+        assertEquals(Integer.valueOf(4), cache.get("d"));
+        assertEquals(Integer.valueOf(5), cache.get("e"));
+    }
+
+    @Test
+    public void lfuEvictsTheLeastOftenUsed() {
+        BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(3, BoundedCache.Policy.LFU, 1);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+        cache.get("a");
+        cache.get("c");
+        // b is used least
+        cache.put("d", 4);
+        assertNull(cache.get("b"));
+        // a three times, c twice, d once
+        cache.put("e", 5);
+        assertNull(cache.get("d"));
+        // e once, c and a more: e goes although it is the newest
+        cache.put("f", 6);
+        assertNull(cache.get("e"));
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+        assertEquals(Integer.valueOf(6), cache.get("f"));
+    }
+
+    @Test
+    public void lfuTiesEvictTheOldest() {
+        BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(3, BoundedCache.Policy.LFU, 1);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        // all used twice; b reached that count first, then c, then a
+        cache.get("b");
+        cache.get("c");
+        cache.get("a");
+        cache.put("d", 4);
+        assertNull(cache.get("b"));
+        // d joins the tie last, so c is now the oldest
+        cache.get("d");
+        cache.put("e", 5);
+        assertNull(cache.get("c"));
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertEquals(Integer.valueOf(4), cache.get("d"));
+        assertEquals(Integer.valueOf(5), cache.get("e"));
+    }
+
+    @Test
+    public void putReplacesWithoutEvicting() {
+        for (BoundedCache.Policy policy : BoundedCache.Policy.values()) {
+            BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(2, policy, 1);
+            cache.put("a", 1);
+            cache.put("b", 2);
+            cache.put("a", 3);
+            assertEquals(2, cache.size());
+            assertEquals(0, cache.evictions());
+            assertEquals(Integer.valueOf(3), cache.get("a"));
+            assertEquals(Integer.valueOf(2), cache.get("b"));
+        }
+    }
+
+    @Test
+    public void segmentsShareExactlyTheCapacity() {
+        for (BoundedCache.Policy policy : BoundedCache.Policy.values()) {
+            for (int capacity : new int[]{1, 2, 5, 16, 37, 1000}) {
+                for (int concurrency : new int[]{1, 4, 16, 64}) {
+                    BoundedCache<Integer, Integer> cache =
+                            new BoundedCache<Integer, Integer>(capacity, policy, concurrency);
+                    // enough keys to fill every segment
+                    int keys = capacity * 50 + 1000;
+                    for (int k = 0; k < keys; ++k) {
+                        cache.put(k, k);
+                        assertTrue(cache.size() <= capacity);
+                    }
+                    String message = policy + " " + capacity + " over " + concurrency;
+                    assertEquals(message, capacity, cache.size());
+                    assertEquals(message, keys - capacity, cache.evictions());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void countsHitsMissesAndEvictions() {
+        for (BoundedCache.Policy policy : BoundedCache.Policy.values()) {
+            BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>(2, policy, 1);
+            assertNull(cache.get("a"));
+            cache.put("a", 1);
+            cache.put("b", 2);
+            cache.get("a");
+            cache.get("a");
+            cache.get("b");
+            cache.put("c", 3);
+            assertNull(cache.get("x"));
+            assertEquals(policy.toString(), 3, cache.hits());
+            assertEquals(policy.toString(), 2, cache.misses());
+            assertEquals(policy.toString(), 1, cache.evictions());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePositive() {
+        new BoundedCache<String, Integer>(0, BoundedCache.Policy.LRU);
+    }
+}
@@ -0,0 +1,39 @@
+package edu.stanford.cs276.util;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class MinimalPerfectHashTest {
+    @Test
+    public void distinctKeysGetDistinctSlots() {
+        for (int n : new int[]{0, 1, 2, 3, 5, 100, 10000}) {
+            String[] keys = new String[n];
+            for (int i = 0; i < n; ++i) {
+                keys[i] = "key" + i;
+            }
+            MinimalPerfectHash hash = new MinimalPerfectHash(keys);
+            assertEquals(n, hash.size());
+            BitSet slots = new BitSet(n);
+            for (String key : keys) {
+                int slot = hash.index(key);
+                assertFalse(key, slots.get(slot));
+                slots.set(slot);
+            }
+            assertEquals(n, slots.cardinality());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class, timeout = 10000)
+    public void duplicateKeysThrow() {
+        String[] keys = new String[1000];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = "key" + i;
+        }
+        keys[999] = "key500";
+        new MinimalPerfectHash(keys);
+    }
+}
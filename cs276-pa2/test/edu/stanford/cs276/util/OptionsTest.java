@@ -0,0 +1,34 @@
+package edu.stanford.cs276.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OptionsTest {
+    @Test
+    public void splitsKnownOptionsFromPositionalArguments() throws Exception {
+        Options options = Options.parse(new String[]{"corpus", "--quantize=8", "edits", "--external", "-"},
+                "quantize", "external", "order");
+        assertArrayEquals(new String[]{"corpus", "edits", "-"}, options.positional());
+        assertEquals(8, options.getInt("quantize", 0));
+        assertTrue(options.has("external"));
+        assertFalse(options.has("order"));
+        assertEquals(2, options.getInt("order", 2));
+    }
+
+    @Test
+    public void rejectsAnUnknownOption() {
+        for (String arg : new String[]{"--quantise=8", "--externals", "--quantize8"}) {
+            try {
+                Options.parse(new String[]{"corpus", arg}, "quantize", "external");
+                fail(arg);
+            } catch (Exception e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Unknown option: --"));
+            }
+        }
+    }
+}